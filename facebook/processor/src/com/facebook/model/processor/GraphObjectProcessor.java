@@ -0,0 +1,337 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model.processor;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.*;
+import javax.lang.model.type.*;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.JavaFileObject;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.*;
+
+/**
+ * Generates an implementation class for each GraphObject-derived interface in the code it processes, which
+ * GraphObject.Factory then instantiates in place of a reflection-based proxy. Each implementation extends
+ * GeneratedGraphObject, is backed by the same JSONObject a proxy would be, and is named after the interface's
+ * binary name with '$' replaced by '_' and "_GraphObjectImpl" appended, in the interface's package.
+ * <p/>
+ * Interfaces the processor cannot implement exactly as the proxy would, such as private or generic interfaces or
+ * ones with methods that are not valid getters and setters, are skipped; the Factory keeps using a proxy for them.
+ * <p/>
+ * To use it, put the processor on the annotation processor path of the code that declares the interfaces, and
+ * keep the generated classes' constructors when obfuscating, since the Factory finds them by name.
+ * <p/>
+ * The implementations of the SDK's own interfaces, such as GraphUser, are checked in next to them, so that
+ * neither build of the SDK needs to run the processor. Delete them and run the processor over the SDK sources
+ * with -proc:only and -s pointing at the source directory whenever those interfaces change.
+ */
+@SupportedAnnotationTypes("*")
+public class GraphObjectProcessor extends AbstractProcessor {
+    private static final String GRAPH_OBJECT = "com.facebook.model.GraphObject";
+    private static final String GENERATED_GRAPH_OBJECT = "com.facebook.model.GeneratedGraphObject";
+    private static final String PROPERTY_NAME = "com.facebook.model.PropertyName";
+    private static final String CREATE_GRAPH_OBJECT = "com.facebook.model.CreateGraphObject";
+    private static final String GENERATED_IMPLEMENTATION_SUFFIX = "_GraphObjectImpl";
+
+    // The collection types a getter may return, as the Factory coerces JSONArrays to them
+    private static final Set<String> COLLECTION_TYPES = new HashSet<String>(Arrays.asList(
+            "java.lang.Iterable", "java.util.Collection", "java.util.List", "com.facebook.model.GraphObjectList"));
+
+    private final Set<String> generatedClassNames = new HashSet<String>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        TypeElement graphObject = processingEnv.getElementUtils().getTypeElement(GRAPH_OBJECT);
+        if (graphObject != null) {
+            for (Element element : roundEnv.getRootElements()) {
+                processElement(element, graphObject);
+            }
+        }
+
+        // We look at every type without claiming any annotations, so that other processors still see them
+        return false;
+    }
+
+    private void processElement(Element element, TypeElement graphObject) {
+        if (!element.getKind().isClass() && !element.getKind().isInterface()) {
+            return;
+        }
+
+        for (TypeElement nestedType : ElementFilter.typesIn(element.getEnclosedElements())) {
+            processElement(nestedType, graphObject);
+        }
+
+        TypeElement type = (TypeElement) element;
+        Types types = processingEnv.getTypeUtils();
+        if (type.getKind() == ElementKind.INTERFACE &&
+                types.isSubtype(types.erasure(type.asType()), graphObject.asType())) {
+            generateImplementation(type);
+        }
+    }
+
+    private void generateImplementation(TypeElement type) {
+        Elements elements = processingEnv.getElementUtils();
+        String packageName = elements.getPackageOf(type).getQualifiedName().toString();
+        String binaryName = elements.getBinaryName(type).toString();
+        String className = (packageName.length() == 0 ? binaryName : binaryName.substring(packageName.length() + 1))
+                .replace('$', '_') + GENERATED_IMPLEMENTATION_SUFFIX;
+        String qualifiedClassName = packageName.length() == 0 ? className : packageName + "." + className;
+        if (generatedClassNames.contains(qualifiedClassName)) {
+            return;
+        }
+        if (elements.getTypeElement(qualifiedClassName) != null) {
+            // Already generated, such as the implementations checked in with the SDK's own interfaces
+            return;
+        }
+
+        if (!canImplement(type)) {
+            skip(type, "it is private or generic");
+            return;
+        }
+
+        StringBuilder methods = new StringBuilder();
+        Map<String, String> returnTypesBySignature = new HashMap<String, String>();
+        for (ExecutableElement method : ElementFilter.methodsIn(elements.getAllMembers(type))) {
+            String declaringType = ((TypeElement) method.getEnclosingElement()).getQualifiedName().toString();
+            if (declaringType.equals(Object.class.getName()) || declaringType.equals(GRAPH_OBJECT) ||
+                    method.getModifiers().contains(Modifier.STATIC)) {
+                // Implemented by GeneratedGraphObject
+                continue;
+            }
+
+            // The same method may be inherited from more than one interface
+            String signature = getSignature(method);
+            String returnType = method.getReturnType().toString();
+            String previousReturnType = returnTypesBySignature.put(signature, returnType);
+            if (previousReturnType != null) {
+                if (previousReturnType.equals(returnType)) {
+                    continue;
+                }
+                skip(type, "it inherits " + method + " with different return types");
+                return;
+            }
+
+            if (!appendMethod(methods, method)) {
+                skip(type, "the Factory can't implement " + method);
+                return;
+            }
+        }
+
+        StringBuilder source = new StringBuilder();
+        source.append("// Generated by ").append(GraphObjectProcessor.class.getSimpleName()).append(" from ")
+                .append(type.getQualifiedName()).append(". Do not edit.\n");
+        if (packageName.length() > 0) {
+            source.append("package ").append(packageName).append(";\n");
+        }
+        source.append("\n");
+        source.append("final class ").append(className).append(" extends ").append(GENERATED_GRAPH_OBJECT)
+                .append(" implements ").append(type.getQualifiedName()).append(" {\n");
+        source.append("    ").append(className).append("(org.json.JSONObject state) {\n");
+        source.append("        super(state, ").append(type.getQualifiedName()).append(".class);\n");
+        source.append("    }\n");
+        source.append(methods);
+        source.append("}\n");
+
+        generatedClassNames.add(qualifiedClassName);
+        try {
+            JavaFileObject file = processingEnv.getFiler().createSourceFile(qualifiedClassName, type);
+            Writer writer = file.openWriter();
+            try {
+                writer.write(source.toString());
+            } finally {
+                writer.close();
+            }
+        } catch (IOException e) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR,
+                    "Could not write " + qualifiedClassName + ": " + e.getMessage(), type);
+        }
+    }
+
+    private static boolean canImplement(TypeElement type) {
+        if (!type.getTypeParameters().isEmpty()) {
+            return false;
+        }
+        // The implementation is a top-level class in the same package, so it can't see private types
+        for (Element element = type; element instanceof TypeElement; element = element.getEnclosingElement()) {
+            if (element.getModifiers().contains(Modifier.PRIVATE)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    // Appends the implementation of a getter or setter, following the same rules GraphObject.Factory uses to
+    // verify and proxy interfaces. Returns false if the method can't be implemented exactly as the proxy would.
+    private boolean appendMethod(StringBuilder methods, ExecutableElement method) {
+        if (!method.getTypeParameters().isEmpty()) {
+            return false;
+        }
+
+        String methodName = method.getSimpleName().toString();
+        List<? extends VariableElement> parameters = method.getParameters();
+        TypeMirror returnType = method.getReturnType();
+        String propertyNameOverride = getAnnotationValue(method, PROPERTY_NAME);
+
+        String prefix;
+        if (parameters.size() == 1 && returnType.getKind() == TypeKind.VOID) {
+            prefix = "set";
+        } else if (parameters.isEmpty() && returnType.getKind() != TypeKind.VOID) {
+            prefix = "get";
+        } else {
+            return false;
+        }
+
+        String key;
+        if (propertyNameOverride != null) {
+            // If a property override is present, it MUST be valid. We don't fallback to using the method name
+            if (propertyNameOverride.length() == 0) {
+                return false;
+            }
+            key = propertyNameOverride;
+        } else if (methodName.startsWith(prefix) && methodName.length() > 3) {
+            key = convertCamelCaseToLowercaseWithUnderscores(methodName.substring(3));
+        } else {
+            return false;
+        }
+
+        String body;
+        if (prefix.equals("get")) {
+            body = getGetterBody(returnType, key);
+            if (body == null) {
+                return false;
+            }
+        } else {
+            String createGraphObject = getAnnotationValue(method, CREATE_GRAPH_OBJECT);
+            body = "setTypedProperty(" + quote(key) + ", value, " +
+                    (createGraphObject != null ? quote(createGraphObject) : "null") + ");";
+        }
+
+        methods.append("\n");
+        methods.append("    @Override\n");
+        methods.append("    public ").append(returnType).append(" ").append(methodName).append("(");
+        if (!parameters.isEmpty()) {
+            methods.append(parameters.get(0).asType()).append(" value");
+        }
+        methods.append(") {\n");
+        methods.append("        ").append(body).append("\n");
+        methods.append("    }\n");
+        return true;
+    }
+
+    private String getGetterBody(TypeMirror returnType, String key) {
+        Types types = processingEnv.getTypeUtils();
+        String erasure = types.erasure(returnType).toString();
+
+        if (returnType.getKind().isPrimitive()) {
+            String value = "getPrimitiveProperty(" + quote(key) + ", " + returnType + ".class)";
+            switch (returnType.getKind()) {
+                case BOOLEAN:
+                    return "return ((java.lang.Boolean) " + value + ").booleanValue();";
+                case CHAR:
+                    return "return ((java.lang.Character) " + value + ").charValue();";
+                default:
+                    return "return ((java.lang.Number) " + value + ")." + returnType + "Value();";
+            }
+        } else if (returnType.getKind() == TypeKind.ARRAY) {
+            if (!erasure.equals(returnType.toString())) {
+                return null;
+            }
+            return "return getTypedProperty(" + quote(key) + ", " + erasure + ".class);";
+        } else if (returnType.getKind() == TypeKind.DECLARED) {
+            List<? extends TypeMirror> typeArguments = ((DeclaredType) returnType).getTypeArguments();
+            if (typeArguments.isEmpty()) {
+                return "return getTypedProperty(" + quote(key) + ", " + erasure + ".class);";
+            }
+
+            // The Factory only knows how to coerce to collections of a plain class
+            TypeMirror itemType = typeArguments.get(0);
+            if (!COLLECTION_TYPES.contains(erasure) || itemType.getKind() != TypeKind.DECLARED ||
+                    !((DeclaredType) itemType).getTypeArguments().isEmpty()) {
+                return null;
+            }
+            return "return getCollectionProperty(" + quote(key) + ", " + erasure + ".class, " + itemType + ".class);";
+        }
+        return null;
+    }
+
+    private String getSignature(ExecutableElement method) {
+        Types types = processingEnv.getTypeUtils();
+        StringBuilder signature = new StringBuilder(method.getSimpleName());
+        signature.append("(");
+        for (VariableElement parameter : method.getParameters()) {
+            signature.append(types.erasure(parameter.asType())).append(",");
+        }
+        return signature.append(")").toString();
+    }
+
+    // Returns the value of the annotation's "value" element, or null if the method does not have the annotation.
+    private static String getAnnotationValue(ExecutableElement method, String annotationType) {
+        for (AnnotationMirror annotation : method.getAnnotationMirrors()) {
+            TypeElement element = (TypeElement) annotation.getAnnotationType().asElement();
+            if (element.getQualifiedName().contentEquals(annotationType)) {
+                for (Map.Entry<? extends ExecutableElement, ? extends AnnotationValue> entry :
+                        annotation.getElementValues().entrySet()) {
+                    if (entry.getKey().getSimpleName().contentEquals("value")) {
+                        return String.valueOf(entry.getValue().getValue());
+                    }
+                }
+                return "";
+            }
+        }
+        return null;
+    }
+
+    private void skip(TypeElement type, String reason) {
+        processingEnv.getMessager().printMessage(Diagnostic.Kind.NOTE,
+                "Not generating an implementation of " + type.getQualifiedName() + " because " + reason +
+                        "; GraphObject.Factory will use a proxy for it", type);
+    }
+
+    // Must match GraphObject.Factory.convertCamelCaseToLowercaseWithUnderscores
+    private static String convertCamelCaseToLowercaseWithUnderscores(String string) {
+        string = string.replaceAll("([a-z])([A-Z])", "$1_$2");
+        return string.toLowerCase(Locale.US);
+    }
+
+    private static String quote(String string) {
+        StringBuilder builder = new StringBuilder("\"");
+        for (int i = 0; i < string.length(); i++) {
+            char c = string.charAt(i);
+            if (c == '"' || c == '\\') {
+                builder.append('\\').append(c);
+            } else if (c < 0x20 || c > 0x7e) {
+                builder.append(String.format("\\u%04x", (int) c));
+            } else {
+                builder.append(c);
+            }
+        }
+        return builder.append('"').toString();
+    }
+}
@@ -698,12 +698,15 @@ public class AppEventsLogger {
 
     private static void flush(final FlushReason reason) {
 
-        Settings.getExecutor().execute(new Runnable() {
+        Runnable flushRunnable = new Runnable() {
             @Override
             public void run() {
                 flushAndWait(reason);
             }
-        });
+        };
+        // A flush posts the events to the server, so it runs with the other network work
+        Settings.getExecutor(Settings.ExecutorType.NETWORK).execute(
+                TaskTracker.wrap(TaskType.APP_EVENTS_FLUSH, flushRunnable));
     }
 
     private static void flushAndWait(final FlushReason reason) {
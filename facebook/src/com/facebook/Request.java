@@ -25,6 +25,7 @@ import android.text.TextUtils;
 import android.util.Pair;
 import com.facebook.internal.ServerProtocol;
 import com.facebook.model.*;
+import com.facebook.internal.DateFormatter;
 import com.facebook.internal.Logger;
 import com.facebook.internal.Utility;
 import com.facebook.internal.Validate;
@@ -37,7 +38,6 @@ import java.net.HttpURLConnection;
 import java.net.MalformedURLException;
 import java.net.URL;
 import java.net.URLEncoder;
-import java.text.SimpleDateFormat;
 import java.util.*;
 import java.util.Map.Entry;
 
@@ -99,7 +99,6 @@ public class Request {
     private static final String ATTACHMENT_FILENAME_PREFIX = "file";
     private static final String ATTACHED_FILES_PARAM = "attached_files";
     private static final String MIGRATION_BUNDLE_PARAM = "migration_bundle";
-    private static final String ISO_8601_FORMAT_STRING = "yyyy-MM-dd'T'HH:mm:ssZ";
     private static final String STAGING_PARAM = "file";
     private static final String OBJECT_PARAM = "object";
 
@@ -1299,6 +1298,12 @@ public class Request {
      * @throws IllegalArgumentException
      */
     public static HttpURLConnection toHttpConnection(RequestBatch requests) {
+        return toHttpConnection(requests, new RequestMetrics());
+    }
+
+    // Records the time taken to serialize the requests in metrics.
+    static HttpURLConnection toHttpConnection(RequestBatch requests, RequestMetrics metrics) {
+        long startNanos = System.nanoTime();
 
         for (Request request : requests) {
             request.validate();
@@ -1324,7 +1329,7 @@ public class Request {
         try {
             connection = createConnection(url);
 
-            serializeToUrlConnection(requests, connection);
+            serializeToUrlConnection(requests, connection, metrics, startNanos);
         } catch (IOException e) {
             throw new FacebookException("could not construct request body", e);
         } catch (JSONException e) {
@@ -1416,16 +1421,20 @@ public class Request {
     public static List<Response> executeBatchAndWait(RequestBatch requests) {
         Validate.notEmptyAndContainsNoNulls(requests, "requests");
 
+        RequestMetrics metrics = new RequestMetrics();
         HttpURLConnection connection = null;
         try {
-            connection = toHttpConnection(requests);
+            connection = toHttpConnection(requests, metrics);
         } catch (Exception ex) {
             List<Response> responses = Response.constructErrorResponses(requests.getRequests(), null, new FacebookException(ex));
-            runCallbacks(requests, responses);
+            for (Response response : responses) {
+                response.setRequestMetrics(metrics);
+            }
+            runCallbacks(requests, responses, metrics);
             return responses;
         }
 
-        List<Response> responses = executeConnectionAndWait(connection, requests);
+        List<Response> responses = executeConnectionAndWait(connection, requests, metrics);
         return responses;
     }
 
@@ -1526,17 +1535,28 @@ public class Request {
      *            If there was an error in the protocol used to communicate with the service
      */
     public static List<Response> executeConnectionAndWait(HttpURLConnection connection, RequestBatch requests) {
-        List<Response> responses = Response.fromHttpConnection(connection, requests);
+        // We did not serialize the connection, so its metrics start with nothing measured
+        return executeConnectionAndWait(connection, requests, new RequestMetrics());
+    }
+
+    // Adds the timings of executing the connection to metrics, which already holds those of serializing it.
+    static List<Response> executeConnectionAndWait(HttpURLConnection connection, RequestBatch requests,
+            RequestMetrics metrics) {
+        List<Response> responses = Response.fromHttpConnection(connection, requests, metrics);
 
         Utility.disconnectQuietly(connection);
 
+        for (Response response : responses) {
+            response.setRequestMetrics(metrics);
+        }
+
         int numRequests = requests.size();
         if (numRequests != responses.size()) {
             throw new FacebookException(String.format("Received %d responses while expecting %d", responses.size(),
                     numRequests));
         }
 
-        runCallbacks(requests, responses);
+        runCallbacks(requests, responses, metrics);
 
         // See if any of these sessions needs its token to be extended. We do this after issuing the request so as to
         // reduce network contention.
@@ -1615,7 +1635,14 @@ public class Request {
                 .append(parameters).append("}").toString();
     }
 
-    static void runCallbacks(final RequestBatch requests, List<Response> responses) {
+    static void runCallbacks(RequestBatch requests, List<Response> responses) {
+        runCallbacks(requests, responses, null);
+    }
+
+    // Once the callbacks have run, records how long that took in metrics, if any, and notifies the listener.
+    static void runCallbacks(final RequestBatch requests, final List<Response> responses,
+            final RequestMetrics metrics) {
+        final long startNanos = System.nanoTime();
         int numRequests = requests.size();
 
         // Compile the list of callbacks to call and then run them either on this thread or via the Handler we received
@@ -1638,6 +1665,11 @@ public class Request {
                     for (RequestBatch.Callback batchCallback : batchCallbacks) {
                         batchCallback.onBatchCompleted(requests);
                     }
+
+                    if (metrics != null) {
+                        metrics.setCallbackTimeNanos(System.nanoTime() - startNanos);
+                        metrics.notifyListener(responses);
+                    }
                 }
             };
 
@@ -1649,6 +1681,9 @@ public class Request {
                 // Post to the handler.
                 callbackHandler.post(runnable);
             }
+        } else if (metrics != null) {
+            metrics.setCallbackTimeNanos(0);
+            metrics.notifyListener(responses);
         }
     }
 
@@ -1796,8 +1831,9 @@ public class Request {
         }
     }
 
-    final static void serializeToUrlConnection(RequestBatch requests, HttpURLConnection connection)
-    throws IOException, JSONException {
+    // startNanos is when the caller started preparing the requests, which counts as serialization.
+    final static void serializeToUrlConnection(RequestBatch requests, HttpURLConnection connection,
+            RequestMetrics metrics, long startNanos) throws IOException, JSONException {
         Logger logger = new Logger(LoggingBehavior.REQUESTS, "Request");
 
         int numRequests = requests.size();
@@ -1821,12 +1857,21 @@ public class Request {
         boolean isPost = (connectionHttpMethod == HttpMethod.POST);
         if (!isPost) {
             logger.log();
+            metrics.setSerializeTimeNanos(System.nanoTime() - startNanos);
             return;
         }
 
         connection.setDoOutput(true);
 
-        BufferedOutputStream outputStream = new BufferedOutputStream(connection.getOutputStream());
+        // Connect up front, so that the time spent connecting is not counted as uploading
+        long connectStartNanos = System.nanoTime();
+        connection.connect();
+        long bodyStartNanos = System.nanoTime();
+        metrics.setConnectTimeNanos(bodyStartNanos - connectStartNanos);
+
+        RequestMetrics.CountingOutputStream countingStream =
+                new RequestMetrics.CountingOutputStream(connection.getOutputStream());
+        BufferedOutputStream outputStream = new BufferedOutputStream(countingStream);
         try {
             Serializer serializer = new Serializer(outputStream, logger);
 
@@ -1861,6 +1906,14 @@ public class Request {
             }
         } finally {
             outputStream.close();
+
+            // The body is written as it is serialized, so time not spent waiting on the network was spent
+            // serializing
+            long bodyNanos = System.nanoTime() - bodyStartNanos;
+            metrics.setUploadTimeNanos(countingStream.getWriteTimeNanos());
+            metrics.setSerializeTimeNanos(
+                    (connectStartNanos - startNanos) + bodyNanos - countingStream.getWriteTimeNanos());
+            metrics.setBytesSent(countingStream.getCount());
         }
 
         logger.log();
@@ -1937,8 +1990,7 @@ public class Request {
             // dates in ISO-8601 format. Pre-migration apps can send as Unix timestamps. Since the future is ISO-8601,
             // that is what we support here. Apps that need pre-migration behavior can explicitly send these as
             // integer timestamps rather than Dates.
-            final SimpleDateFormat iso8601DateFormat = new SimpleDateFormat(ISO_8601_FORMAT_STRING, Locale.US);
-            serializer.writeString(key, iso8601DateFormat.format(date));
+            serializer.writeString(key, DateFormatter.format(date));
         }
     }
 
@@ -2033,8 +2085,7 @@ public class Request {
         } else if (value instanceof Boolean || value instanceof Number) {
             return value.toString();
         } else if (value instanceof Date) {
-            final SimpleDateFormat iso8601DateFormat = new SimpleDateFormat(ISO_8601_FORMAT_STRING, Locale.US);
-            return iso8601DateFormat.format(value);
+            return DateFormatter.format((Date) value);
         }
         throw new IllegalArgumentException("Unsupported parameter type.");
     }
@@ -2073,7 +2124,7 @@ public class Request {
             writeContentDisposition(key, null, null);
             writeLine("%s", value);
             writeRecordBoundary();
-            if (logger != null) {
+            if (logger != null && logger.shouldLog()) {
                 logger.appendKeyValue("    " + key, value);
             }
         }
@@ -2084,7 +2135,9 @@ public class Request {
             bitmap.compress(Bitmap.CompressFormat.PNG, 100, outputStream);
             writeLine("");
             writeRecordBoundary();
-            logger.appendKeyValue("    " + key, "<Image>");
+            if (logger.shouldLog()) {
+                logger.appendKeyValue("    " + key, "<Image>");
+            }
         }
 
         public void writeBytes(String key, byte[] bytes) throws IOException {
@@ -2092,7 +2145,9 @@ public class Request {
             this.outputStream.write(bytes);
             writeLine("");
             writeRecordBoundary();
-            logger.appendKeyValue("    " + key, String.format("<Data: %d>", bytes.length));
+            if (logger.shouldLog()) {
+                logger.appendKeyValue("    " + key, String.format("<Data: %d>", bytes.length));
+            }
         }
 
         public void writeFile(String key, ParcelFileDescriptorWithMimeType descriptorWithMimeType) throws IOException {
@@ -2128,7 +2183,9 @@ public class Request {
             }
             writeLine("");
             writeRecordBoundary();
-            logger.appendKeyValue("    " + key, String.format("<Data: %d>", totalBytes));
+            if (logger.shouldLog()) {
+                logger.appendKeyValue("    " + key, String.format("<Data: %d>", totalBytes));
+            }
         }
 
         public void writeRecordBoundary() throws IOException {
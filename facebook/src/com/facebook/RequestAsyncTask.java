@@ -20,6 +20,7 @@ import android.annotation.TargetApi;
 import android.os.AsyncTask;
 import android.os.Handler;
 import android.util.Log;
+import com.facebook.internal.TaskTracker;
 
 import java.lang.reflect.InvocationTargetException;
 import java.lang.reflect.Method;
@@ -174,7 +175,8 @@ public class RequestAsyncTask extends AsyncTask<Void, Void, List<Response>> {
     RequestAsyncTask executeOnSettingsExecutor() {
         try {
             if (executeOnExecutorMethod != null) {
-                executeOnExecutorMethod.invoke(this, Settings.getExecutor(), null);
+                executeOnExecutorMethod.invoke(this, TaskTracker.wrap(TaskType.REQUEST,
+                        Settings.getExecutor(Settings.ExecutorType.NETWORK)), null);
                 return this;
             }
         } catch (InvocationTargetException e) {
@@ -0,0 +1,286 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.io.FilterOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.List;
+
+/**
+ * Records where the time went while executing a RequestBatch, broken down into phases, along with the number of
+ * bytes sent and received. Every Response from a batch shares the same RequestMetrics, available through
+ * {@link Response#getRequestMetrics()}. To collect metrics for every batch the SDK executes, register a
+ * {@link Listener} through {@link Settings#setRequestMetricsListener(Listener)}.
+ *
+ * Times are in nanoseconds. A phase that did not happen, such as connecting when the response came from the
+ * cache, or that could not be measured, is reported as {@link #NOT_MEASURED}.
+ */
+public final class RequestMetrics {
+    /**
+     * Returned for phases that did not happen or could not be measured.
+     */
+    public static final long NOT_MEASURED = -1;
+
+    private long serializeTimeNanos = NOT_MEASURED;
+    private long connectTimeNanos = NOT_MEASURED;
+    private long uploadTimeNanos = NOT_MEASURED;
+    private long timeToFirstByteNanos = NOT_MEASURED;
+    private long downloadTimeNanos = NOT_MEASURED;
+    private long parseTimeNanos = NOT_MEASURED;
+    private long callbackTimeNanos = NOT_MEASURED;
+    private long bytesSent;
+    private long bytesReceived;
+    private boolean isFromCache;
+
+    /**
+     * Specifies the interface that consumers can implement in order to be notified each time a RequestBatch
+     * finishes executing, for example to aggregate latency per Graph path.
+     */
+    public interface Listener {
+        /**
+         * Called after the callbacks for a batch have run, on the thread that ran them. Implementations should
+         * return quickly.
+         *
+         * @param responses the responses from the batch, in the same order as its requests
+         * @param metrics   the metrics for the batch
+         */
+        void onCompleted(List<Response> responses, RequestMetrics metrics);
+    }
+
+    RequestMetrics() {
+    }
+
+    /**
+     * Returns the time spent validating the requests and writing out their parameters and attachments, not
+     * counting time spent waiting for the network to accept them.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getSerializeTimeNanos() {
+        return serializeTimeNanos;
+    }
+
+    /**
+     * Returns the time spent opening the connection. HttpURLConnection does not report DNS resolution or the
+     * TLS handshake separately, so both are included.
+     *
+     * @return the time in nanoseconds, or NOT_MEASURED if no connection was made
+     */
+    public long getConnectTimeNanos() {
+        return connectTimeNanos;
+    }
+
+    /**
+     * Returns the time spent waiting for the network to accept the request body.
+     *
+     * @return the time in nanoseconds, or NOT_MEASURED if there was no request body
+     */
+    public long getUploadTimeNanos() {
+        return uploadTimeNanos;
+    }
+
+    /**
+     * Returns the time between starting to wait for the response and receiving its headers.
+     *
+     * @return the time in nanoseconds, or NOT_MEASURED if the response came from the cache
+     */
+    public long getTimeToFirstByteNanos() {
+        return timeToFirstByteNanos;
+    }
+
+    /**
+     * Returns the time spent reading the response body, from the network or from the cache.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getDownloadTimeNanos() {
+        return downloadTimeNanos;
+    }
+
+    /**
+     * Returns the time spent turning the response body into Responses.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getParseTimeNanos() {
+        return parseTimeNanos;
+    }
+
+    /**
+     * Returns the time between the Responses being ready and the last callback returning. When callbacks are
+     * posted to a Handler, this includes the time spent waiting for the Handler's thread.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getCallbackTimeNanos() {
+        return callbackTimeNanos;
+    }
+
+    /**
+     * Returns the sum of all the phases that were measured.
+     *
+     * @return the time in nanoseconds
+     */
+    public long getTotalTimeNanos() {
+        long total = 0;
+        for (long phase : new long[] { serializeTimeNanos, connectTimeNanos, uploadTimeNanos,
+                timeToFirstByteNanos, downloadTimeNanos, parseTimeNanos, callbackTimeNanos }) {
+            if (phase != NOT_MEASURED) {
+                total += phase;
+            }
+        }
+        return total;
+    }
+
+    /**
+     * Returns the size of the request body.
+     *
+     * @return the number of bytes sent
+     */
+    public long getBytesSent() {
+        return bytesSent;
+    }
+
+    /**
+     * Returns the size of the response body.
+     *
+     * @return the number of bytes received, or read from the cache
+     */
+    public long getBytesReceived() {
+        return bytesReceived;
+    }
+
+    /**
+     * Indicates whether the responses were read from a local cache rather than from the server.
+     *
+     * @return true if the responses came from the cache
+     */
+    public boolean getIsFromCache() {
+        return isFromCache;
+    }
+
+    @Override
+    public String toString() {
+        return new StringBuilder().append("{RequestMetrics: ").append(" serialize: ").append(serializeTimeNanos)
+                .append(", connect: ").append(connectTimeNanos).append(", upload: ").append(uploadTimeNanos)
+                .append(", timeToFirstByte: ").append(timeToFirstByteNanos).append(", download: ")
+                .append(downloadTimeNanos).append(", parse: ").append(parseTimeNanos).append(", callback: ")
+                .append(callbackTimeNanos).append(", bytesSent: ").append(bytesSent).append(", bytesReceived: ")
+                .append(bytesReceived).append(", isFromCache: ").append(isFromCache).append("}").toString();
+    }
+
+    void setSerializeTimeNanos(long serializeTimeNanos) {
+        this.serializeTimeNanos = serializeTimeNanos;
+    }
+
+    void setConnectTimeNanos(long connectTimeNanos) {
+        this.connectTimeNanos = connectTimeNanos;
+    }
+
+    void setUploadTimeNanos(long uploadTimeNanos) {
+        this.uploadTimeNanos = uploadTimeNanos;
+    }
+
+    void setTimeToFirstByteNanos(long timeToFirstByteNanos) {
+        this.timeToFirstByteNanos = timeToFirstByteNanos;
+    }
+
+    void setDownloadTimeNanos(long downloadTimeNanos) {
+        this.downloadTimeNanos = downloadTimeNanos;
+    }
+
+    void setParseTimeNanos(long parseTimeNanos) {
+        this.parseTimeNanos = parseTimeNanos;
+    }
+
+    void setCallbackTimeNanos(long callbackTimeNanos) {
+        this.callbackTimeNanos = callbackTimeNanos;
+    }
+
+    void setBytesSent(long bytesSent) {
+        this.bytesSent = bytesSent;
+    }
+
+    void setBytesReceived(long bytesReceived) {
+        this.bytesReceived = bytesReceived;
+    }
+
+    void setIsFromCache(boolean isFromCache) {
+        this.isFromCache = isFromCache;
+    }
+
+    void notifyListener(List<Response> responses) {
+        Listener listener = Settings.getRequestMetricsListener();
+        if (listener != null) {
+            listener.onCompleted(responses, this);
+        }
+    }
+
+    // Counts the bytes written, and the time spent waiting for the underlying stream to accept them.
+    static class CountingOutputStream extends FilterOutputStream {
+        private long count;
+        private long writeTimeNanos;
+
+        CountingOutputStream(OutputStream stream) {
+            super(stream);
+        }
+
+        long getCount() {
+            return count;
+        }
+
+        long getWriteTimeNanos() {
+            return writeTimeNanos;
+        }
+
+        @Override
+        public void write(int oneByte) throws IOException {
+            long startNanos = System.nanoTime();
+            out.write(oneByte);
+            writeTimeNanos += System.nanoTime() - startNanos;
+            count++;
+        }
+
+        @Override
+        public void write(byte[] buffer, int offset, int length) throws IOException {
+            // FilterOutputStream would write this one byte at a time
+            long startNanos = System.nanoTime();
+            out.write(buffer, offset, length);
+            writeTimeNanos += System.nanoTime() - startNanos;
+            count += length;
+        }
+
+        @Override
+        public void flush() throws IOException {
+            long startNanos = System.nanoTime();
+            out.flush();
+            writeTimeNanos += System.nanoTime() - startNanos;
+        }
+
+        @Override
+        public void close() throws IOException {
+            long startNanos = System.nanoTime();
+            try {
+                // Not super.close(), which would time the flush twice
+                out.close();
+            } finally {
+                writeTimeNanos += System.nanoTime() - startNanos;
+            }
+        }
+    }
+}
@@ -43,6 +43,7 @@ public class Response {
     private final boolean isFromCache;
     private final FacebookRequestError error;
     private final Request request;
+    private RequestMetrics requestMetrics;
 
     /**
      * Property name of non-JSON results in the GraphObject. Certain calls to Facebook result in a non-JSON response
@@ -166,6 +167,21 @@ public class Response {
         return request;
     }
 
+    /**
+     * Returns timings and byte counts for the batch that this response was part of. Every response from the
+     * same batch returns the same RequestMetrics, whose callback time is only filled in once all of the batch's
+     * callbacks have run.
+     *
+     * @return the metrics, or null if the response was not produced by executing a batch
+     */
+    public final RequestMetrics getRequestMetrics() {
+        return requestMetrics;
+    }
+
+    final void setRequestMetrics(RequestMetrics requestMetrics) {
+        this.requestMetrics = requestMetrics;
+    }
+
     /**
      * Indicates whether paging is being done forward or backward.
      */
@@ -261,7 +277,8 @@ public class Response {
     }
 
     @SuppressWarnings("resource")
-    static List<Response> fromHttpConnection(HttpURLConnection connection, RequestBatch requests) {
+    static List<Response> fromHttpConnection(HttpURLConnection connection, RequestBatch requests,
+            RequestMetrics metrics) {
         InputStream stream = null;
 
         FileLruCache cache = null;
@@ -285,7 +302,8 @@ public class Response {
                 try {
                     stream = cache.get(cacheKey);
                     if (stream != null) {
-                        return createResponsesFromStream(stream, null, requests, true);
+                        metrics.setIsFromCache(true);
+                        return createResponsesFromStream(stream, null, requests, true, metrics);
                     }
                 } catch (FacebookException exception) { // retry via roundtrip below
                 } catch (JSONException exception) {
@@ -297,8 +315,20 @@ public class Response {
         }
 
         // Load from the network, and cache the result if not an error.
+        metrics.setIsFromCache(false);
         try {
-            if (connection.getResponseCode() >= 400) {
+            if (metrics.getConnectTimeNanos() == RequestMetrics.NOT_MEASURED) {
+                // Requests without a body are not connected until now
+                long connectStartNanos = System.nanoTime();
+                connection.connect();
+                metrics.setConnectTimeNanos(System.nanoTime() - connectStartNanos);
+            }
+
+            long waitStartNanos = System.nanoTime();
+            int responseCode = connection.getResponseCode();
+            metrics.setTimeToFirstByteNanos(System.nanoTime() - waitStartNanos);
+
+            if (responseCode >= 400) {
                 stream = connection.getErrorStream();
             } else {
                 stream = connection.getInputStream();
@@ -310,7 +340,7 @@ public class Response {
                 }
             }
 
-            return createResponsesFromStream(stream, connection, requests, false);
+            return createResponsesFromStream(stream, connection, requests, false, metrics);
         } catch (FacebookException facebookException) {
             Logger.log(LoggingBehavior.REQUESTS, RESPONSE_LOG_TAG, "Response <Error>: %s", facebookException);
             return constructErrorResponses(requests, connection, facebookException);
@@ -329,19 +359,28 @@ public class Response {
     }
 
     static List<Response> createResponsesFromStream(InputStream stream, HttpURLConnection connection,
-            RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
+            RequestBatch requests, boolean isFromCache, RequestMetrics metrics)
+            throws FacebookException, JSONException, IOException {
+
+        long downloadStartNanos = System.nanoTime();
+        CountingInputStream countingStream = new CountingInputStream(stream);
+        String responseString = Utility.readStreamToString(countingStream);
+        metrics.setDownloadTimeNanos(System.nanoTime() - downloadStartNanos);
+        metrics.setBytesReceived(countingStream.getCount());
 
-        String responseString = Utility.readStreamToString(stream);
         Logger.log(LoggingBehavior.INCLUDE_RAW_RESPONSES, RESPONSE_LOG_TAG,
                 "Response (raw)\n  Size: %d\n  Response:\n%s\n", responseString.length(),
                 responseString);
 
-        return createResponsesFromString(responseString, connection, requests, isFromCache);
+        long parseStartNanos = System.nanoTime();
+        List<Response> responses = createResponsesFromString(responseString, connection, requests, isFromCache);
+        metrics.setParseTimeNanos(System.nanoTime() - parseStartNanos);
+        return responses;
     }
 
     static List<Response> createResponsesFromString(String responseString, HttpURLConnection connection,
             RequestBatch requests, boolean isFromCache) throws FacebookException, JSONException, IOException {
-        JSONTokener tokener = new JSONTokener(responseString);
+        JSONTokener tokener = JsonKeyPool.createTokener(responseString);
         Object resultObject = tokener.nextValue();
 
         List<Response> responses = createResponsesFromObject(connection, requests, resultObject, isFromCache);
@@ -0,0 +1,18 @@
+// Generated by GraphObjectProcessor from com.facebook.Response.PagedResults. Do not edit.
+package com.facebook;
+
+final class Response_PagedResults_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.Response.PagedResults {
+    Response_PagedResults_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.Response.PagedResults.class);
+    }
+
+    @Override
+    public com.facebook.model.GraphObjectList<com.facebook.model.GraphObject> getData() {
+        return getCollectionProperty("data", com.facebook.model.GraphObjectList.class, com.facebook.model.GraphObject.class);
+    }
+
+    @Override
+    public com.facebook.Response.PagingInfo getPaging() {
+        return getTypedProperty("paging", com.facebook.Response.PagingInfo.class);
+    }
+}
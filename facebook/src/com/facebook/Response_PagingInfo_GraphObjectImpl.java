@@ -0,0 +1,18 @@
+// Generated by GraphObjectProcessor from com.facebook.Response.PagingInfo. Do not edit.
+package com.facebook;
+
+final class Response_PagingInfo_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.Response.PagingInfo {
+    Response_PagingInfo_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.Response.PagingInfo.class);
+    }
+
+    @Override
+    public java.lang.String getNext() {
+        return getTypedProperty("next", java.lang.String.class);
+    }
+
+    @Override
+    public java.lang.String getPrevious() {
+        return getTypedProperty("previous", java.lang.String.class);
+    }
+}
@@ -31,6 +31,7 @@ import org.json.JSONObject;
 import java.io.*;
 import java.lang.ref.WeakReference;
 import java.util.*;
+import java.util.concurrent.Executor;
 
 /**
  * <p>
@@ -1331,7 +1332,8 @@ public class Session implements Serializable {
         if (handler != null) {
             handler.post(runnable);
         } else {
-            Settings.getExecutor().execute(runnable);
+            Executor executor = Settings.getExecutor(Settings.ExecutorType.NETWORK);
+            executor.execute(TaskTracker.wrap(TaskType.OTHER, runnable));
         }
     }
 
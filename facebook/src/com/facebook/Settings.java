@@ -26,6 +26,7 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 import com.facebook.android.BuildConfig;
+import com.facebook.internal.BoundedExecutor;
 import com.facebook.internal.Utility;
 import com.facebook.model.GraphObject;
 import com.facebook.internal.Validate;
@@ -41,10 +42,43 @@ import java.util.concurrent.atomic.AtomicInteger;
  * Allows some customization of sdk behavior.
  */
 public final class Settings {
+    /**
+     * Kinds of background work that the SDK runs on separate thread pools, so that a burst of one kind does
+     * not hold up the others.
+     */
+    public enum ExecutorType {
+        /**
+         * Graph API requests, App Events flushes, image downloads and other network I/O.
+         */
+        NETWORK,
+
+        /**
+         * Reading, writing and trimming the SDK's disk caches.
+         */
+        DISK,
+
+        /**
+         * CPU-bound work such as decoding images.
+         */
+        DECODE
+    }
+
     private static final String TAG = Settings.class.getCanonicalName();
-    private static final HashSet<LoggingBehavior> loggingBehaviors =
-            new HashSet<LoggingBehavior>(Arrays.asList(LoggingBehavior.DEVELOPER_ERRORS));
+    // One bit per LoggingBehavior ordinal, so that checking a behavior is a single volatile read
+    private static final AtomicInteger loggingBehaviors =
+            new AtomicInteger(getLoggingBehaviorBit(LoggingBehavior.DEVELOPER_ERRORS));
     private static volatile Executor executor;
+    private static final EnumMap<ExecutorType, Executor> typedExecutors =
+            new EnumMap<ExecutorType, Executor>(ExecutorType.class);
+    // The pools that the SDK created itself, as opposed to those passed to setExecutor
+    private static final EnumMap<ExecutorType, BoundedExecutor> createdExecutors =
+            new EnumMap<ExecutorType, BoundedExecutor>(ExecutorType.class);
+    private static final EnumMap<ExecutorType, Integer> typedExecutorThreadCounts =
+            new EnumMap<ExecutorType, Integer>(ExecutorType.class);
+    private static volatile TaskInstrumentation taskInstrumentation;
+    private static volatile RequestMetrics.Listener requestMetricsListener;
+    private static volatile boolean shouldCacheGraphObjectWrappers;
+    private static volatile boolean shouldCompareGraphObjectsById;
     private static volatile boolean shouldAutoPublishInstall;
     private static volatile String appVersion;
     private static final String FACEBOOK_COM = "facebook.com";
@@ -53,6 +87,11 @@ public final class Settings {
     private static final int DEFAULT_CORE_POOL_SIZE = 5;
     private static final int DEFAULT_MAXIMUM_POOL_SIZE = 128;
     private static final int DEFAULT_KEEP_ALIVE = 1;
+
+    private static final int DEFAULT_NETWORK_THREAD_COUNT = 8;
+    private static final int DEFAULT_DISK_THREAD_COUNT = 2;
+    private static final int MAX_DEFAULT_DECODE_THREAD_COUNT = 4;
+    private static final int DEFAULT_TYPED_QUEUE_CAPACITY = 128;
     private static final Object LOCK = new Object();
 
     private static final Uri ATTRIBUTION_ID_CONTENT_URI =
@@ -85,9 +124,14 @@ public final class Settings {
      * @return a set containing enabled logging behaviors
      */
     public static final Set<LoggingBehavior> getLoggingBehaviors() {
-        synchronized (loggingBehaviors) {
-            return Collections.unmodifiableSet(new HashSet<LoggingBehavior>(loggingBehaviors));
+        int bits = loggingBehaviors.get();
+        HashSet<LoggingBehavior> behaviors = new HashSet<LoggingBehavior>();
+        for (LoggingBehavior behavior : LoggingBehavior.values()) {
+            if ((bits & getLoggingBehaviorBit(behavior)) != 0) {
+                behaviors.add(behavior);
+            }
         }
+        return Collections.unmodifiableSet(behaviors);
     }
 
     /**
@@ -100,9 +144,11 @@ public final class Settings {
      *          The LoggingBehavior to enable
      */
     public static final void addLoggingBehavior(LoggingBehavior behavior) {
-        synchronized (loggingBehaviors) {
-            loggingBehaviors.add(behavior);
-        }
+        int bit = getLoggingBehaviorBit(behavior);
+        int bits;
+        do {
+            bits = loggingBehaviors.get();
+        } while (!loggingBehaviors.compareAndSet(bits, bits | bit));
     }
 
     /**
@@ -115,9 +161,11 @@ public final class Settings {
      *          The LoggingBehavior to disable
      */
     public static final void removeLoggingBehavior(LoggingBehavior behavior) {
-        synchronized (loggingBehaviors) {
-            loggingBehaviors.remove(behavior);
-        }
+        int bit = getLoggingBehaviorBit(behavior);
+        int bits;
+        do {
+            bits = loggingBehaviors.get();
+        } while (!loggingBehaviors.compareAndSet(bits, bits & ~bit));
     }
 
     /**
@@ -127,9 +175,7 @@ public final class Settings {
      * Disables all extended logging behaviors.
      */
     public static final void clearLoggingBehaviors() {
-        synchronized (loggingBehaviors) {
-            loggingBehaviors.clear();
-        }
+        loggingBehaviors.set(0);
     }
 
     /**
@@ -143,9 +189,11 @@ public final class Settings {
      * @return whether behavior is enabled
      */
     public static final boolean isLoggingBehaviorEnabled(LoggingBehavior behavior) {
-        synchronized (loggingBehaviors) {
-            return BuildConfig.DEBUG && loggingBehaviors.contains(behavior);
-        }
+        return BuildConfig.DEBUG && (loggingBehaviors.get() & getLoggingBehaviorBit(behavior)) != 0;
+    }
+
+    private static int getLoggingBehaviorBit(LoggingBehavior behavior) {
+        return 1 << behavior.ordinal();
     }
 
     /**
@@ -154,6 +202,9 @@ public final class Settings {
      * By default this uses AsyncTask Executor via reflection if the API level is high enough.
      * Otherwise this creates a new Executor with defaults similar to those used in AsyncTask.
      *
+     * Graph API requests, App Events flushes and Session callbacks do not use this Executor; they run on
+     * {@link #getExecutor(ExecutorType)} for {@link ExecutorType#NETWORK}, which does not reject work under load.
+     *
      * @return an Executor used by the SDK.  This will never be null.
      */
     public static Executor getExecutor() {
@@ -183,6 +234,196 @@ public final class Settings {
         }
     }
 
+    /**
+     * Returns the Executor used by the SDK for the given kind of background work.
+     *
+     * By default each kind has its own pool with a fixed number of threads and a bounded queue. When the
+     * queue is full, work submitted from background threads waits for room instead of being rejected.
+     *
+     * @param type
+     *          the kind of work
+     * @return an Executor for that kind of work.  This will never be null.
+     */
+    public static Executor getExecutor(ExecutorType type) {
+        Validate.notNull(type, "type");
+        synchronized (LOCK) {
+            Executor typedExecutor = typedExecutors.get(type);
+            if (typedExecutor == null) {
+                BoundedExecutor createdExecutor = new BoundedExecutor(
+                        type.name(),
+                        getExecutorThreadCount(type),
+                        DEFAULT_TYPED_QUEUE_CAPACITY);
+                typedExecutors.put(type, createdExecutor);
+                createdExecutors.put(type, createdExecutor);
+                typedExecutor = createdExecutor;
+            }
+            return typedExecutor;
+        }
+    }
+
+    /**
+     * Sets the Executor used by the SDK for the given kind of background work. If the SDK had created a pool
+     * for that kind, it is shut down once the work already submitted to it has finished.
+     *
+     * @param type
+     *          the kind of work
+     * @param executor
+     *          the Executor to use; must not be null.
+     */
+    public static void setExecutor(ExecutorType type, Executor executor) {
+        Validate.notNull(type, "type");
+        Validate.notNull(executor, "executor");
+        synchronized (LOCK) {
+            shutDownCreatedExecutor(type);
+            typedExecutors.put(type, executor);
+        }
+    }
+
+    /**
+     * Returns the number of threads in the default pool for the given kind of background work.
+     *
+     * @param type
+     *          the kind of work
+     * @return the number of threads
+     */
+    public static int getExecutorThreadCount(ExecutorType type) {
+        Validate.notNull(type, "type");
+        synchronized (LOCK) {
+            Integer threadCount = typedExecutorThreadCounts.get(type);
+            if (threadCount != null) {
+                return threadCount;
+            }
+        }
+
+        switch (type) {
+            case NETWORK:
+                return DEFAULT_NETWORK_THREAD_COUNT;
+            case DISK:
+                return DEFAULT_DISK_THREAD_COUNT;
+            default:
+                return Math.max(1, Math.min(Runtime.getRuntime().availableProcessors(), MAX_DEFAULT_DECODE_THREAD_COUNT));
+        }
+    }
+
+    /**
+     * Sets the number of threads in the default pool for the given kind of background work. This replaces
+     * any Executor set through setExecutor for that kind. Work that was already submitted finishes on the
+     * previous Executor, after which a pool that the SDK created is shut down. Executors passed to
+     * setExecutor are never shut down.
+     *
+     * @param type
+     *          the kind of work
+     * @param threadCount
+     *          the number of threads; must be positive.
+     */
+    public static void setExecutorThreadCount(ExecutorType type, int threadCount) {
+        Validate.notNull(type, "type");
+        Validate.isPositive(threadCount, "threadCount");
+        synchronized (LOCK) {
+            typedExecutorThreadCounts.put(type, threadCount);
+            shutDownCreatedExecutor(type);
+            typedExecutors.remove(type);
+        }
+    }
+
+    // Must be called while holding LOCK. Core threads do not time out before Gingerbread, so a replaced pool
+    // would otherwise keep its threads forever.
+    private static void shutDownCreatedExecutor(ExecutorType type) {
+        BoundedExecutor createdExecutor = createdExecutors.remove(type);
+        if (createdExecutor != null && typedExecutors.get(type) == createdExecutor) {
+            createdExecutor.shutdown();
+        }
+    }
+
+    /**
+     * Returns the TaskInstrumentation that receives events about the SDK's background work.
+     *
+     * @return the TaskInstrumentation, or null if none is set
+     */
+    public static TaskInstrumentation getTaskInstrumentation() {
+        return taskInstrumentation;
+    }
+
+    /**
+     * Sets the TaskInstrumentation that receives events about the SDK's background work, such as how long
+     * each kind of work waits and runs. Work that is already queued keeps reporting to the
+     * TaskInstrumentation that was set when it was queued.
+     *
+     * @param taskInstrumentation
+     *          the TaskInstrumentation to use, or null to stop reporting events
+     */
+    public static void setTaskInstrumentation(TaskInstrumentation taskInstrumentation) {
+        Settings.taskInstrumentation = taskInstrumentation;
+    }
+
+    /**
+     * Returns the listener that is notified with the RequestMetrics of every RequestBatch the SDK executes.
+     *
+     * @return the listener, or null if none is set
+     */
+    public static RequestMetrics.Listener getRequestMetricsListener() {
+        return requestMetricsListener;
+    }
+
+    /**
+     * Sets the listener that is notified with the RequestMetrics of every RequestBatch the SDK executes, after
+     * the batch's callbacks have run.
+     *
+     * @param requestMetricsListener
+     *          the listener to use, or null to stop notifying
+     */
+    public static void setRequestMetricsListener(RequestMetrics.Listener requestMetricsListener) {
+        Settings.requestMetricsListener = requestMetricsListener;
+    }
+
+    /**
+     * Returns whether GraphObjects and GraphObjectLists remember the GraphObject and GraphObjectList wrappers
+     * their getters create for nested JSON objects and arrays.
+     *
+     * @return true if wrappers are cached, false otherwise
+     */
+    public static boolean getShouldCacheGraphObjectWrappers() {
+        return shouldCacheGraphObjectWrappers;
+    }
+
+    /**
+     * Sets whether GraphObjects and GraphObjectLists created from now on remember the GraphObject and
+     * GraphObjectList wrappers their getters create for nested JSON objects and arrays. When set, calling a
+     * getter such as GraphUser.getLocation() or GraphObjectList.get() again returns the same wrapper rather than
+     * allocating a new one, for as long as the property still holds the same underlying JSON value. This saves
+     * allocations when the same objects are read over and over, such as by adapters and sort comparators, at
+     * the cost of keeping the wrappers alive as long as the objects that created them. Defaults to false.
+     *
+     * @param shouldCacheGraphObjectWrappers true to cache wrappers, false otherwise
+     */
+    public static void setShouldCacheGraphObjectWrappers(boolean shouldCacheGraphObjectWrappers) {
+        Settings.shouldCacheGraphObjectWrappers = shouldCacheGraphObjectWrappers;
+    }
+
+    /**
+     * Returns whether GraphObjects compare equal when they have the same id.
+     *
+     * @return true if GraphObjects are compared by id, false if they are only equal to views of the same data
+     */
+    public static boolean getShouldCompareGraphObjectsById() {
+        return shouldCompareGraphObjectsById;
+    }
+
+    /**
+     * Sets whether GraphObjects compare equal when they have the same id. By default, two GraphObjects are equal
+     * only if they wrap the same underlying JSONObject, so the same user read from two responses appears twice in
+     * a Set. When set, GraphObjects that have a String "id" property are equal if their ids are equal, and hash by
+     * id; GraphObjects without an id still use the default rule. Defaults to false.
+     * <p/>
+     * This changes the hash codes of existing GraphObjects, so it should be set before any GraphObjects are put
+     * into sets or used as map keys.
+     *
+     * @param shouldCompareGraphObjectsById true to compare GraphObjects by id, false otherwise
+     */
+    public static void setShouldCompareGraphObjectsById(boolean shouldCompareGraphObjectsById) {
+        Settings.shouldCompareGraphObjectsById = shouldCompareGraphObjectsById;
+    }
+
     /**
      * Gets the base Facebook domain to use when making Web requests; in production code this will always be
      * "facebook.com".
@@ -261,7 +502,7 @@ public final class Settings {
         final Request.Callback callback) {
         // grab the application context ahead of time, since we will return to the caller immediately.
         final Context applicationContext = context.getApplicationContext();
-        Settings.getExecutor().execute(new Runnable() {
+        Settings.getExecutor(ExecutorType.NETWORK).execute(new Runnable() {
             @Override
             public void run() {
                 final Response response = Settings.publishInstallAndWaitForResponse(applicationContext, applicationId);
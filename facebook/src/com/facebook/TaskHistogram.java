@@ -0,0 +1,237 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * A {@link TaskInstrumentation} that keeps histograms of wait and run times, along with queue lengths and
+ * the number of items running at once, for each {@link TaskType}. Recording an event only updates a few
+ * atomic counters, so this is cheap enough to leave registered while the app is in use; call
+ * {@link #dump()} at any time to see the results.
+ *
+ * Times are counted in buckets whose bounds double from one microsecond up to about 16 seconds, so
+ * percentiles are accurate to within a factor of two.
+ */
+public class TaskHistogram implements TaskInstrumentation {
+    // Bucket 0 holds times under a microsecond; bucket i holds times under 2^i microseconds
+    private static final int BUCKET_COUNT = 26;
+
+    private final Stats[] stats;
+
+    /**
+     * Creates an empty histogram.
+     */
+    public TaskHistogram() {
+        TaskType[] types = TaskType.values();
+        stats = new Stats[types.length];
+        for (int i = 0; i < types.length; i++) {
+            stats[i] = new Stats();
+        }
+    }
+
+    @Override
+    public void onTaskQueued(TaskType type, int queueLength) {
+        updateMax(getStats(type).maxQueueLength, queueLength);
+    }
+
+    @Override
+    public void onTaskStarted(TaskType type, long waitTimeNanos) {
+        Stats typeStats = getStats(type);
+        typeStats.waitTimes.incrementAndGet(getBucket(waitTimeNanos));
+        typeStats.totalWaitTimeNanos.addAndGet(waitTimeNanos);
+        updateMax(typeStats.maxActiveCount, typeStats.activeCount.incrementAndGet());
+    }
+
+    @Override
+    public void onTaskFinished(TaskType type, long runTimeNanos) {
+        Stats typeStats = getStats(type);
+        typeStats.activeCount.decrementAndGet();
+        typeStats.runTimes.incrementAndGet(getBucket(runTimeNanos));
+        typeStats.totalRunTimeNanos.addAndGet(runTimeNanos);
+        typeStats.finishedCount.incrementAndGet();
+    }
+
+    /**
+     * Returns the number of items of the given kind that have finished running.
+     *
+     * @param type
+     *          the kind of work
+     * @return the number of items
+     */
+    public long getTaskCount(TaskType type) {
+        return getStats(type).finishedCount.get();
+    }
+
+    /**
+     * Returns the largest number of items of the given kind that were waiting to run at once.
+     *
+     * @param type
+     *          the kind of work
+     * @return the number of items
+     */
+    public int getMaxQueueLength(TaskType type) {
+        return getStats(type).maxQueueLength.get();
+    }
+
+    /**
+     * Returns the largest number of items of the given kind that were running at once.
+     *
+     * @param type
+     *          the kind of work
+     * @return the number of items
+     */
+    public int getMaxActiveCount(TaskType type) {
+        return getStats(type).maxActiveCount.get();
+    }
+
+    /**
+     * Returns an upper bound on the time that the given fraction of items of the given kind waited
+     * before they started.
+     *
+     * @param type
+     *          the kind of work
+     * @param percentile
+     *          the percentile to return, between 0 and 100
+     * @return the wait time in microseconds, or 0 if no items have started
+     */
+    public long getWaitTimeMicrosAtPercentile(TaskType type, double percentile) {
+        return getPercentile(getStats(type).waitTimes, percentile);
+    }
+
+    /**
+     * Returns an upper bound on the time that the given fraction of items of the given kind ran for.
+     *
+     * @param type
+     *          the kind of work
+     * @param percentile
+     *          the percentile to return, between 0 and 100
+     * @return the run time in microseconds, or 0 if no items have finished
+     */
+    public long getRunTimeMicrosAtPercentile(TaskType type, double percentile) {
+        return getPercentile(getStats(type).runTimes, percentile);
+    }
+
+    /**
+     * Clears everything recorded so far. Items that are still running stay counted as running.
+     */
+    public void reset() {
+        for (Stats typeStats : stats) {
+            typeStats.reset();
+        }
+    }
+
+    /**
+     * Returns a summary of everything recorded so far, one line per kind of work that has run.
+     *
+     * @return the summary
+     */
+    public String dump() {
+        StringBuilder builder = new StringBuilder();
+        for (TaskType type : TaskType.values()) {
+            Stats typeStats = getStats(type);
+            long count = typeStats.finishedCount.get();
+            if (count == 0) {
+                continue;
+            }
+
+            builder.append(type)
+                    .append(": count ").append(count)
+                    .append(", wait avg ").append(typeStats.totalWaitTimeNanos.get() / count / 1000)
+                    .append("us p50 ").append(getPercentile(typeStats.waitTimes, 50))
+                    .append("us p95 ").append(getPercentile(typeStats.waitTimes, 95))
+                    .append("us, run avg ").append(typeStats.totalRunTimeNanos.get() / count / 1000)
+                    .append("us p50 ").append(getPercentile(typeStats.runTimes, 50))
+                    .append("us p95 ").append(getPercentile(typeStats.runTimes, 95))
+                    .append("us, max queued ").append(typeStats.maxQueueLength.get())
+                    .append(", max running ").append(typeStats.maxActiveCount.get())
+                    .append('\n');
+        }
+        return builder.toString();
+    }
+
+    @Override
+    public String toString() {
+        return "{TaskHistogram:\n" + dump() + "}";
+    }
+
+    private Stats getStats(TaskType type) {
+        return stats[type.ordinal()];
+    }
+
+    private static int getBucket(long nanos) {
+        long micros = nanos / 1000;
+        if (micros <= 0) {
+            return 0;
+        }
+        return Math.min(64 - Long.numberOfLeadingZeros(micros), BUCKET_COUNT - 1);
+    }
+
+    private static long getPercentile(AtomicLongArray buckets, double percentile) {
+        long total = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            total += buckets.get(i);
+        }
+        if (total == 0) {
+            return 0;
+        }
+
+        long target = (long) Math.ceil(total * percentile / 100);
+        long seen = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            seen += buckets.get(i);
+            if (seen >= Math.max(target, 1)) {
+                return 1L << i;
+            }
+        }
+        return 1L << (BUCKET_COUNT - 1);
+    }
+
+    private static void updateMax(AtomicInteger max, int value) {
+        int current;
+        while (value > (current = max.get())) {
+            if (max.compareAndSet(current, value)) {
+                return;
+            }
+        }
+    }
+
+    private static class Stats {
+        final AtomicLongArray waitTimes = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLongArray runTimes = new AtomicLongArray(BUCKET_COUNT);
+        final AtomicLong totalWaitTimeNanos = new AtomicLong();
+        final AtomicLong totalRunTimeNanos = new AtomicLong();
+        final AtomicLong finishedCount = new AtomicLong();
+        final AtomicInteger maxQueueLength = new AtomicInteger();
+        final AtomicInteger activeCount = new AtomicInteger();
+        final AtomicInteger maxActiveCount = new AtomicInteger();
+
+        void reset() {
+            for (int i = 0; i < BUCKET_COUNT; i++) {
+                waitTimes.set(i, 0);
+                runTimes.set(i, 0);
+            }
+            totalWaitTimeNanos.set(0);
+            totalRunTimeNanos.set(0);
+            finishedCount.set(0);
+            maxQueueLength.set(0);
+            maxActiveCount.set(activeCount.get());
+        }
+    }
+}
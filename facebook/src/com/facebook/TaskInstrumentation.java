@@ -0,0 +1,57 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+/**
+ * Receives events about the background work the SDK runs, for example to measure how long work waits
+ * before it runs. Register an implementation through {@link Settings#setTaskInstrumentation(TaskInstrumentation)}.
+ * {@link TaskHistogram} is a ready-made implementation.
+ *
+ * Events are delivered synchronously on whichever thread queued, started or finished the work, so
+ * implementations must be thread-safe and should return quickly.
+ */
+public interface TaskInstrumentation {
+    /**
+     * Called when work is queued.
+     *
+     * @param type
+     *          the kind of work
+     * @param queueLength
+     *          the number of items of this kind that are waiting to run, including this one
+     */
+    void onTaskQueued(TaskType type, int queueLength);
+
+    /**
+     * Called just before queued work starts to run.
+     *
+     * @param type
+     *          the kind of work
+     * @param waitTimeNanos
+     *          how long the work waited between being queued and starting, in nanoseconds
+     */
+    void onTaskStarted(TaskType type, long waitTimeNanos);
+
+    /**
+     * Called after work has finished running, whether or not it succeeded.
+     *
+     * @param type
+     *          the kind of work
+     * @param runTimeNanos
+     *          how long the work ran, in nanoseconds
+     */
+    void onTaskFinished(TaskType type, long runTimeNanos);
+}
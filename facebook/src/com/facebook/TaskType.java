@@ -0,0 +1,53 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+/**
+ * Specifies the kinds of background work the SDK reports to a {@link TaskInstrumentation}.
+ *
+ * @see Settings#setTaskInstrumentation(TaskInstrumentation)
+ */
+public enum TaskType {
+    /**
+     * Indicates a batch of Graph API requests run by a RequestAsyncTask.
+     */
+    REQUEST,
+    /**
+     * Indicates an image download.
+     */
+    IMAGE_DOWNLOAD,
+    /**
+     * Indicates a read from one of the SDK's disk caches.
+     */
+    CACHE_READ,
+    /**
+     * Indicates trimming or clearing one of the SDK's disk caches.
+     */
+    CACHE_TRIM,
+    /**
+     * Indicates decoding a downloaded or cached image.
+     */
+    DECODE,
+    /**
+     * Indicates sending logged App Events to the server.
+     */
+    APP_EVENTS_FLUSH,
+    /**
+     * Indicates any other background work, such as Session callbacks.
+     */
+    OTHER
+}
@@ -0,0 +1,219 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.graphics.Bitmap;
+import android.os.Build;
+
+import java.util.*;
+
+// Pool of bitmaps that are no longer displayed or cached, bucketed by size so that ImageDecoder can
+// decode into them through BitmapFactory.Options.inBitmap instead of allocating a new bitmap.
+//
+// A bitmap only becomes available for reuse once every holder has released it. ImageMemoryCache holds
+// one reference per entry, and callers that set ImageRequest.Builder.setReleasesBitmap hold one
+// reference per response. A bitmap that was handed to any other caller is pinned and never reused,
+// since we cannot know when that caller stops drawing it.
+class BitmapPool {
+    static final String TAG = BitmapPool.class.getSimpleName();
+
+    private static final int POOL_MEMORY_FRACTION = 16;
+    private static final int MAX_POOL_SIZE_IN_BYTES = 4 * 1024 * 1024;
+    private static final int PINNED = -1;
+
+    private static final Object lock = new Object();
+
+    // Bitmap does not override equals, so this is keyed by identity
+    private static final Map<Bitmap, Integer> referenceCounts = new WeakHashMap<Bitmap, Integer>();
+    private static final Map<String, LinkedList<Bitmap>> buckets = new HashMap<String, LinkedList<Bitmap>>();
+    private static final LinkedList<Bitmap> pooledBitmaps = new LinkedList<Bitmap>();
+    private static final int maxSizeInBytes =
+            (int) Math.min(Runtime.getRuntime().maxMemory() / POOL_MEMORY_FRACTION, MAX_POOL_SIZE_IN_BYTES);
+    private static int sizeInBytes;
+
+    private static int requestCount;
+    private static int reuseCount;
+    private static int failedReuseCount;
+    private static int pooledCount;
+    private static int evictionCount;
+
+    static boolean isSupported() {
+        // inBitmap and inMutable were added in Honeycomb
+        return Build.VERSION.SDK_INT >= Build.VERSION_CODES.HONEYCOMB;
+    }
+
+    // Removes and returns a pooled bitmap with the given dimensions, or null if there is none.
+    static Bitmap get(int width, int height, Bitmap.Config config) {
+        synchronized (lock) {
+            requestCount++;
+
+            LinkedList<Bitmap> bucket = buckets.get(getBucketKey(width, height, config));
+            if (bucket == null || bucket.isEmpty()) {
+                return null;
+            }
+
+            Bitmap bitmap = bucket.removeLast();
+            pooledBitmaps.remove(bitmap);
+            sizeInBytes -= getSizeInBytes(bitmap);
+            reuseCount++;
+            return bitmap;
+        }
+    }
+
+    static void retain(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Integer count = referenceCounts.get(bitmap);
+            if (count == null) {
+                referenceCounts.put(bitmap, 1);
+            } else if (count != PINNED) {
+                referenceCounts.put(bitmap, count + 1);
+            }
+        }
+    }
+
+    static void release(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            Integer count = referenceCounts.get(bitmap);
+            if (count == null || count == PINNED) {
+                return;
+            }
+
+            if (count > 1) {
+                referenceCounts.put(bitmap, count - 1);
+            } else {
+                referenceCounts.remove(bitmap);
+                put(bitmap);
+            }
+        }
+    }
+
+    static void pin(Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        synchronized (lock) {
+            referenceCounts.put(bitmap, PINNED);
+        }
+    }
+
+    // Called when decoding into a pooled bitmap failed, in which case the bitmap has been dropped.
+    static void onReuseFailed() {
+        synchronized (lock) {
+            reuseCount--;
+            failedReuseCount++;
+        }
+    }
+
+    static void clear() {
+        synchronized (lock) {
+            buckets.clear();
+            pooledBitmaps.clear();
+            sizeInBytes = 0;
+        }
+    }
+
+    static int getSize() {
+        synchronized (lock) {
+            return sizeInBytes;
+        }
+    }
+
+    static int getRequestCount() {
+        synchronized (lock) {
+            return requestCount;
+        }
+    }
+
+    static int getReuseCount() {
+        synchronized (lock) {
+            return reuseCount;
+        }
+    }
+
+    static int getFailedReuseCount() {
+        synchronized (lock) {
+            return failedReuseCount;
+        }
+    }
+
+    static int getPooledCount() {
+        synchronized (lock) {
+            return pooledCount;
+        }
+    }
+
+    static int getEvictionCount() {
+        synchronized (lock) {
+            return evictionCount;
+        }
+    }
+
+    // Fraction of decodes that asked for a bitmap to decode into and got one.
+    static float getReuseRate() {
+        synchronized (lock) {
+            return (requestCount == 0) ? 0 : (float) reuseCount / requestCount;
+        }
+    }
+
+    private static void put(Bitmap bitmap) {
+        if (!isSupported() || !bitmap.isMutable() || bitmap.isRecycled()) {
+            return;
+        }
+
+        int size = getSizeInBytes(bitmap);
+        if (size > maxSizeInBytes) {
+            return;
+        }
+
+        String bucketKey = getBucketKey(bitmap.getWidth(), bitmap.getHeight(), bitmap.getConfig());
+        LinkedList<Bitmap> bucket = buckets.get(bucketKey);
+        if (bucket == null) {
+            bucket = new LinkedList<Bitmap>();
+            buckets.put(bucketKey, bucket);
+        }
+        bucket.addLast(bitmap);
+        pooledBitmaps.addLast(bitmap);
+        sizeInBytes += size;
+        pooledCount++;
+
+        // Drop the least recently pooled bitmaps until we are back under the limit
+        while (sizeInBytes > maxSizeInBytes) {
+            Bitmap oldest = pooledBitmaps.removeFirst();
+            buckets.get(getBucketKey(oldest.getWidth(), oldest.getHeight(), oldest.getConfig())).remove(oldest);
+            sizeInBytes -= getSizeInBytes(oldest);
+            evictionCount++;
+        }
+    }
+
+    private static String getBucketKey(int width, int height, Bitmap.Config config) {
+        return width + "x" + height + ":" + config;
+    }
+
+    static int getSizeInBytes(Bitmap bitmap) {
+        // Bitmap.getByteCount is not available until API 12
+        return bitmap.getRowBytes() * bitmap.getHeight();
+    }
+}
@@ -0,0 +1,132 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.os.Build;
+import android.os.Looper;
+
+import java.util.concurrent.*;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * A thread pool with a fixed number of threads and a bounded queue that never rejects work. Once the queue
+ * is full, background threads that submit more work wait for room, which slows producers down to the rate
+ * the pool can keep up with. The main thread and the threads of any BoundedExecutor must not wait, since
+ * that could freeze the UI or deadlock the pools, so their work is held in an overflow list and moved into
+ * the queue as room frees up.
+ */
+public class BoundedExecutor extends ThreadPoolExecutor {
+    private static final int KEEP_ALIVE_SECONDS = 1;
+
+    private final ConcurrentLinkedQueue<Runnable> overflow = new ConcurrentLinkedQueue<Runnable>();
+    // Set while a thread is moving tasks out of the overflow list, so that no task is moved twice
+    private final AtomicBoolean draining = new AtomicBoolean();
+    // Shared by all pools: a thread of one pool waiting for room in another could deadlock with a thread of
+    // the other pool doing the same.
+    private static final ThreadLocal<Boolean> isPoolThread = new ThreadLocal<Boolean>();
+
+    public BoundedExecutor(final String name, int threadCount, int queueCapacity) {
+        super(threadCount, threadCount, KEEP_ALIVE_SECONDS, TimeUnit.SECONDS,
+                new LinkedBlockingQueue<Runnable>(queueCapacity),
+                new ThreadFactory() {
+                    private final AtomicInteger counter = new AtomicInteger(0);
+
+                    public Thread newThread(Runnable runnable) {
+                        return new Thread(runnable, "FacebookSdk " + name + " #" + counter.incrementAndGet());
+                    }
+                },
+                new BackpressurePolicy());
+
+        Validate.isPositive(threadCount, "threadCount");
+        Validate.isPositive(queueCapacity, "queueCapacity");
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.GINGERBREAD) {
+            // Idle pools should not hold on to their threads
+            allowCoreThreadTimeOut(true);
+        }
+    }
+
+    // Number of tasks that are waiting for room in the queue.
+    public int getOverflowCount() {
+        return overflow.size();
+    }
+
+    @Override
+    protected void beforeExecute(Thread thread, Runnable runnable) {
+        isPoolThread.set(Boolean.TRUE);
+        super.beforeExecute(thread, runnable);
+    }
+
+    @Override
+    protected void afterExecute(Runnable runnable, Throwable throwable) {
+        super.afterExecute(runnable, throwable);
+        drainOverflow();
+    }
+
+    private void drainOverflow() {
+        boolean queueFull = false;
+        // A task added while another thread was finishing its drain is picked up by the next pass
+        while (!queueFull && !overflow.isEmpty() && draining.compareAndSet(false, true)) {
+            try {
+                Runnable next;
+                while ((next = overflow.peek()) != null) {
+                    // Never block here: every pool thread may be trying to drain at the same time
+                    if (!getQueue().offer(next)) {
+                        queueFull = true;
+                        break;
+                    }
+                    // Only the draining thread removes tasks, so this is the one we just offered
+                    overflow.poll();
+                }
+            } finally {
+                draining.set(false);
+            }
+        }
+    }
+
+    private boolean mayBlockCaller() {
+        return Looper.myLooper() != Looper.getMainLooper() && isPoolThread.get() == null;
+    }
+
+    private static class BackpressurePolicy implements RejectedExecutionHandler {
+        @Override
+        public void rejectedExecution(Runnable runnable, ThreadPoolExecutor threadPoolExecutor) {
+            BoundedExecutor executor = (BoundedExecutor) threadPoolExecutor;
+            if (executor.isShutdown()) {
+                throw new RejectedExecutionException("Executor has been shut down");
+            }
+
+            if (executor.mayBlockCaller()) {
+                try {
+                    // The queue is only full while every thread is busy, so this will be picked up
+                    executor.getQueue().put(runnable);
+                    return;
+                } catch (InterruptedException e) {
+                    Thread.currentThread().interrupt();
+                }
+            }
+
+            executor.overflow.add(runnable);
+            // A thread may have finished, and drained the overflow, before we added to it
+            executor.drainOverflow();
+        }
+    }
+}
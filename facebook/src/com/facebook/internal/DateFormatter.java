@@ -0,0 +1,264 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import java.util.Date;
+import java.util.TimeZone;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Parses and formats the ISO-8601 dates the Graph API sends and accepts. Unlike SimpleDateFormat, this is safe
+ * to use from any thread, and it parses by looking at the shape of the string rather than by trying one format
+ * after another. Dates are converted using the proleptic Gregorian calendar.
+ */
+public final class DateFormatter {
+    private static final long MILLIS_PER_SECOND = 1000;
+    private static final long MILLIS_PER_MINUTE = 60 * MILLIS_PER_SECOND;
+    private static final long MILLIS_PER_HOUR = 60 * MILLIS_PER_MINUTE;
+    private static final long MILLIS_PER_DAY = 24 * MILLIS_PER_HOUR;
+
+    // Length of "yyyy-MM-dd'T'HH:mm:ssZ", as in 2012-07-04T19:20:40-0400
+    private static final int FORMATTED_LENGTH = 24;
+
+    private DateFormatter() {
+    }
+
+    /**
+     * Parses a date in one of the forms the Graph API uses:
+     * <ul>
+     *     <li>yyyy-MM-dd, a day, which starts at midnight in the default time zone</li>
+     *     <li>yyyy-MM-ddTHH:mm[:ss[.SSS]], a time in the default time zone</li>
+     *     <li>either of the above with a time zone designator appended to the time: Z, +HH, +HHmm or +HH:mm
+     *     (or the same with -)</li>
+     * </ul>
+     *
+     * @param string the string to parse
+     * @return the date, or null if the string is not in one of these forms or names a date or time that does
+     * not exist
+     */
+    public static Date parse(String string) {
+        long millis = parseMillis(string);
+        return (millis != Long.MIN_VALUE) ? new Date(millis) : null;
+    }
+
+    /**
+     * Formats a date as yyyy-MM-dd'T'HH:mm:ssZ in the default time zone, for example 2012-07-04T19:20:40-0400.
+     *
+     * @param date the date to format
+     * @return the formatted date
+     */
+    public static String format(Date date) {
+        long millis = date.getTime();
+        int offsetMillis = TimeZone.getDefault().getOffset(millis);
+        long localMillis = millis + offsetMillis;
+
+        long days = floorDiv(localMillis, MILLIS_PER_DAY);
+        long millisOfDay = localMillis - days * MILLIS_PER_DAY;
+
+        // Convert days since the epoch to a civil date
+        long shiftedDays = days + 719468;
+        long era = floorDiv(shiftedDays, 146097);
+        long dayOfEra = shiftedDays - era * 146097;
+        long yearOfEra = (dayOfEra - dayOfEra / 1460 + dayOfEra / 36524 - dayOfEra / 146096) / 365;
+        long dayOfYear = dayOfEra - (365 * yearOfEra + yearOfEra / 4 - yearOfEra / 100);
+        long shiftedMonth = (5 * dayOfYear + 2) / 153;
+        int day = (int) (dayOfYear - (153 * shiftedMonth + 2) / 5 + 1);
+        int month = (int) (shiftedMonth < 10 ? shiftedMonth + 3 : shiftedMonth - 9);
+        long year = yearOfEra + era * 400 + (month <= 2 ? 1 : 0);
+
+        StringBuilder builder = new StringBuilder(FORMATTED_LENGTH);
+        if (year < 0) {
+            builder.append('-');
+            year = -year;
+        }
+        appendPadded(builder, year, 4);
+        builder.append('-');
+        appendPadded(builder, month, 2);
+        builder.append('-');
+        appendPadded(builder, day, 2);
+        builder.append('T');
+        appendPadded(builder, millisOfDay / MILLIS_PER_HOUR, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / MILLIS_PER_MINUTE % 60, 2);
+        builder.append(':');
+        appendPadded(builder, millisOfDay / MILLIS_PER_SECOND % 60, 2);
+
+        int offsetMinutes = offsetMillis / (int) MILLIS_PER_MINUTE;
+        builder.append(offsetMinutes < 0 ? '-' : '+');
+        offsetMinutes = Math.abs(offsetMinutes);
+        appendPadded(builder, offsetMinutes / 60, 2);
+        appendPadded(builder, offsetMinutes % 60, 2);
+        return builder.toString();
+    }
+
+    // Returns Long.MIN_VALUE if the string can't be parsed, so that parsing allocates nothing but the Date.
+    private static long parseMillis(String string) {
+        if (string == null || string.length() < 10) {
+            return Long.MIN_VALUE;
+        }
+
+        int length = string.length();
+        int year = parseDigits(string, 0, 4);
+        int month = parseDigits(string, 5, 2);
+        int day = parseDigits(string, 8, 2);
+        if (year < 0 || string.charAt(4) != '-' || month < 1 || month > 12 || string.charAt(7) != '-' ||
+                day < 1 || day > getDaysInMonth(year, month)) {
+            return Long.MIN_VALUE;
+        }
+        long localMillis = getDaysSinceEpoch(year, month, day) * MILLIS_PER_DAY;
+        if (length == 10) {
+            return localToUtc(localMillis);
+        }
+
+        // The time
+        int hour = parseDigits(string, 11, 2);
+        int minute = parseDigits(string, 14, 2);
+        if (string.charAt(10) != 'T' || hour < 0 || hour > 23 || length < 16 || string.charAt(13) != ':' ||
+                minute < 0 || minute > 59) {
+            return Long.MIN_VALUE;
+        }
+        localMillis += hour * MILLIS_PER_HOUR + minute * MILLIS_PER_MINUTE;
+
+        int position = 16;
+        if (position < length && string.charAt(position) == ':') {
+            int second = parseDigits(string, position + 1, 2);
+            // Allow for leap seconds, which roll over into the next minute as they do with SimpleDateFormat
+            if (second < 0 || second > 60) {
+                return Long.MIN_VALUE;
+            }
+            localMillis += second * MILLIS_PER_SECOND;
+            position += 3;
+
+            if (position < length && string.charAt(position) == '.') {
+                // Fractions of a second; only milliseconds are kept
+                position++;
+                int start = position;
+                int scale = 100;
+                while (position < length && isDigit(string.charAt(position))) {
+                    localMillis += (string.charAt(position) - '0') * scale;
+                    scale /= 10;
+                    position++;
+                }
+                if (position == start) {
+                    return Long.MIN_VALUE;
+                }
+            }
+        }
+
+        // The time zone
+        if (position == length) {
+            return localToUtc(localMillis);
+        }
+        char designator = string.charAt(position);
+        if (designator == 'Z') {
+            return (position + 1 == length) ? localMillis : Long.MIN_VALUE;
+        } else if (designator != '+' && designator != '-') {
+            return Long.MIN_VALUE;
+        }
+
+        int offsetHours = parseDigits(string, position + 1, 2);
+        int offsetMinutes = 0;
+        position += 3;
+        boolean hasSeparator = position < length && string.charAt(position) == ':';
+        if (hasSeparator) {
+            position++;
+        }
+        if (position < length || hasSeparator) {
+            offsetMinutes = parseDigits(string, position, 2);
+            position += 2;
+        }
+        if (offsetHours < 0 || offsetHours > 23 || offsetMinutes < 0 || offsetMinutes > 59 || position != length) {
+            return Long.MIN_VALUE;
+        }
+        long offsetMillis = offsetHours * MILLIS_PER_HOUR + offsetMinutes * MILLIS_PER_MINUTE;
+        return (designator == '+') ? localMillis - offsetMillis : localMillis + offsetMillis;
+    }
+
+    // Converts a time in the default time zone to milliseconds since the epoch.
+    private static long localToUtc(long localMillis) {
+        TimeZone timeZone = TimeZone.getDefault();
+        int offsetMillis = timeZone.getOffset(localMillis - timeZone.getRawOffset());
+        long millis = localMillis - offsetMillis;
+        // Near a daylight saving transition the first guess may have used the offset from the other side of it
+        int actualOffsetMillis = timeZone.getOffset(millis);
+        if (actualOffsetMillis != offsetMillis) {
+            millis = localMillis - actualOffsetMillis;
+        }
+        return millis;
+    }
+
+    private static long getDaysSinceEpoch(int year, int month, int day) {
+        long shiftedYear = (month <= 2) ? year - 1 : year;
+        long era = floorDiv(shiftedYear, 400);
+        long yearOfEra = shiftedYear - era * 400;
+        long dayOfYear = (153 * (month > 2 ? month - 3 : month + 9) + 2) / 5 + day - 1;
+        long dayOfEra = yearOfEra * 365 + yearOfEra / 4 - yearOfEra / 100 + dayOfYear;
+        return era * 146097 + dayOfEra - 719468;
+    }
+
+    private static int getDaysInMonth(int year, int month) {
+        switch (month) {
+            case 2:
+                boolean isLeapYear = (year % 4 == 0 && year % 100 != 0) || year % 400 == 0;
+                return isLeapYear ? 29 : 28;
+            case 4:
+            case 6:
+            case 9:
+            case 11:
+                return 30;
+            default:
+                return 31;
+        }
+    }
+
+    // Returns the value of count digits at start, or -1 if they are not all there.
+    private static int parseDigits(String string, int start, int count) {
+        if (start + count > string.length()) {
+            return -1;
+        }
+        int value = 0;
+        for (int i = start; i < start + count; i++) {
+            char c = string.charAt(i);
+            if (!isDigit(c)) {
+                return -1;
+            }
+            value = value * 10 + (c - '0');
+        }
+        return value;
+    }
+
+    private static boolean isDigit(char c) {
+        return c >= '0' && c <= '9';
+    }
+
+    private static void appendPadded(StringBuilder builder, long value, int width) {
+        for (long limit = 10; width > 1; limit *= 10, width--) {
+            if (value < limit) {
+                builder.append('0');
+            }
+        }
+        builder.append(value);
+    }
+
+    private static long floorDiv(long dividend, long divisor) {
+        long quotient = dividend / divisor;
+        return (dividend % divisor < 0) ? quotient - 1 : quotient;
+    }
+}
@@ -0,0 +1,128 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import com.facebook.LoggingBehavior;
+
+// Adjusts the number of parallel downloads from observed throughput and latency. Completed downloads
+// are grouped into windows; after each window the concurrency is raised by one if throughput improved
+// and latency is acceptable, and lowered by one if throughput dropped or latency is too high.
+class DownloadConcurrencyController {
+    static final String TAG = DownloadConcurrencyController.class.getSimpleName();
+
+    static final int DEFAULT_WINDOW_SIZE = 8;
+    static final long DEFAULT_MAX_LATENCY_MILLIS = 3000;
+
+    // Throughput has to change by more than this fraction before we react to it
+    private static final double THROUGHPUT_TOLERANCE = 0.1;
+
+    private final int minConcurrent;
+    private final int maxConcurrent;
+    private final int windowSize;
+    private final long maxLatencyMillis;
+
+    private int concurrency;
+    private double lastThroughput;
+
+    private int windowCount;
+    private long windowBytes;
+    private long windowLatencyMillis;
+    private long windowStartMillis;
+    private long windowEndMillis;
+
+    DownloadConcurrencyController(int minConcurrent, int maxConcurrent, int initialConcurrent) {
+        this(minConcurrent, maxConcurrent, initialConcurrent, DEFAULT_WINDOW_SIZE, DEFAULT_MAX_LATENCY_MILLIS);
+    }
+
+    DownloadConcurrencyController(
+            int minConcurrent,
+            int maxConcurrent,
+            int initialConcurrent,
+            int windowSize,
+            long maxLatencyMillis) {
+        Validate.isPositive(minConcurrent, "minConcurrent");
+        Validate.isPositive(windowSize, "windowSize");
+        if (maxConcurrent < minConcurrent) {
+            throw new IllegalArgumentException("Argument 'maxConcurrent' must not be less than 'minConcurrent'");
+        }
+
+        this.minConcurrent = minConcurrent;
+        this.maxConcurrent = maxConcurrent;
+        this.windowSize = windowSize;
+        this.maxLatencyMillis = maxLatencyMillis;
+        this.concurrency = Math.max(minConcurrent, Math.min(initialConcurrent, maxConcurrent));
+    }
+
+    synchronized int getConcurrency() {
+        return concurrency;
+    }
+
+    int getMinConcurrent() {
+        return minConcurrent;
+    }
+
+    int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // Records a completed download and returns the concurrency to use from now on.
+    synchronized int onDownloadCompleted(long bytes, long startMillis, long endMillis) {
+        if (windowCount == 0) {
+            windowStartMillis = startMillis;
+            windowEndMillis = endMillis;
+        } else {
+            windowStartMillis = Math.min(windowStartMillis, startMillis);
+            windowEndMillis = Math.max(windowEndMillis, endMillis);
+        }
+        windowCount++;
+        windowBytes += bytes;
+        windowLatencyMillis += endMillis - startMillis;
+
+        if (windowCount >= windowSize) {
+            adjustConcurrency();
+
+            windowCount = 0;
+            windowBytes = 0;
+            windowLatencyMillis = 0;
+        }
+
+        return concurrency;
+    }
+
+    private void adjustConcurrency() {
+        long elapsedMillis = Math.max(1, windowEndMillis - windowStartMillis);
+        double throughput = (double) windowBytes / elapsedMillis;
+        long averageLatencyMillis = windowLatencyMillis / windowCount;
+
+        int newConcurrency = concurrency;
+        if (averageLatencyMillis > maxLatencyMillis) {
+            newConcurrency--;
+        } else if (lastThroughput == 0 || throughput > lastThroughput * (1 + THROUGHPUT_TOLERANCE)) {
+            newConcurrency++;
+        } else if (throughput < lastThroughput * (1 - THROUGHPUT_TOLERANCE)) {
+            newConcurrency--;
+        }
+        newConcurrency = Math.max(minConcurrent, Math.min(newConcurrency, maxConcurrent));
+
+        Logger.log(LoggingBehavior.REQUESTS, TAG,
+                "throughput %.1f bytes/ms, latency %d ms: concurrency %d -> %d",
+                throughput, averageLatencyMillis, concurrency, newConcurrency);
+
+        lastThroughput = throughput;
+        concurrency = newConcurrency;
+    }
+}
@@ -20,13 +20,16 @@ import android.content.Context;
 import android.util.Log;
 import com.facebook.LoggingBehavior;
 import com.facebook.Settings;
+import com.facebook.TaskType;
 import org.json.JSONException;
 import org.json.JSONObject;
 import org.json.JSONTokener;
 
 import java.io.*;
 import java.security.InvalidParameterException;
+import java.util.ArrayList;
 import java.util.Date;
+import java.util.List;
 import java.util.PriorityQueue;
 import java.util.concurrent.atomic.AtomicLong;
 
@@ -60,6 +63,10 @@ public final class FileLruCache {
     static final String TAG = FileLruCache.class.getSimpleName();
     private static final String HEADER_CACHEKEY_KEY = "key";
     private static final String HEADER_CACHE_CONTENT_TAG_KEY = "tag";
+    private static final String HEADER_EXPIRATION_KEY = "expires";
+
+    // Passed as the expiration time of entries that stay valid until they are trimmed
+    static final long NO_EXPIRATION = 0;
 
     private static final AtomicLong bufferIndex = new AtomicLong();
 
@@ -113,6 +120,12 @@ public final class FileLruCache {
     }
 
     public InputStream get(String key, String contentTag) throws IOException {
+        return get(key, contentTag, true);
+    }
+
+    // Reads an entry without marking it as used when updateAccessTime is false, for reads such as preloading
+    // that should not affect which entries are trimmed.
+    InputStream get(String key, String contentTag, boolean updateAccessTime) throws IOException {
         File file = new File(this.directory, Utility.md5hash(key));
 
         FileInputStream input = null;
@@ -143,10 +156,23 @@ public final class FileLruCache {
                 return null;
             }
 
-            long accessTime = new Date().getTime();
-            Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to " + Long.valueOf(accessTime) + " for "
-                    + file.getName());
-            file.setLastModified(accessTime);
+            long expiration = header.optLong(HEADER_EXPIRATION_KEY, NO_EXPIRATION);
+            if (expiration != NO_EXPIRATION && expiration <= System.currentTimeMillis()) {
+                // Leave the file alone; it will be replaced by the next put, or trimmed
+                if (Logger.isLoggingEnabled(LoggingBehavior.CACHE)) {
+                    Logger.log(LoggingBehavior.CACHE, TAG, "Entry for %s has expired", file.getName());
+                }
+                return null;
+            }
+
+            if (updateAccessTime) {
+                long accessTime = new Date().getTime();
+                if (Logger.isLoggingEnabled(LoggingBehavior.CACHE)) {
+                    Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to %d for %s", accessTime,
+                            file.getName());
+                }
+                file.setLastModified(accessTime);
+            }
 
             success = true;
             return buffered;
@@ -157,11 +183,51 @@ public final class FileLruCache {
         }
     }
 
+    // Returns the keys of all entries with the given content tag. This reads the header of every file in
+    // the cache, so it should not be called on the main thread. Unlike get(), it does not update the
+    // access time of the entries.
+    List<String> getKeys(String contentTag) {
+        List<String> keys = new ArrayList<String>();
+        File[] files = directory.listFiles(BufferFile.excludeBufferFiles());
+        if (files == null) {
+            return keys;
+        }
+
+        for (File file : files) {
+            InputStream input = null;
+            try {
+                input = new BufferedInputStream(new FileInputStream(file), Utility.DEFAULT_STREAM_BUFFER_SIZE);
+                JSONObject header = StreamHeader.readHeader(input);
+                if (header == null) {
+                    continue;
+                }
+
+                String headerContentTag = header.optString(HEADER_CACHE_CONTENT_TAG_KEY, null);
+                if (Utility.areObjectsEqual(contentTag, headerContentTag)) {
+                    String foundKey = header.optString(HEADER_CACHEKEY_KEY, null);
+                    if (foundKey != null) {
+                        keys.add(foundKey);
+                    }
+                }
+            } catch (IOException e) {
+                // The file may have been trimmed or replaced underneath us; skip it
+            } finally {
+                Utility.closeQuietly(input);
+            }
+        }
+        return keys;
+    }
+
     OutputStream openPutStream(final String key) throws IOException {
         return openPutStream(key, null);
     }
 
     public OutputStream openPutStream(final String key, String contentTag) throws IOException {
+        return openPutStream(key, contentTag, NO_EXPIRATION);
+    }
+
+    // Once expirationMillis has passed, get() treats the entry as missing.
+    OutputStream openPutStream(final String key, String contentTag, long expirationMillis) throws IOException {
         final File buffer = BufferFile.newFile(this.directory);
         buffer.delete();
         if (!buffer.createNewFile()) {
@@ -172,7 +238,7 @@ public final class FileLruCache {
         try {
             file = new FileOutputStream(buffer);
         } catch (FileNotFoundException e) {
-            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error creating buffer output stream: " + e);
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error creating buffer output stream: %s", e);
             throw new IOException(e.getMessage());
         }
 
@@ -201,6 +267,9 @@ public final class FileLruCache {
             if (!Utility.isNullOrEmpty(contentTag)) {
                 header.put(HEADER_CACHE_CONTENT_TAG_KEY, contentTag);
             }
+            if (expirationMillis != NO_EXPIRATION) {
+                header.put(HEADER_EXPIRATION_KEY, expirationMillis);
+            }
 
             StreamHeader.writeHeader(buffered, header);
 
@@ -208,7 +277,7 @@ public final class FileLruCache {
             return buffered;
         } catch (JSONException e) {
             // JSON is an implementation detail of the cache, so don't let JSON exceptions out.
-            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error creating JSON header for cache file: " + e);
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "Error creating JSON header for cache file: %s", e);
             throw new IOException(e.getMessage());
         } finally {
             if (!success) {
@@ -221,14 +290,14 @@ public final class FileLruCache {
         // get the current directory listing of files to delete
         final File[] filesToDelete = directory.listFiles(BufferFile.excludeBufferFiles());
         lastClearCacheTime.set(System.currentTimeMillis());
-        Settings.getExecutor().execute(new Runnable() {
+        Settings.getExecutor(Settings.ExecutorType.DISK).execute(TaskTracker.wrap(TaskType.CACHE_TRIM, new Runnable() {
             @Override
             public void run() {
                 for (File file : filesToDelete) {
                     file.delete();
                 }
             }
-        });
+        }));
     }
 
     private void renameToTargetAndTrim(String key, File buffer) {
@@ -250,7 +319,11 @@ public final class FileLruCache {
     // the contents of input into the new output stream.  The effect is to store a
     // copy of input, and associate that data with key.
     public InputStream interceptAndPut(String key, InputStream input) throws IOException {
-        OutputStream output = openPutStream(key);
+        return interceptAndPut(key, input, NO_EXPIRATION);
+    }
+
+    InputStream interceptAndPut(String key, InputStream input, long expirationMillis) throws IOException {
+        OutputStream output = openPutStream(key, null, expirationMillis);
         return new CopyingInputStream(input, output);
     }
 
@@ -260,29 +333,35 @@ public final class FileLruCache {
 
     private void postTrim() {
         synchronized (lock) {
-            if (!isTrimPending) {
-                isTrimPending = true;
-                Settings.getExecutor().execute(new Runnable() {
-                    @Override
-                    public void run() {
-                        trim();
-                    }
-                });
+            if (isTrimPending) {
+                return;
             }
+            isTrimPending = true;
         }
+
+        // Posted outside the lock, since the disk executor may make us wait for room in its queue
+        Settings.getExecutor(Settings.ExecutorType.DISK).execute(TaskTracker.wrap(TaskType.CACHE_TRIM, new Runnable() {
+            @Override
+            public void run() {
+                trim();
+            }
+        }));
     }
 
     private void trim() {
         try {
             Logger.log(LoggingBehavior.CACHE, TAG, "trim started");
+            boolean isLogging = Logger.isLoggingEnabled(LoggingBehavior.CACHE);
             PriorityQueue<ModifiedFile> heap = new PriorityQueue<ModifiedFile>();
             long size = 0;
             long count = 0;
             for (File file : this.directory.listFiles(BufferFile.excludeBufferFiles())) {
                 ModifiedFile modified = new ModifiedFile(file);
                 heap.add(modified);
-                Logger.log(LoggingBehavior.CACHE, TAG, "  trim considering time=" + Long.valueOf(modified.getModified())
-                        + " name=" + modified.getFile().getName());
+                if (isLogging) {
+                    Logger.log(LoggingBehavior.CACHE, TAG, "  trim considering time=%d name=%s",
+                            modified.getModified(), modified.getFile().getName());
+                }
 
                 size += file.length();
                 count++;
@@ -290,7 +369,9 @@ public final class FileLruCache {
 
             while ((size > limits.getByteCount()) || (count > limits.getFileCount())) {
                 File file = heap.remove().getFile();
-                Logger.log(LoggingBehavior.CACHE, TAG, "  trim removing " + file.getName());
+                if (isLogging) {
+                    Logger.log(LoggingBehavior.CACHE, TAG, "  trim removing %s", file.getName());
+                }
                 size -= file.length();
                 count--;
                 file.delete();
@@ -388,8 +469,7 @@ public final class FileLruCache {
                 int readCount = stream.read(headerBytes, count, headerBytes.length - count);
                 if (readCount < 1) {
                     Logger.log(LoggingBehavior.CACHE, TAG,
-                            "readHeader: stream.read stopped at " + Integer.valueOf(count) + " when expected "
-                                    + headerBytes.length);
+                            "readHeader: stream.read stopped at %d when expected %d", count, headerBytes.length);
                     return null;
                 }
                 count += readCount;
@@ -401,7 +481,8 @@ public final class FileLruCache {
             try {
                 Object parsed = tokener.nextValue();
                 if (!(parsed instanceof JSONObject)) {
-                    Logger.log(LoggingBehavior.CACHE, TAG, "readHeader: expected JSONObject, got " + parsed.getClass().getCanonicalName());
+                    Logger.log(LoggingBehavior.CACHE, TAG, "readHeader: expected JSONObject, got %s",
+                            parsed.getClass().getCanonicalName());
                     return null;
                 }
                 header = (JSONObject) parsed;
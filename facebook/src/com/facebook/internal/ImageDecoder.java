@@ -0,0 +1,181 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.graphics.Bitmap;
+import android.graphics.BitmapFactory;
+import android.os.Build;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+
+class ImageDecoder {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    // Build.VERSION_CODES.KITKAT, which is not available in the SDK we compile against. From KitKat on,
+    // inBitmap may be used with any inSampleSize.
+    private static final int KITKAT = 19;
+
+    // Previews are decoded at this fraction of the size of the final image in each dimension
+    private static final int PREVIEW_SAMPLE_FACTOR = 4;
+
+    // Decodes the stream, downsampling it to the target size if one is given. Does not close the stream.
+    static Bitmap decodeStream(
+            InputStream stream,
+            int targetWidth,
+            int targetHeight,
+            ImageRequest.ScaleMode scaleMode) throws IOException {
+        if (targetWidth == ImageRequest.UNSPECIFIED_DIMENSION &&
+                targetHeight == ImageRequest.UNSPECIFIED_DIMENSION) {
+            return BitmapFactory.decodeStream(stream, null, createDecodeOptions());
+        }
+
+        // The stream has to be read twice, once for the bounds and once for the pixels. The encoded
+        // bytes are much smaller than the decoded bitmap, so buffer them rather than re-opening the source.
+        byte[] data = readStreamToByteArray(stream);
+        return decodeByteArray(data, data.length, targetWidth, targetHeight, scaleMode);
+    }
+
+    // Decodes the first length bytes of data, downsampling them to the target size if one is given.
+    static Bitmap decodeByteArray(
+            byte[] data,
+            int length,
+            int targetWidth,
+            int targetHeight,
+            ImageRequest.ScaleMode scaleMode) {
+        BitmapFactory.Options options = createDecodeOptions();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            // Not an image we know how to decode
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = calculateInSampleSize(
+                options.outWidth,
+                options.outHeight,
+                targetWidth,
+                targetHeight,
+                scaleMode);
+
+        if (canDecodeIntoPooledBitmap(options.inSampleSize)) {
+            Bitmap pooledBitmap = BitmapPool.get(
+                    options.outWidth / options.inSampleSize,
+                    options.outHeight / options.inSampleSize,
+                    options.inPreferredConfig);
+            if (pooledBitmap != null) {
+                options.inBitmap = pooledBitmap;
+                try {
+                    return BitmapFactory.decodeByteArray(data, 0, length, options);
+                } catch (IllegalArgumentException e) {
+                    // The pooled bitmap did not fit after all; decode into a new one instead.
+                    BitmapPool.onReuseFailed();
+                    options.inBitmap = null;
+                }
+            }
+        }
+
+        return BitmapFactory.decodeByteArray(data, 0, length, options);
+    }
+
+    // Decodes the partial image in the first length bytes of data at a fraction of the size it will
+    // finally be decoded at. Returns null if not enough of the image has arrived to decode anything.
+    // Baseline and progressive JPEGs decode with the missing part left blank; most other formats do not
+    // decode until complete.
+    static Bitmap decodePreview(
+            byte[] data,
+            int length,
+            int targetWidth,
+            int targetHeight,
+            ImageRequest.ScaleMode scaleMode) {
+        // Previews are short-lived and never pooled, so they are decoded as plain immutable bitmaps
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        options.inJustDecodeBounds = true;
+        BitmapFactory.decodeByteArray(data, 0, length, options);
+        if (options.outWidth <= 0 || options.outHeight <= 0) {
+            return null;
+        }
+
+        options.inJustDecodeBounds = false;
+        options.inSampleSize = PREVIEW_SAMPLE_FACTOR * calculateInSampleSize(
+                options.outWidth,
+                options.outHeight,
+                targetWidth,
+                targetHeight,
+                scaleMode);
+        return BitmapFactory.decodeByteArray(data, 0, length, options);
+    }
+
+    private static BitmapFactory.Options createDecodeOptions() {
+        BitmapFactory.Options options = new BitmapFactory.Options();
+        if (BitmapPool.isSupported()) {
+            // Only mutable bitmaps can later be decoded into
+            options.inMutable = true;
+        }
+        return options;
+    }
+
+    private static boolean canDecodeIntoPooledBitmap(int inSampleSize) {
+        if (!BitmapPool.isSupported()) {
+            return false;
+        }
+        // Before KitKat, the decoded image must match the pooled bitmap exactly and cannot be sampled
+        return inSampleSize == 1 || Build.VERSION.SDK_INT >= KITKAT;
+    }
+
+    // Returns the largest power of two that keeps the decoded image at least as large as it will
+    // be displayed at the target size.
+    static int calculateInSampleSize(
+            int width,
+            int height,
+            int targetWidth,
+            int targetHeight,
+            ImageRequest.ScaleMode scaleMode) {
+        float widthRatio = (targetWidth > 0) ? (float) width / targetWidth : 0;
+        float heightRatio = (targetHeight > 0) ? (float) height / targetHeight : 0;
+
+        float maxSampleSize;
+        if (widthRatio == 0 || heightRatio == 0) {
+            // Only one dimension matters
+            maxSampleSize = Math.max(widthRatio, heightRatio);
+        } else if (scaleMode == ImageRequest.ScaleMode.FILL) {
+            // The image is scaled so that its smaller side matches, so that side limits sampling
+            maxSampleSize = Math.min(widthRatio, heightRatio);
+        } else {
+            // The image is scaled so that its larger side matches
+            maxSampleSize = Math.max(widthRatio, heightRatio);
+        }
+
+        int inSampleSize = 1;
+        while (inSampleSize * 2 <= maxSampleSize) {
+            inSampleSize *= 2;
+        }
+        return inSampleSize;
+    }
+
+    static byte[] readStreamToByteArray(InputStream stream) throws IOException {
+        ByteArrayOutputStream outputStream = new ByteArrayOutputStream(BUFFER_SIZE);
+        byte[] buffer = new byte[BUFFER_SIZE];
+        int bytesRead;
+        while ((bytesRead = stream.read(buffer)) != -1) {
+            outputStream.write(buffer, 0, bytesRead);
+        }
+        return outputStream.toByteArray();
+    }
+}
@@ -16,13 +16,21 @@
 
 package com.facebook.internal;
 
+import android.Manifest;
 import android.content.Context;
+import android.content.pm.PackageManager;
 import android.graphics.Bitmap;
-import android.graphics.BitmapFactory;
+import android.net.ConnectivityManager;
+import android.net.NetworkInfo;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
 import com.facebook.FacebookException;
+import com.facebook.LoggingBehavior;
+import com.facebook.Settings;
+import com.facebook.TaskType;
 
+import java.io.ByteArrayOutputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.InputStreamReader;
@@ -33,11 +41,53 @@ import java.net.URL;
 import java.util.*;
 
 public class ImageDownloader {
+    /**
+     * The default number of bytes a single call to prefetch may download.
+     */
+    public static final long DEFAULT_PREFETCH_MAX_BYTES = 2 * 1024 * 1024;
+
+    /**
+     * Priority of prefetches. Requests at a higher priority are started first.
+     */
+    public static final int PRIORITY_LOW = WorkQueue.DEFAULT_PRIORITY - 1;
+    /**
+     * Priority of requests passed to downloadAsync.
+     */
+    public static final int PRIORITY_NORMAL = WorkQueue.DEFAULT_PRIORITY;
+    /**
+     * Priority for requests whose images are currently on screen.
+     */
+    public static final int PRIORITY_HIGH = WorkQueue.DEFAULT_PRIORITY + 1;
+
+    private static final String TAG = ImageDownloader.class.getSimpleName();
+
+    /**
+     * Decides whether images from a url that is not on one of the cacheable hosts should be stored
+     * in the disk cache.
+     */
+    public interface CacheableUrlPredicate {
+        /**
+         * This method may be called on any thread, and should return quickly.
+         * @param url Url of the image
+         * @return true if the image may be cached on disk
+         */
+        boolean isCacheable(URI url);
+    }
+
+    // Images smaller than this arrive quickly enough that a preview is not worth the extra decode
+    private static final int MIN_PREVIEW_CONTENT_LENGTH = 32 * 1024;
+    private static final int MAX_PREVIEWS = 2;
+    // Used to space out previews when the server does not send a content length
+    private static final int PREVIEW_INTERVAL_BYTES = 32 * 1024;
+    // Held against a prefetch's byte limit for each of its downloads until the content length is known
+    private static final long PREFETCH_RESERVED_BYTES_PER_IMAGE = 64 * 1024;
     private static final int DOWNLOAD_QUEUE_MAX_CONCURRENT = WorkQueue.DEFAULT_MAX_CONCURRENT;
     private static final int CACHE_READ_QUEUE_MAX_CONCURRENT = 2;
     private static Handler handler;
-    private static WorkQueue downloadQueue = new WorkQueue(DOWNLOAD_QUEUE_MAX_CONCURRENT);
-    private static WorkQueue cacheReadQueue = new WorkQueue(CACHE_READ_QUEUE_MAX_CONCURRENT);
+    private static WorkQueue downloadQueue = createDownloadQueue();
+    private static WorkQueue cacheReadQueue = createCacheReadQueue();
+    private static volatile DownloadConcurrencyController downloadConcurrencyController;
+    private static volatile boolean prefetchOnMeteredNetwork;
 
     private static final Map<RequestKey, DownloaderContext> pendingRequests = new HashMap<RequestKey, DownloaderContext>();
 
@@ -51,41 +101,190 @@ public class ImageDownloader {
             return;
         }
 
+        // Start loading known redirects into memory so that later lookups do not have to hit the disk
+        UrlRedirectCache.preloadAsync(request.getContext());
+
         // NOTE: This is the ONLY place where the original request's Url is read. From here on,
         // we will keep track of the Url separately. This is because we might be dealing with a
         // redirect response and the Url might change. We can't create our own new ImageRequests
         // for these changed Urls since the caller might be doing some book-keeping with the request's
         // object reference. So we keep the old references and just map them to new urls in the downloader
-        RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
+        //
+        // Requests for the same image from different callers share a single cache read, download and
+        // decode; the response is then issued to each of them.
+        RequestKey key = new RequestKey(request);
         synchronized (pendingRequests) {
-            DownloaderContext downloaderContext = pendingRequests.get(key);
-            if (downloaderContext != null) {
-                downloaderContext.request = request;
-                downloaderContext.isCancelled = false;
-                downloaderContext.workItem.moveToFront();
-            } else {
-                enqueueCacheRead(request, key, request.isCachedRedirectAllowed());
+            if (joinPendingRequest(key, request)) {
+                return;
+            }
+        }
+
+        // Decoded bitmaps that are still in memory can be handed back without touching the
+        // cache-read queue at all.
+        ImageMemoryCache.Entry cachedEntry = getMemoryCacheEntry(request);
+        if (cachedEntry != null) {
+            postResponse(request, null, cachedEntry.getBitmap(), cachedEntry.isRedirect());
+            return;
+        }
+
+        synchronized (pendingRequests) {
+            // Another call may have registered this key while we were checking the memory cache
+            if (!joinPendingRequest(key, request)) {
+                DownloaderContext downloaderContext = new DownloaderContext(request.getContext());
+                downloaderContext.callers.put(request.getCallerTag(), request);
+                registerPendingRequest(key, downloaderContext);
+                enqueueCacheRead(downloaderContext, key);
             }
         }
     }
 
+    /**
+     * Returns the decoded bitmap for the passed in request if it is available in memory, without
+     * performing any disk or network access. Returns null otherwise.
+     * @param request Request to look up
+     * @return the cached bitmap, or null
+     */
+    public static Bitmap getCachedBitmap(ImageRequest request) {
+        if (request == null) {
+            return null;
+        }
+
+        ImageMemoryCache.Entry cachedEntry = getMemoryCacheEntry(request);
+        if (cachedEntry == null) {
+            return null;
+        }
+
+        Bitmap bitmap = cachedEntry.getBitmap();
+        trackBitmap(request, bitmap);
+        return bitmap;
+    }
+
+    /**
+     * Loads the images for the passed in requests into the disk and memory caches, so that they can be
+     * displayed right away when they are requested later. Prefetches run at PRIORITY_LOW, stop once
+     * DEFAULT_PREFETCH_MAX_BYTES have been downloaded, and do not download anything on a metered network
+     * unless setPrefetchOnMeteredNetwork has been called. Callbacks of the passed in requests are not invoked.
+     * @param context Context used to access the caches and the network state
+     * @param requests Requests for the images that are likely to be displayed soon
+     */
+    public static void prefetch(Context context, Collection<ImageRequest> requests) {
+        prefetch(context, requests, DEFAULT_PREFETCH_MAX_BYTES);
+    }
+
+    /**
+     * Loads the images for the passed in requests into the disk and memory caches, downloading at most
+     * about maxBytes. Downloads that are already underway when the limit is reached are allowed to finish.
+     * @see #prefetch(Context, Collection)
+     * @param context Context used to access the caches and the network state
+     * @param requests Requests for the images that are likely to be displayed soon
+     * @param maxBytes Number of bytes after which no further downloads are started
+     */
+    public static void prefetch(Context context, Collection<ImageRequest> requests, long maxBytes) {
+        Validate.notNull(context, "context");
+        Validate.containsNoNulls(requests, "requests");
+
+        PrefetchBatch batch = new PrefetchBatch(context.getApplicationContext(), maxBytes);
+        for (ImageRequest request : requests) {
+            prefetch(batch, request);
+        }
+    }
+
+    /**
+     * Loads the profile pictures of the passed in users into the disk and memory caches, at the size that
+     * they will later be requested at.
+     * @see #prefetch(Context, Collection)
+     * @param context Context used to access the caches and the network state
+     * @param userIds Ids of the users whose pictures are likely to be displayed soon
+     * @param width Width the pictures will be requested and displayed at
+     * @param height Height the pictures will be requested and displayed at
+     * @param scaleMode Scale mode the pictures will be requested with
+     */
+    public static void prefetchProfilePictures(
+            Context context,
+            Collection<String> userIds,
+            int width,
+            int height,
+            ImageRequest.ScaleMode scaleMode) {
+        Validate.notNull(context, "context");
+        Validate.containsNoNullOrEmpty(userIds, "userIds");
+
+        List<ImageRequest> requests = new ArrayList<ImageRequest>(userIds.size());
+        for (String userId : userIds) {
+            URI uri;
+            try {
+                uri = ImageRequest.getProfilePictureUrl(userId, width, height);
+            } catch (URISyntaxException e) {
+                continue;
+            }
+            requests.add(new ImageRequest.Builder(context, uri)
+                    .setAllowCachedRedirects(true)
+                    .setTargetSize(width, height)
+                    .setScaleMode(scaleMode)
+                    .build());
+        }
+        prefetch(context, requests);
+    }
+
+    /**
+     * Sets whether prefetching may download images while the active network is metered, such as a mobile
+     * data connection. This is off by default. Images that are already cached are always prefetched.
+     * @param prefetchOnMeteredNetwork true if prefetching may use a metered network
+     */
+    public static void setPrefetchOnMeteredNetwork(boolean prefetchOnMeteredNetwork) {
+        ImageDownloader.prefetchOnMeteredNetwork = prefetchOnMeteredNetwork;
+    }
+
+    public static boolean getPrefetchOnMeteredNetwork() {
+        return prefetchOnMeteredNetwork;
+    }
+
+    /**
+     * Adds a host whose images are stored in the disk cache. Images from the Facebook CDN are always
+     * cached. Responses that forbid caching through Cache-Control or Expires are not cached, and cached
+     * images are only used until they expire.
+     * @param hostPattern Host name, where '*' matches any sequence of characters, as in "*.example.com"
+     */
+    public static void addCacheableHostPattern(String hostPattern) {
+        ImageResponseCache.addCacheableHostPattern(hostPattern);
+    }
+
+    /**
+     * Sets a predicate that is consulted for images whose host does not match any cacheable host
+     * pattern. Pass null to only cache images from those hosts.
+     * @see #addCacheableHostPattern(String)
+     * @param predicate Predicate that decides whether an image may be cached
+     */
+    public static void setCacheableUrlPredicate(CacheableUrlPredicate predicate) {
+        ImageResponseCache.setCacheableUrlPredicate(predicate);
+    }
+
+    /**
+     * Returns a bitmap received for a request that was built with ImageRequest.Builder.setReleasesBitmap.
+     * Once every holder has released it, the bitmap may be reused for decoding other images, so it
+     * must not be drawn after this call.
+     * @param bitmap Bitmap that is no longer displayed
+     */
+    public static void releaseBitmap(Bitmap bitmap) {
+        BitmapPool.release(bitmap);
+    }
+
     public static boolean cancelRequest(ImageRequest request) {
         boolean cancelled = false;
-        RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
+        RequestKey key = new RequestKey(request);
         synchronized (pendingRequests) {
             DownloaderContext downloaderContext = pendingRequests.get(key);
-            if (downloaderContext != null) {
+            if (downloaderContext != null &&
+                    downloaderContext.callers.remove(request.getCallerTag()) != null) {
                 // If we were able to find the request in our list of pending requests, then we will
-                // definitely be able to prevent an ImageResponse from being issued. This is regardless
+                // definitely be able to prevent an ImageResponse from being issued to it. This is regardless
                 // of whether a cache-read or network-download is underway for this request.
                 cancelled = true;
 
-                if (downloaderContext.workItem.cancel()) {
-                    pendingRequests.remove(key);
-                } else {
-                    // May be attempting a cache-read right now. So keep track of the cancellation
-                    // to prevent network calls etc
-                    downloaderContext.isCancelled = true;
+                // Other callers may still be waiting for the same image. Once nobody is, stop the work
+                // if it has not started yet. Otherwise a cache-read or download is underway, and will not
+                // issue responses or start further network calls for a context without callers.
+                if (downloaderContext.callers.isEmpty() && downloaderContext.workItem.cancel()) {
+                    removePendingRequest(key);
                 }
             }
         }
@@ -94,7 +293,7 @@ public class ImageDownloader {
     }
 
     public static void prioritizeRequest(ImageRequest request) {
-        RequestKey key = new RequestKey(request.getImageUri(), request.getCallerTag());
+        RequestKey key = new RequestKey(request);
         synchronized (pendingRequests) {
             DownloaderContext downloaderContext = pendingRequests.get(key);
             if (downloaderContext != null) {
@@ -103,46 +302,204 @@ public class ImageDownloader {
         }
     }
 
+    /**
+     * Changes the priority of several pending requests at once. Among requests with the same priority,
+     * those earlier in the list are started first. Requests that have already completed are ignored.
+     * Prefetches for the same images are included in the change.
+     * @param requests Requests to change, most important first
+     * @param priority New priority, such as PRIORITY_HIGH
+     */
+    public static void setRequestPriority(List<ImageRequest> requests, int priority) {
+        Validate.containsNoNulls(requests, "requests");
+
+        // Work items are grouped by the queue they wait in, so that each queue is only locked once
+        Map<WorkQueue, List<WorkQueue.WorkItem>> workItemsByQueue = new HashMap<WorkQueue, List<WorkQueue.WorkItem>>();
+        Map<DownloaderContext, Boolean> seenContexts = new IdentityHashMap<DownloaderContext, Boolean>();
+        synchronized (pendingRequests) {
+            for (ImageRequest request : requests) {
+                DownloaderContext downloaderContext = pendingRequests.get(new RequestKey(request));
+                if (downloaderContext == null || seenContexts.put(downloaderContext, true) != null) {
+                    continue;
+                }
+
+                downloaderContext.priority = priority;
+                List<WorkQueue.WorkItem> workItems = workItemsByQueue.get(downloaderContext.workQueue);
+                if (workItems == null) {
+                    workItems = new ArrayList<WorkQueue.WorkItem>();
+                    workItemsByQueue.put(downloaderContext.workQueue, workItems);
+                }
+                workItems.add(downloaderContext.workItem);
+            }
+
+            for (Map.Entry<WorkQueue, List<WorkQueue.WorkItem>> entry : workItemsByQueue.entrySet()) {
+                entry.getKey().setPriority(entry.getValue(), priority);
+            }
+        }
+    }
+
+    /**
+     * Sets a fixed number of images that may be downloaded in parallel, turning off adaptive concurrency.
+     * @param maxConcurrent Maximum number of parallel downloads
+     */
+    public static void setDownloadConcurrency(int maxConcurrent) {
+        downloadConcurrencyController = null;
+        downloadQueue.setMaxConcurrent(maxConcurrent);
+    }
+
+    /**
+     * Lets the number of parallel downloads vary between the given bounds, based on the throughput and
+     * latency of completed downloads. Starts from the current download concurrency.
+     * @param minConcurrent Minimum number of parallel downloads
+     * @param maxConcurrent Maximum number of parallel downloads
+     */
+    public static void setAdaptiveDownloadConcurrency(int minConcurrent, int maxConcurrent) {
+        DownloadConcurrencyController controller = new DownloadConcurrencyController(
+                minConcurrent,
+                maxConcurrent,
+                downloadQueue.getMaxConcurrent());
+        downloadConcurrencyController = controller;
+        downloadQueue.setMaxConcurrent(controller.getConcurrency());
+    }
+
+    public static boolean isAdaptiveDownloadConcurrencyEnabled() {
+        return downloadConcurrencyController != null;
+    }
+
+    public static int getDownloadConcurrency() {
+        return downloadQueue.getMaxConcurrent();
+    }
+
+    /**
+     * Sets the number of cached images that may be read and decoded in parallel.
+     * @param maxConcurrent Maximum number of parallel cache reads
+     */
+    public static void setCacheReadConcurrency(int maxConcurrent) {
+        cacheReadQueue.setMaxConcurrent(maxConcurrent);
+    }
+
+    public static int getCacheReadConcurrency() {
+        return cacheReadQueue.getMaxConcurrent();
+    }
+
     public static void clearCache(Context context) {
+        ImageMemoryCache.clearCache();
+        BitmapPool.clear();
         ImageResponseCache.clearCache(context);
         UrlRedirectCache.clearCache(context);
     }
 
-    private static void enqueueCacheRead(ImageRequest request, RequestKey key, boolean allowCachedRedirects) {
+    // Lets tests hold on to work items instead of running them. Passing nulls restores the default queues.
+    static void setWorkQueuesForTest(WorkQueue cacheReadQueue, WorkQueue downloadQueue) {
+        ImageDownloader.cacheReadQueue = (cacheReadQueue != null) ? cacheReadQueue : createCacheReadQueue();
+        ImageDownloader.downloadQueue = (downloadQueue != null) ? downloadQueue : createDownloadQueue();
+    }
+
+    static boolean isPendingForTest(ImageRequest request) {
+        return isCallerPending(new RequestKey(request), request);
+    }
+
+    static void issuePreviewForTest(ImageRequest request, Bitmap preview) {
+        issuePreview(new RequestKey(request), preview);
+    }
+
+    private static WorkQueue createDownloadQueue() {
+        return new WorkQueue(DOWNLOAD_QUEUE_MAX_CONCURRENT, Settings.ExecutorType.NETWORK, TaskType.IMAGE_DOWNLOAD);
+    }
+
+    private static WorkQueue createCacheReadQueue() {
+        return new WorkQueue(CACHE_READ_QUEUE_MAX_CONCURRENT, Settings.ExecutorType.DISK, TaskType.CACHE_READ);
+    }
+
+    private static void prefetch(PrefetchBatch batch, ImageRequest request) {
+        // Responses are only used to fill the caches, so the prefetch does not need the caller's callback
+        ImageRequest prefetchRequest = new ImageRequest.Builder(batch.context, request.getImageUri())
+                .setAllowCachedRedirects(request.isCachedRedirectAllowed())
+                .setTargetSize(request.getTargetWidth(), request.getTargetHeight())
+                .setScaleMode(request.getScaleMode())
+                .setCallerTag(batch)
+                .build();
+
+        if (getMemoryCacheEntry(prefetchRequest) != null) {
+            return;
+        }
+
+        RequestKey key = new RequestKey(prefetchRequest);
+        synchronized (pendingRequests) {
+            if (pendingRequests.containsKey(key)) {
+                // Already on its way, and we do not want to move it ahead of anything
+                return;
+            }
+
+            DownloaderContext downloaderContext = new DownloaderContext(batch.context);
+            downloaderContext.callers.put(batch, prefetchRequest);
+            downloaderContext.prefetchBatch = batch;
+            downloaderContext.priority = PRIORITY_LOW;
+            registerPendingRequest(key, downloaderContext);
+            enqueueCacheRead(downloaderContext, key);
+        }
+    }
+
+    // Must be called while holding the pendingRequests lock.
+    private static boolean joinPendingRequest(RequestKey key, ImageRequest request) {
+        DownloaderContext downloaderContext = pendingRequests.get(key);
+        if (downloaderContext == null) {
+            return false;
+        }
+
+        // A newer request from the same caller replaces its older one
+        downloaderContext.callers.put(request.getCallerTag(), request);
+        // Somebody may be waiting for what used to be a prefetch
+        raisePriority(downloaderContext, PRIORITY_NORMAL);
+        downloaderContext.workItem.moveToFront();
+        return true;
+    }
+
+    // Must be called while holding the pendingRequests lock. The work item may have aged above the priority
+    // it was queued with, so it is compared on its own, and is never lowered or made to start aging again.
+    private static void raisePriority(DownloaderContext downloaderContext, int priority) {
+        if (downloaderContext.priority < priority) {
+            downloaderContext.priority = priority;
+        }
+        if (downloaderContext.workItem.getPriority() < priority) {
+            downloaderContext.workItem.setPriority(priority);
+        }
+    }
+
+    // Must be called while holding the pendingRequests lock.
+    private static void registerPendingRequest(RequestKey key, DownloaderContext downloaderContext) {
+        downloaderContext.keys.add(key);
+        pendingRequests.put(key, downloaderContext);
+    }
+
+    // Must be called while holding the pendingRequests lock.
+    private static void enqueueCacheRead(DownloaderContext downloaderContext, RequestKey key) {
         enqueueRequest(
-                request,
-                key,
+                downloaderContext,
                 cacheReadQueue,
-                new CacheReadWorkItem(request.getContext(), key, allowCachedRedirects));
+                new CacheReadWorkItem(downloaderContext.context, key));
     }
 
-    private static void enqueueDownload(ImageRequest request, RequestKey key) {
+    // Must be called while holding the pendingRequests lock.
+    private static void enqueueDownload(DownloaderContext downloaderContext, RequestKey key) {
         enqueueRequest(
-                request,
-                key,
+                downloaderContext,
                 downloadQueue,
-                new DownloadImageWorkItem(request.getContext(), key));
+                new DownloadImageWorkItem(downloaderContext.context, key));
     }
 
     private static void enqueueRequest(
-            ImageRequest request,
-            RequestKey key,
+            DownloaderContext downloaderContext,
             WorkQueue workQueue,
             Runnable workItem) {
-        synchronized (pendingRequests) {
-            DownloaderContext downloaderContext = new DownloaderContext();
-            downloaderContext.request = request;
-            pendingRequests.put(key, downloaderContext);
-
-            // The creation of the WorkItem should be done after the pending request has been registered.
-            // This is necessary since the WorkItem might kick off right away and attempt to retrieve
-            // the request's DownloaderContext prior to it being ready for access.
-            //
-            // It is also necessary to hold on to the lock until after the workItem is created, since
-            // calls to cancelRequest or prioritizeRequest might come in and expect a registered
-            // request to have a workItem available as well.
-            downloaderContext.workItem = workQueue.addActiveWorkItem(workItem);
-        }
+        // The creation of the WorkItem should be done after the pending request has been registered.
+        // This is necessary since the WorkItem might kick off right away and attempt to retrieve
+        // the request's DownloaderContext prior to it being ready for access.
+        //
+        // It is also necessary to hold on to the lock until after the workItem is created, since
+        // calls to cancelRequest or prioritizeRequest might come in and expect a registered
+        // request to have a workItem available as well.
+        downloaderContext.workQueue = workQueue;
+        downloaderContext.workItem = workQueue.addActiveWorkItem(workItem, downloaderContext.priority, true);
     }
 
     private static void issueResponse(
@@ -153,33 +510,95 @@ public class ImageDownloader {
         // Once the old downloader context is removed, we are thread-safe since this is the
         // only reference to it
         DownloaderContext completedRequestContext = removePendingRequest(key);
-        if (completedRequestContext != null && !completedRequestContext.isCancelled) {
-            final ImageRequest request = completedRequestContext.request;
-            final ImageRequest.Callback callback = request.getCallback();
-            if (callback != null) {
-                getHandler().post(new Runnable() {
-                    @Override
-                    public void run() {
-                        ImageResponse response = new ImageResponse(
-                                request,
-                                error,
-                                isCachedRedirect,
-                                bitmap);
-                        callback.onCompleted(response);
-                    }
-                });
+        if (completedRequestContext != null) {
+            for (ImageRequest request : completedRequestContext.callers.values()) {
+                postResponse(request, error, bitmap, isCachedRedirect);
             }
         }
     }
 
-    private static void readFromCache(RequestKey key, Context context, boolean allowCachedRedirects) {
+    private static void postResponse(
+            final ImageRequest request,
+            final Exception error,
+            final Bitmap bitmap,
+            final boolean isCachedRedirect) {
+        final ImageRequest.Callback callback = request.getCallback();
+        if (callback != null) {
+            trackBitmap(request, bitmap);
+            getHandler().post(new Runnable() {
+                @Override
+                public void run() {
+                    ImageResponse response = new ImageResponse(
+                            request,
+                            error,
+                            isCachedRedirect,
+                            bitmap);
+                    callback.onCompleted(response);
+                }
+            });
+        }
+    }
+
+    private static void trackBitmap(ImageRequest request, Bitmap bitmap) {
+        if (request.releasesBitmap()) {
+            BitmapPool.retain(bitmap);
+        } else {
+            // We have no way of knowing when this caller is done with the bitmap
+            BitmapPool.pin(bitmap);
+        }
+    }
+
+    private static ImageMemoryCache.Entry getMemoryCacheEntry(ImageRequest request) {
+        ImageMemoryCache.Entry cachedEntry = ImageMemoryCache.get(
+                request.getImageUri(),
+                request.getTargetWidth(),
+                request.getTargetHeight(),
+                request.getScaleMode());
+
+        // An entry that was reached through a redirect is only usable if the request allows
+        // cached redirects, just like a redirect read from UrlRedirectCache.
+        if (cachedEntry != null && cachedEntry.isRedirect() && !request.isCachedRedirectAllowed()) {
+            return null;
+        }
+        return cachedEntry;
+    }
+
+    private static void putInMemoryCache(RequestKey key, URI sourceUri, Bitmap bitmap) {
+        if (bitmap == null) {
+            return;
+        }
+
+        ImageMemoryCache.put(sourceUri, key.targetWidth, key.targetHeight, key.scaleMode, bitmap, false);
+
+        // Also remember the bitmap under the uris that were originally requested, so that
+        // subsequent requests for them do not have to follow the redirect again.
+        Set<URI> requestedUris = new HashSet<URI>();
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext != null) {
+                for (RequestKey requestedKey : downloaderContext.keys) {
+                    requestedUris.add(requestedKey.uri);
+                }
+            }
+        }
+        requestedUris.remove(sourceUri);
+        for (URI requestedUri : requestedUris) {
+            ImageMemoryCache.put(requestedUri, key.targetWidth, key.targetHeight, key.scaleMode, bitmap, true);
+        }
+    }
+
+    private static void readFromCache(RequestKey key, Context context) {
         InputStream cachedStream = null;
         boolean isCachedRedirect = false;
-        if (allowCachedRedirects) {
+        URI cachedUri = key.uri;
+        if (key.allowCachedRedirects) {
             URI redirectUri = UrlRedirectCache.getRedirectedUri(context, key.uri);
             if (redirectUri != null) {
                 cachedStream = ImageResponseCache.getCachedImageStream(redirectUri, context);
                 isCachedRedirect = cachedStream != null;
+                if (isCachedRedirect) {
+                    cachedUri = redirectUri;
+                }
             }
         }
 
@@ -188,16 +607,33 @@ public class ImageDownloader {
         }
 
         if (cachedStream != null) {
-            // We were able to find a cached image.
-            Bitmap bitmap = BitmapFactory.decodeStream(cachedStream);
-            Utility.closeQuietly(cachedStream);
-            issueResponse(key, null, bitmap, isCachedRedirect);
+            // We were able to find a cached image. Only read it here, so that the disk thread is free
+            // for the next read while the image is decoded.
+            byte[] data = null;
+            try {
+                data = ImageDecoder.readStreamToByteArray(cachedStream);
+            } catch (IOException e) {
+                issueResponse(key, e, null, isCachedRedirect);
+            } finally {
+                Utility.closeQuietly(cachedStream);
+            }
+            if (data != null) {
+                decodeAsync(key, cachedUri, data, data.length, isCachedRedirect);
+            }
         } else {
-            // Once the old downloader context is removed, we are thread-safe since this is the
-            // only reference to it
-            DownloaderContext downloaderContext = removePendingRequest(key);
-            if (downloaderContext != null && !downloaderContext.isCancelled) {
-                enqueueDownload(downloaderContext.request, key);
+            synchronized (pendingRequests) {
+                DownloaderContext downloaderContext = pendingRequests.get(key);
+                if (downloaderContext != null) {
+                    if (downloaderContext.callers.isEmpty()) {
+                        // Everybody cancelled while we were reading from the cache
+                        removePendingRequest(key);
+                    } else if (downloaderContext.prefetchBatch != null && !reservePrefetchBytes(downloaderContext)) {
+                        // Not worth the network traffic until somebody actually asks for the image
+                        removePendingRequest(key);
+                    } else {
+                        enqueueDownload(downloaderContext, key);
+                    }
+                }
             }
         }
     }
@@ -206,8 +642,20 @@ public class ImageDownloader {
         HttpURLConnection connection = null;
         InputStream stream = null;
         Exception error = null;
-        Bitmap bitmap = null;
         boolean issueResponse = true;
+        long startMillis = System.currentTimeMillis();
+
+        // Take over this download's share of a prefetch's byte limit, so that it is settled exactly once
+        PrefetchBatch prefetchBatch = null;
+        long reservedBytes = 0;
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext != null && downloaderContext.prefetchBatch != null) {
+                prefetchBatch = downloaderContext.prefetchBatch;
+                reservedBytes = downloaderContext.reservedPrefetchBytes;
+                downloaderContext.reservedPrefetchBytes = 0;
+            }
+        }
 
         try {
             URL url = new URL(key.uri.toString());
@@ -218,29 +666,51 @@ public class ImageDownloader {
                 case HttpURLConnection.HTTP_MOVED_PERM:
                 case HttpURLConnection.HTTP_MOVED_TEMP:
                     // redirect. So we need to perform further requests
-                    issueResponse = false;
-
                     String redirectLocation = connection.getHeaderField("location");
                     if (!Utility.isNullOrEmpty(redirectLocation)) {
+                        issueResponse = false;
+
                         URI redirectUri = new URI(redirectLocation);
                         UrlRedirectCache.cacheUriRedirect(context, key.uri, redirectUri);
-
-                        // Once the old downloader context is removed, we are thread-safe since this is the
-                        // only reference to it
-                        DownloaderContext downloaderContext = removePendingRequest(key);
-                        if (downloaderContext != null && !downloaderContext.isCancelled) {
-                            enqueueCacheRead(
-                                    downloaderContext.request,
-                                    new RequestKey(redirectUri, key.tag),
-                                    false);
-                        }
+                        followRedirect(key, key.withUri(redirectUri));
+                    } else {
+                        error = new FacebookException("Redirect response without a location");
                     }
                     break;
 
                 case HttpURLConnection.HTTP_OK:
                     // image should be available
-                    stream = ImageResponseCache.interceptAndCacheImageStream(context, connection);
-                    bitmap = BitmapFactory.decodeStream(stream);
+                    CountingInputStream countingStream = new CountingInputStream(
+                            ImageResponseCache.interceptAndCacheImageStream(context, connection));
+                    stream = countingStream;
+                    int contentLength = connection.getContentLength();
+                    if (prefetchBatch != null && contentLength >= 0) {
+                        // Swap the estimate for the actual size
+                        prefetchBatch.settle(reservedBytes - contentLength, 0);
+                        reservedBytes = contentLength;
+                    }
+                    byte[] data;
+                    int dataLength;
+                    if (wantsPreview(key, contentLength)) {
+                        ExposedByteArrayOutputStream buffer = readStreamWithPreviews(stream, key, contentLength);
+                        data = buffer.getBuffer();
+                        dataLength = buffer.size();
+                    } else {
+                        data = ImageDecoder.readStreamToByteArray(stream);
+                        dataLength = data.length;
+                    }
+                    // Release the connection before handing the bytes over to be decoded
+                    Utility.closeQuietly(stream);
+                    Utility.disconnectQuietly(connection);
+                    long receivedBytes = countingStream.getCount();
+                    if (prefetchBatch != null) {
+                        prefetchBatch.settle(reservedBytes, receivedBytes);
+                        prefetchBatch = null;
+                    }
+                    onDownloadCompleted(receivedBytes, startMillis);
+
+                    issueResponse = false;
+                    decodeAsync(key, key.uri, data, dataLength, false);
                     break;
 
                 default:
@@ -264,10 +734,196 @@ public class ImageDownloader {
         } finally {
             Utility.closeQuietly(stream);
             Utility.disconnectQuietly(connection);
+            if (prefetchBatch != null) {
+                // Redirected, failed or interrupted before the image was read
+                prefetchBatch.settle(reservedBytes, 0);
+            }
         }
 
         if (issueResponse) {
-            issueResponse(key, error, bitmap, false);
+            issueResponse(key, error, null, false);
+        }
+    }
+
+    // Decodes the first length bytes of data on the decode executor, then caches and issues the result.
+    private static void decodeAsync(
+            final RequestKey key,
+            final URI uri,
+            final byte[] data,
+            final int length,
+            final boolean isCachedRedirect) {
+        Settings.getExecutor(Settings.ExecutorType.DECODE).execute(TaskTracker.wrap(TaskType.DECODE, new Runnable() {
+            @Override
+            public void run() {
+                Bitmap bitmap = ImageDecoder.decodeByteArray(
+                        data,
+                        length,
+                        key.targetWidth,
+                        key.targetHeight,
+                        key.scaleMode);
+                putInMemoryCache(key, uri, bitmap);
+                issueResponse(key, null, bitmap, isCachedRedirect);
+            }
+        }));
+    }
+
+    private static void followRedirect(RequestKey key, RequestKey redirectKey) {
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext == null) {
+                return;
+            }
+            if (downloaderContext.callers.isEmpty()) {
+                // Everybody cancelled while we were downloading
+                removePendingRequest(key);
+                return;
+            }
+
+            DownloaderContext redirectContext = pendingRequests.get(redirectKey);
+            if (redirectContext != null && redirectContext != downloaderContext) {
+                // The image we were redirected to is already being fetched for other callers, so
+                // wait for that instead of fetching it again.
+                redirectContext.callers.putAll(downloaderContext.callers);
+                for (RequestKey requestedKey : downloaderContext.keys) {
+                    registerPendingRequest(requestedKey, redirectContext);
+                }
+                raisePriority(redirectContext, downloaderContext.priority);
+                redirectContext.workItem.moveToFront();
+            } else {
+                // Keep the original keys registered, so that callers can still find their request in
+                // order to cancel or prioritize it.
+                registerPendingRequest(redirectKey, downloaderContext);
+                enqueueCacheRead(downloaderContext, redirectKey);
+            }
+        }
+    }
+
+    // Must be called while holding the pendingRequests lock. Holds back part of the prefetch's byte limit
+    // for the download about to be queued, and returns false if a download nobody asked for does not fit.
+    private static boolean reservePrefetchBytes(DownloaderContext downloaderContext) {
+        PrefetchBatch batch = downloaderContext.prefetchBatch;
+        if (downloaderContext.isPrefetchOnly()) {
+            if (!batch.tryReserve(PREFETCH_RESERVED_BYTES_PER_IMAGE)) {
+                return false;
+            }
+        } else {
+            // Somebody asked for the image, so it is downloaded regardless, but its bytes still count
+            batch.reserve(PREFETCH_RESERVED_BYTES_PER_IMAGE);
+        }
+        downloaderContext.reservedPrefetchBytes = PREFETCH_RESERVED_BYTES_PER_IMAGE;
+        return true;
+    }
+
+    private static void onDownloadCompleted(long bytes, long startMillis) {
+        DownloadConcurrencyController controller = downloadConcurrencyController;
+        if (controller != null) {
+            int concurrency = controller.onDownloadCompleted(bytes, startMillis, System.currentTimeMillis());
+            if (concurrency != downloadQueue.getMaxConcurrent()) {
+                downloadQueue.setMaxConcurrent(concurrency);
+            }
+        }
+    }
+
+    private static boolean wantsPreview(RequestKey key, int contentLength) {
+        if (contentLength >= 0 && contentLength < MIN_PREVIEW_CONTENT_LENGTH) {
+            return false;
+        }
+
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext != null) {
+                for (ImageRequest request : downloaderContext.callers.values()) {
+                    if (request.getCallback() instanceof ImageRequest.PreviewCallback) {
+                        return true;
+                    }
+                }
+            }
+        }
+        return false;
+    }
+
+    // Reads the whole stream into a buffer, decoding and issuing previews of the partial image
+    // along the way.
+    private static ExposedByteArrayOutputStream readStreamWithPreviews(
+            InputStream stream,
+            RequestKey key,
+            int contentLength) throws IOException {
+        ExposedByteArrayOutputStream buffer = new ExposedByteArrayOutputStream(
+                (contentLength > 0) ? contentLength : Utility.DEFAULT_STREAM_BUFFER_SIZE);
+        byte[] chunk = new byte[Utility.DEFAULT_STREAM_BUFFER_SIZE];
+        int previewCount = 0;
+        int nextPreviewSize = getPreviewSize(previewCount, contentLength);
+
+        int bytesRead;
+        while ((bytesRead = stream.read(chunk)) != -1) {
+            buffer.write(chunk, 0, bytesRead);
+
+            int size = buffer.size();
+            if (previewCount < MAX_PREVIEWS && size >= nextPreviewSize && size != contentLength) {
+                Bitmap preview = ImageDecoder.decodePreview(
+                        buffer.getBuffer(),
+                        size,
+                        key.targetWidth,
+                        key.targetHeight,
+                        key.scaleMode);
+                if (preview != null) {
+                    issuePreview(key, preview);
+                }
+
+                previewCount++;
+                nextPreviewSize = getPreviewSize(previewCount, contentLength);
+            }
+        }
+
+        return buffer;
+    }
+
+    // Returns the number of bytes after which the preview with the given index should be decoded.
+    // Previews are spread evenly over the download if we know how large it is.
+    static int getPreviewSize(int previewIndex, int contentLength) {
+        if (contentLength > 0) {
+            return (int) ((long) contentLength * (previewIndex + 1) / (MAX_PREVIEWS + 1));
+        }
+        return PREVIEW_INTERVAL_BYTES * (previewIndex + 1);
+    }
+
+    private static void issuePreview(RequestKey key, Bitmap preview) {
+        List<ImageRequest> previewRequests = new ArrayList<ImageRequest>();
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext == null) {
+                return;
+            }
+            for (ImageRequest request : downloaderContext.callers.values()) {
+                if (request.getCallback() instanceof ImageRequest.PreviewCallback) {
+                    previewRequests.add(request);
+                }
+            }
+        }
+
+        for (ImageRequest request : previewRequests) {
+            postPreview(key, request, preview);
+        }
+    }
+
+    private static void postPreview(final RequestKey key, final ImageRequest request, final Bitmap preview) {
+        final ImageRequest.PreviewCallback callback = (ImageRequest.PreviewCallback) request.getCallback();
+        getHandler().post(new Runnable() {
+            @Override
+            public void run() {
+                // The request may have been cancelled, or completed, since the preview was posted
+                if (isCallerPending(key, request)) {
+                    ImageResponse response = new ImageResponse(request, null, false, preview, true);
+                    callback.onPreview(response);
+                }
+            }
+        });
+    }
+
+    private static boolean isCallerPending(RequestKey key, ImageRequest request) {
+        synchronized (pendingRequests) {
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            return downloaderContext != null && downloaderContext.callers.get(request.getCallerTag()) == request;
         }
     }
 
@@ -278,22 +934,58 @@ public class ImageDownloader {
         return handler;
     }
 
+    // Removes the context for this key, along with all other keys that lead to it.
     private static DownloaderContext removePendingRequest(RequestKey key) {
         synchronized (pendingRequests) {
-            return pendingRequests.remove(key);
+            DownloaderContext downloaderContext = pendingRequests.get(key);
+            if (downloaderContext != null) {
+                for (RequestKey requestedKey : downloaderContext.keys) {
+                    if (pendingRequests.get(requestedKey) == downloaderContext) {
+                        pendingRequests.remove(requestedKey);
+                    }
+                }
+                if (downloaderContext.reservedPrefetchBytes != 0) {
+                    // The download was cancelled before it started
+                    downloaderContext.prefetchBatch.settle(downloaderContext.reservedPrefetchBytes, 0);
+                    downloaderContext.reservedPrefetchBytes = 0;
+                }
+            }
+            return downloaderContext;
         }
     }
 
+    // Identifies a single fetch and decode of an image, independent of who asked for it.
     private static class RequestKey {
         private static final int HASH_SEED = 29; // Some random prime number
         private static final int HASH_MULTIPLIER = 37; // Some random prime number
 
         URI uri;
-        Object tag;
+        int targetWidth;
+        int targetHeight;
+        ImageRequest.ScaleMode scaleMode;
+        boolean allowCachedRedirects;
+
+        RequestKey(ImageRequest request) {
+            this(request.getImageUri(), request.getTargetWidth(), request.getTargetHeight(),
+                    request.getScaleMode(), request.isCachedRedirectAllowed());
+        }
 
-        RequestKey(URI url, Object tag) {
+        RequestKey(
+                URI url,
+                int targetWidth,
+                int targetHeight,
+                ImageRequest.ScaleMode scaleMode,
+                boolean allowCachedRedirects) {
             this.uri = url;
-            this.tag = tag;
+            this.targetWidth = targetWidth;
+            this.targetHeight = targetHeight;
+            this.scaleMode = scaleMode;
+            this.allowCachedRedirects = allowCachedRedirects;
+        }
+
+        // Redirects are never looked up in the cache again once we are following one
+        RequestKey withUri(URI url) {
+            return new RequestKey(url, targetWidth, targetHeight, scaleMode, false);
         }
 
         @Override
@@ -301,7 +993,10 @@ public class ImageDownloader {
             int result = HASH_SEED;
 
             result = (result * HASH_MULTIPLIER) + uri.hashCode();
-            result = (result * HASH_MULTIPLIER) + tag.hashCode();
+            result = (result * HASH_MULTIPLIER) + targetWidth;
+            result = (result * HASH_MULTIPLIER) + targetHeight;
+            result = (result * HASH_MULTIPLIER) + scaleMode.hashCode();
+            result = (result * HASH_MULTIPLIER) + (allowCachedRedirects ? 1 : 0);
 
             return result;
         }
@@ -312,7 +1007,11 @@ public class ImageDownloader {
 
             if (o != null && o instanceof RequestKey) {
                 RequestKey compareTo = (RequestKey)o;
-                isEqual = compareTo.uri == uri && compareTo.tag == tag;
+                isEqual = compareTo.uri.equals(uri) &&
+                        compareTo.targetWidth == targetWidth &&
+                        compareTo.targetHeight == targetHeight &&
+                        compareTo.scaleMode == scaleMode &&
+                        compareTo.allowCachedRedirects == allowCachedRedirects;
             }
 
             return isEqual;
@@ -320,25 +1019,107 @@ public class ImageDownloader {
     }
 
     private static class DownloaderContext {
+        final Context context;
+        // Keyed by caller tag. Callers are compared by identity, as the tags were before.
+        final Map<Object, ImageRequest> callers = new IdentityHashMap<Object, ImageRequest>();
+        // Every key that currently leads to this context, including the original uri of a redirect
+        final List<RequestKey> keys = new ArrayList<RequestKey>();
+        WorkQueue workQueue;
         WorkQueue.WorkItem workItem;
-        ImageRequest request;
-        boolean isCancelled;
+        int priority = PRIORITY_NORMAL;
+        // Set if this context was created by a prefetch. Callers may have joined it since.
+        PrefetchBatch prefetchBatch;
+        // Bytes held against prefetchBatch for the download that is queued but not yet started
+        long reservedPrefetchBytes;
+
+        DownloaderContext(Context context) {
+            this.context = context;
+        }
+
+        // Must be called while holding the pendingRequests lock.
+        boolean isPrefetchOnly() {
+            return prefetchBatch != null && callers.size() == 1 && callers.containsKey(prefetchBatch);
+        }
+    }
+
+    // The requests passed to a single prefetch call. Used as the caller tag of those requests, and keeps
+    // track of how many bytes they have downloaded. Downloads still in flight hold a reservation against
+    // the limit, so that several of them starting at once cannot overshoot it.
+    static class PrefetchBatch {
+        final Context context;
+        private final long maxBytes;
+        private long downloadedBytes;
+        private long reservedBytes;
+
+        PrefetchBatch(Context context, long maxBytes) {
+            this.context = context;
+            this.maxBytes = maxBytes;
+        }
+
+        // Reserves bytes for a download that is about to start, if the limit and network allow it.
+        boolean tryReserve(long bytes) {
+            if (!prefetchOnMeteredNetwork && isActiveNetworkMetered(context)) {
+                Logger.log(LoggingBehavior.REQUESTS, TAG, "Prefetch skipped on metered network");
+                return false;
+            }
+
+            synchronized (this) {
+                if (downloadedBytes + reservedBytes >= maxBytes) {
+                    Logger.log(LoggingBehavior.REQUESTS, TAG, "Prefetch stopped after %d bytes, %d more in flight",
+                            downloadedBytes, reservedBytes);
+                    return false;
+                }
+                reservedBytes += bytes;
+                return true;
+            }
+        }
+
+        // Reserves bytes for a download that will happen whether or not the limit allows it.
+        synchronized void reserve(long bytes) {
+            reservedBytes += bytes;
+        }
+
+        // Releases a reservation, and counts the bytes that were actually downloaded in its place.
+        synchronized void settle(long reserved, long downloaded) {
+            reservedBytes -= reserved;
+            downloadedBytes += downloaded;
+        }
+    }
+
+    private static boolean isActiveNetworkMetered(Context context) {
+        if (context.checkCallingOrSelfPermission(Manifest.permission.ACCESS_NETWORK_STATE) !=
+                PackageManager.PERMISSION_GRANTED) {
+            // We cannot tell, so be conservative
+            return true;
+        }
+
+        ConnectivityManager connectivityManager =
+                (ConnectivityManager) context.getSystemService(Context.CONNECTIVITY_SERVICE);
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.JELLY_BEAN) {
+            return connectivityManager.isActiveNetworkMetered();
+        }
+
+        // Before Jelly Bean, treat anything but wifi and ethernet as metered
+        NetworkInfo networkInfo = connectivityManager.getActiveNetworkInfo();
+        if (networkInfo == null) {
+            return true;
+        }
+        int type = networkInfo.getType();
+        return type != ConnectivityManager.TYPE_WIFI && type != ConnectivityManager.TYPE_ETHERNET;
     }
 
     private static class CacheReadWorkItem implements Runnable {
         private Context context;
         private RequestKey key;
-        private boolean allowCachedRedirects;
 
-        CacheReadWorkItem(Context context, RequestKey key, boolean allowCachedRedirects) {
+        CacheReadWorkItem(Context context, RequestKey key) {
             this.context = context;
             this.key = key;
-            this.allowCachedRedirects = allowCachedRedirects;
         }
 
         @Override
         public void run() {
-            readFromCache(key, context, allowCachedRedirects);
+            readFromCache(key, context);
         }
     }
 
@@ -357,4 +1138,15 @@ public class ImageDownloader {
         }
 
     }
+
+    // Gives access to the buffered bytes without copying them
+    private static class ExposedByteArrayOutputStream extends ByteArrayOutputStream {
+        ExposedByteArrayOutputStream(int size) {
+            super(size);
+        }
+
+        synchronized byte[] getBuffer() {
+            return buf;
+        }
+    }
 }
@@ -0,0 +1,133 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.graphics.Bitmap;
+import android.support.v4.util.LruCache;
+import com.facebook.LoggingBehavior;
+
+import java.net.URI;
+
+// Process-wide cache of decoded bitmaps, consulted before ImageResponseCache so that images
+// which were decoded recently do not need another disk read and decode.
+class ImageMemoryCache {
+    static final String TAG = ImageMemoryCache.class.getSimpleName();
+
+    // Use up to 1/8th of the heap for decoded images, which mirrors the platform guidance
+    // for in-memory bitmap caches.
+    private static final int MEMORY_FRACTION = 8;
+    private static final int MAX_SIZE_IN_BYTES = 16 * 1024 * 1024;
+
+    private static final BitmapLruCache cache = new BitmapLruCache(getDefaultMaxSize());
+
+    static Entry get(URI uri, int targetWidth, int targetHeight, ImageRequest.ScaleMode scaleMode) {
+        if (uri == null) {
+            return null;
+        }
+        return cache.get(getCacheKey(uri, targetWidth, targetHeight, scaleMode));
+    }
+
+    static void put(
+            URI uri,
+            int targetWidth,
+            int targetHeight,
+            ImageRequest.ScaleMode scaleMode,
+            Bitmap bitmap,
+            boolean isRedirect) {
+        if (uri == null || bitmap == null) {
+            return;
+        }
+        // The cache holds a reference to the bitmap for as long as the entry is cached
+        BitmapPool.retain(bitmap);
+        cache.put(getCacheKey(uri, targetWidth, targetHeight, scaleMode), new Entry(bitmap, isRedirect));
+    }
+
+    static void clearCache() {
+        cache.evictAll();
+        Logger.log(LoggingBehavior.CACHE, TAG, "clearCache %s", cache);
+    }
+
+    static int getSize() {
+        return cache.size();
+    }
+
+    static int getMaxSize() {
+        return cache.maxSize();
+    }
+
+    static int getHitCount() {
+        return cache.hitCount();
+    }
+
+    static int getMissCount() {
+        return cache.missCount();
+    }
+
+    static int getEvictionCount() {
+        return cache.evictionCount();
+    }
+
+    // Downsampled bitmaps are cached separately for each target size they were decoded for
+    private static String getCacheKey(URI uri, int targetWidth, int targetHeight, ImageRequest.ScaleMode scaleMode) {
+        if (targetWidth == ImageRequest.UNSPECIFIED_DIMENSION &&
+                targetHeight == ImageRequest.UNSPECIFIED_DIMENSION) {
+            return uri.toString();
+        }
+        return uri.toString() + "#" + targetWidth + "x" + targetHeight + ":" + scaleMode;
+    }
+
+    private static int getDefaultMaxSize() {
+        long maxMemory = Runtime.getRuntime().maxMemory();
+        return (int) Math.min(maxMemory / MEMORY_FRACTION, MAX_SIZE_IN_BYTES);
+    }
+
+    static final class Entry {
+        private final Bitmap bitmap;
+        private final boolean isRedirect;
+
+        Entry(Bitmap bitmap, boolean isRedirect) {
+            this.bitmap = bitmap;
+            this.isRedirect = isRedirect;
+        }
+
+        Bitmap getBitmap() {
+            return bitmap;
+        }
+
+        // True if this entry was stored under the uri of a request that was redirected
+        // to the uri the bitmap was actually read from.
+        boolean isRedirect() {
+            return isRedirect;
+        }
+    }
+
+    private static class BitmapLruCache extends LruCache<String, Entry> {
+        BitmapLruCache(int maxSizeInBytes) {
+            super(maxSizeInBytes);
+        }
+
+        @Override
+        protected int sizeOf(String key, Entry entry) {
+            return BitmapPool.getSizeInBytes(entry.getBitmap());
+        }
+
+        @Override
+        protected void entryRemoved(boolean evicted, String key, Entry oldEntry, Entry newEntry) {
+            BitmapPool.release(oldEntry.getBitmap());
+        }
+    }
+}
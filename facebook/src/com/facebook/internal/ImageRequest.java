@@ -33,6 +33,35 @@ public class ImageRequest {
         void onCompleted(ImageResponse response);
     }
 
+    /**
+     * Callback for requests that want to show a low-resolution preview of an image while it is being
+     * downloaded. Previews are only produced for images that come from the network, and not every image
+     * format can be previewed, so onPreview may never be called. onCompleted is always called last.
+     */
+    public interface PreviewCallback extends Callback {
+        /**
+         * This method should always be called on the UI thread. The bitmap of the response is a
+         * downsampled decode of the bytes received so far, and may be incomplete.
+         * @param response
+         */
+        void onPreview(ImageResponse response);
+    }
+
+    /**
+     * Describes how a downsampled image should relate to its target size.
+     */
+    public enum ScaleMode {
+        /**
+         * The whole image should fit within the target size, as with ImageView.ScaleType.CENTER_INSIDE.
+         */
+        FIT,
+
+        /**
+         * The image should cover the target size and may be cropped, as with ImageView.ScaleType.CENTER_CROP.
+         */
+        FILL
+    }
+
     public static final int UNSPECIFIED_DIMENSION = 0;
 
     private static final String PROFILEPIC_URL_FORMAT =
@@ -47,6 +76,10 @@ public class ImageRequest {
     private Callback callback;
     private boolean allowCachedRedirects;
     private Object callerTag;
+    private int targetWidth;
+    private int targetHeight;
+    private ScaleMode scaleMode;
+    private boolean releasesBitmap;
 
     public static URI getProfilePictureUrl(
             String userId,
@@ -84,6 +117,10 @@ public class ImageRequest {
         this.callback = builder.callback;
         this.allowCachedRedirects = builder.allowCachedRedirects;
         this.callerTag = builder.callerTag == null ? new Object() : builder.callerTag;
+        this.targetWidth = builder.targetWidth;
+        this.targetHeight = builder.targetHeight;
+        this.scaleMode = builder.scaleMode;
+        this.releasesBitmap = builder.releasesBitmap;
     }
 
     public Context getContext() {
@@ -106,6 +143,22 @@ public class ImageRequest {
         return callerTag;
     }
 
+    public int getTargetWidth() {
+        return targetWidth;
+    }
+
+    public int getTargetHeight() {
+        return targetHeight;
+    }
+
+    public ScaleMode getScaleMode() {
+        return scaleMode;
+    }
+
+    public boolean releasesBitmap() {
+        return releasesBitmap;
+    }
+
     public static class Builder {
         // Required
         private Context context;
@@ -115,6 +168,10 @@ public class ImageRequest {
         private Callback callback;
         private boolean allowCachedRedirects;
         private Object callerTag;
+        private int targetWidth = UNSPECIFIED_DIMENSION;
+        private int targetHeight = UNSPECIFIED_DIMENSION;
+        private ScaleMode scaleMode = ScaleMode.FIT;
+        private boolean releasesBitmap;
 
         public Builder(Context context, URI imageUrl) {
             Validate.notNull(imageUrl, "imageUrl");
@@ -137,6 +194,33 @@ public class ImageRequest {
             return this;
         }
 
+        /**
+         * Sets the size, in pixels, that the image will be displayed at. If set, the image is
+         * downsampled while decoding so that it is no larger than needed for this size.
+         * Either dimension may be UNSPECIFIED_DIMENSION.
+         */
+        public Builder setTargetSize(int targetWidth, int targetHeight) {
+            this.targetWidth = Math.max(targetWidth, UNSPECIFIED_DIMENSION);
+            this.targetHeight = Math.max(targetHeight, UNSPECIFIED_DIMENSION);
+            return this;
+        }
+
+        public Builder setScaleMode(ScaleMode scaleMode) {
+            Validate.notNull(scaleMode, "scaleMode");
+            this.scaleMode = scaleMode;
+            return this;
+        }
+
+        /**
+         * Indicates that the caller will pass the bitmap of the response to ImageDownloader.releaseBitmap
+         * once it is no longer displayed, and will not use it after that. This allows the bitmap to be
+         * reused for decoding later images.
+         */
+        public Builder setReleasesBitmap(boolean releasesBitmap) {
+            this.releasesBitmap = releasesBitmap;
+            return this;
+        }
+
         public ImageRequest build() {
             return new ImageRequest(this);
         }
@@ -24,12 +24,23 @@ public class ImageResponse {
     private Exception error;
     private boolean isCachedRedirect;
     private Bitmap bitmap;
+    private boolean isPreview;
 
     ImageResponse(ImageRequest request, Exception error, boolean isCachedRedirect, Bitmap bitmap) {
+        this(request, error, isCachedRedirect, bitmap, false);
+    }
+
+    ImageResponse(
+            ImageRequest request,
+            Exception error,
+            boolean isCachedRedirect,
+            Bitmap bitmap,
+            boolean isPreview) {
         this.request = request;
         this.error = error;
         this.bitmap = bitmap;
         this.isCachedRedirect = isCachedRedirect;
+        this.isPreview = isPreview;
     }
 
     public ImageRequest getRequest() {
@@ -47,4 +58,12 @@ public class ImageResponse {
     public boolean isCachedRedirect() {
         return isCachedRedirect;
     }
+
+    /**
+     * Returns true if this response was passed to ImageRequest.PreviewCallback.onPreview, and a
+     * final response will follow.
+     */
+    public boolean isPreview() {
+        return isPreview;
+    }
 }
@@ -27,12 +27,32 @@ import java.net.HttpURLConnection;
 import java.net.URI;
 import java.net.URISyntaxException;
 import java.net.URL;
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.regex.Pattern;
 
 class ImageResponseCache {
     static final String TAG = ImageResponseCache.class.getSimpleName();
 
+    // Returned by getExpiration for responses that must not be cached
+    static final long NOT_CACHEABLE = -1;
+
+    private static final String CACHE_CONTROL_HEADER = "Cache-Control";
+    private static final String EXPIRES_HEADER = "Expires";
+    private static final String NO_STORE_DIRECTIVE = "no-store";
+    private static final String NO_CACHE_DIRECTIVE = "no-cache";
+    private static final String MAX_AGE_DIRECTIVE = "max-age=";
+
     private volatile static FileLruCache imageCache;
 
+    private static final List<Pattern> cacheableHostPatterns = new CopyOnWriteArrayList<Pattern>();
+    private volatile static ImageDownloader.CacheableUrlPredicate cacheableUrlPredicate;
+
+    static {
+        addCacheableHostPattern("*fbcdn.net");
+        addCacheableHostPattern("fbcdn*akamaihd.net");
+    }
+
     synchronized static FileLruCache getCache(Context context) throws IOException{
         if (imageCache == null) {
             imageCache = new FileLruCache(context.getApplicationContext(), TAG, new FileLruCache.Limits());
@@ -45,7 +65,7 @@ class ImageResponseCache {
     static InputStream getCachedImageStream(URI url, Context context) {
         InputStream imageStream = null;
         if (url != null) {
-            if (isCDNURL(url)) {
+            if (isCacheableUrl(url)) {
                 try {
                     FileLruCache cache = getCache(context);
                     imageStream = cache.get(url.toString());
@@ -64,13 +84,15 @@ class ImageResponseCache {
             URL url = connection.getURL();
             stream = connection.getInputStream(); // Default stream in case caching fails
             try {
-                if (isCDNURL(url.toURI())) {
+                long expiration = getExpiration(connection, System.currentTimeMillis());
+                if (expiration != NOT_CACHEABLE && isCacheableUrl(url.toURI())) {
                     FileLruCache cache = getCache(context);
 
                     // Wrap stream with a caching stream
                     stream = cache.interceptAndPut(
                             url.toString(),
-                            new BufferedHttpInputStream(stream, connection));
+                            new BufferedHttpInputStream(stream, connection),
+                            expiration);
                 }
             } catch (IOException e) {
                 // Caching is best effort
@@ -81,20 +103,80 @@ class ImageResponseCache {
         return stream;
     }
 
-   private static boolean isCDNURL(URI url) {
-        if (url != null) {
-            String uriHost = url.getHost();
+    // Host patterns may contain '*', which matches any sequence of characters.
+    static void addCacheableHostPattern(String hostPattern) {
+        Validate.notNullOrEmpty(hostPattern, "hostPattern");
 
-            if (uriHost.endsWith("fbcdn.net")) {
-                return true;
+        StringBuilder regex = new StringBuilder();
+        for (String part : hostPattern.split("\\*", -1)) {
+            if (regex.length() > 0) {
+                regex.append(".*");
+            }
+            if (part.length() > 0) {
+                regex.append(Pattern.quote(part));
             }
+        }
+        cacheableHostPatterns.add(Pattern.compile(regex.toString(), Pattern.CASE_INSENSITIVE));
+    }
+
+    static void setCacheableUrlPredicate(ImageDownloader.CacheableUrlPredicate predicate) {
+        cacheableUrlPredicate = predicate;
+    }
+
+    static boolean isCacheableUrl(URI url) {
+        if (url == null) {
+            return false;
+        }
 
-            if (uriHost.startsWith("fbcdn") && uriHost.endsWith("akamaihd.net")) {
-                return true;
+        String uriHost = url.getHost();
+        if (uriHost != null) {
+            for (Pattern pattern : cacheableHostPatterns) {
+                if (pattern.matcher(uriHost).matches()) {
+                    return true;
+                }
+            }
+        }
+
+        ImageDownloader.CacheableUrlPredicate predicate = cacheableUrlPredicate;
+        return predicate != null && predicate.isCacheable(url);
+    }
+
+    static long getExpiration(HttpURLConnection connection, long nowMillis) {
+        return getExpiration(
+                connection.getHeaderField(CACHE_CONTROL_HEADER),
+                connection.getHeaderField(EXPIRES_HEADER) != null,
+                connection.getExpiration(),
+                nowMillis);
+    }
+
+    // Returns the time at which a response with the given headers expires, FileLruCache.NO_EXPIRATION
+    // if the headers do not say, or NOT_CACHEABLE. We never revalidate cached images, so responses that
+    // require it are not cached at all. As in HTTP, max-age takes precedence over Expires.
+    static long getExpiration(String cacheControl, boolean hasExpires, long expiresMillis, long nowMillis) {
+        if (cacheControl != null) {
+            for (String directive : cacheControl.split(",")) {
+                directive = directive.trim().toLowerCase();
+                if (directive.equals(NO_STORE_DIRECTIVE) || directive.startsWith(NO_CACHE_DIRECTIVE)) {
+                    return NOT_CACHEABLE;
+                }
+                if (directive.startsWith(MAX_AGE_DIRECTIVE)) {
+                    try {
+                        long maxAgeSeconds = Long.parseLong(directive.substring(MAX_AGE_DIRECTIVE.length()).trim());
+                        return (maxAgeSeconds > 0) ? nowMillis + maxAgeSeconds * 1000 : NOT_CACHEABLE;
+                    } catch (NumberFormatException e) {
+                        // Ignore the directive, as HTTP caches do
+                    }
+                }
             }
         }
 
-        return false;
+        if (hasExpires) {
+            // HttpURLConnection reports an Expires header it could not parse as 0, which HTTP says
+            // should be treated as already expired
+            return (expiresMillis > nowMillis) ? expiresMillis : NOT_CACHEABLE;
+        }
+
+        return FileLruCache.NO_EXPIRATION;
     }
 
     static void clearCache(Context context) {
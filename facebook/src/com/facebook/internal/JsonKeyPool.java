@@ -0,0 +1,111 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import org.json.JSONException;
+import org.json.JSONTokener;
+
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Shares one String instance between all the JSON objects that use the same property name, so that a list of
+ * five thousand friends does not hold five thousand copies of "id" and "name". Only names that look like field
+ * names are pooled, and the pool stops growing once it is full, so responses keyed by ids or other unbounded
+ * values cannot fill memory with keys that are never seen again.
+ */
+public final class JsonKeyPool {
+    static final int MAX_KEYS = 1024;
+    static final int MAX_KEY_LENGTH = 64;
+
+    private static final ConcurrentHashMap<String, String> keys = new ConcurrentHashMap<String, String>();
+    // ConcurrentHashMap.size is not constant-time, so the number of keys is counted separately
+    private static final AtomicInteger keyCount = new AtomicInteger();
+
+    private JsonKeyPool() {
+    }
+
+    /**
+     * Returns the pooled instance of a JSON property name, adding the name to the pool if there is room.
+     *
+     * @param key the property name
+     * @return a String equal to key, shared with every other caller that passed an equal name
+     */
+    public static String intern(String key) {
+        String pooledKey = keys.get(key);
+        if (pooledKey != null) {
+            return pooledKey;
+        }
+        if (!isPoolable(key) || keyCount.get() >= MAX_KEYS) {
+            return key;
+        }
+
+        pooledKey = keys.putIfAbsent(key, key);
+        if (pooledKey != null) {
+            return pooledKey;
+        }
+        keyCount.incrementAndGet();
+        return key;
+    }
+
+    /**
+     * Creates a JSONTokener whose objects use pooled instances of their property names.
+     *
+     * @param json the JSON to parse
+     * @return the tokener
+     */
+    public static JSONTokener createTokener(String json) {
+        return new KeyInterningJSONTokener(json);
+    }
+
+    static int getSize() {
+        return keyCount.get();
+    }
+
+    static void clear() {
+        keys.clear();
+        keyCount.set(0);
+    }
+
+    private static boolean isPoolable(String key) {
+        // Objects keyed by ids, as returned for ?ids=, have a different set of keys in every response
+        return key.length() > 0 && key.length() <= MAX_KEY_LENGTH && !Character.isDigit(key.charAt(0));
+    }
+
+    private static final class KeyInterningJSONTokener extends JSONTokener {
+        KeyInterningJSONTokener(String json) {
+            super(json);
+        }
+
+        @Override
+        public String nextString(char quote) throws JSONException {
+            String string = super.nextString(quote);
+
+            // A string followed by a colon is a property name. nextClean returns 0 at the end of the input,
+            // where there is nothing to step back over.
+            char next = nextClean();
+            if (next != 0) {
+                back();
+            }
+            return (next == ':') ? intern(string) : string;
+        }
+    }
+}
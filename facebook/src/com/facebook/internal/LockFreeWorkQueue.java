@@ -0,0 +1,368 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.annotation.TargetApi;
+import android.os.Build;
+import com.facebook.Settings;
+
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicReference;
+
+// Alternative to WorkQueue that never blocks. Pending items live in a concurrent skip list ordered the
+// same way as WorkQueue's heap, admission is controlled by an atomic running count, and each item moves
+// through its states with compare-and-set. Items behave like WorkQueue items: cancel only succeeds
+// before an item starts, and moveToFront and setPriority only affect pending items.
+//
+// The trade-off is that re-prioritizing briefly takes an item out of the pending set, and aging is
+// approximate: items are checked for aging in the order they started waiting, one at a time, as other
+// items start.
+//
+// ConcurrentSkipListMap was added in API 9, below the SDK's minSdkVersion, so callers must check
+// Build.VERSION.SDK_INT >= GINGERBREAD before referring to this class at all, and fall back to WorkQueue
+// otherwise. Nothing in the SDK uses it yet; it is kept next to WorkQueue so the two can be compared.
+@TargetApi(Build.VERSION_CODES.GINGERBREAD)
+class LockFreeWorkQueue {
+    private static final int PENDING = 0;
+    private static final int RUNNING = 1;
+    private static final int CANCELLED = 2;
+
+    private final ConcurrentSkipListMap<Position, WorkNode> pendingJobs = new ConcurrentSkipListMap<Position, WorkNode>();
+    // Items in the order they started waiting. Entries for items that have since started, been cancelled
+    // or been re-prioritized are skipped when they reach the head. Nothing is added while aging is off,
+    // since nothing would ever remove it.
+    private final ConcurrentLinkedQueue<AgingEntry> agingQueue = new ConcurrentLinkedQueue<AgingEntry>();
+
+    private final AtomicInteger runningCount = new AtomicInteger();
+    private final AtomicLong frontSequence = new AtomicLong();
+    private final AtomicLong backSequence = new AtomicLong();
+
+    private volatile int maxConcurrent;
+    private volatile long agingIntervalMillis = WorkQueue.DEFAULT_AGING_INTERVAL_MILLIS;
+    private final Executor executor;
+
+    LockFreeWorkQueue() {
+        this(WorkQueue.DEFAULT_MAX_CONCURRENT);
+    }
+
+    LockFreeWorkQueue(int maxConcurrent) {
+        this(maxConcurrent, Settings.getExecutor());
+    }
+
+    LockFreeWorkQueue(int maxConcurrent, Executor executor) {
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.GINGERBREAD) {
+            throw new UnsupportedOperationException("LockFreeWorkQueue requires API level 9");
+        }
+        Validate.isPositive(maxConcurrent, "maxConcurrent");
+        this.maxConcurrent = maxConcurrent;
+        this.executor = executor;
+    }
+
+    int getMaxConcurrent() {
+        return maxConcurrent;
+    }
+
+    // As with WorkQueue, running items are allowed to finish if the limit is lowered.
+    void setMaxConcurrent(int maxConcurrent) {
+        Validate.isPositive(maxConcurrent, "maxConcurrent");
+        this.maxConcurrent = maxConcurrent;
+        startItems();
+    }
+
+    int getRunningCount() {
+        return runningCount.get();
+    }
+
+    long getAgingInterval() {
+        return agingIntervalMillis;
+    }
+
+    void setAgingInterval(long agingIntervalMillis) {
+        if (agingIntervalMillis < 0) {
+            throw new IllegalArgumentException("Argument 'agingIntervalMillis' must not be negative");
+        }
+        this.agingIntervalMillis = agingIntervalMillis;
+        if (agingIntervalMillis == WorkQueue.NO_AGING) {
+            agingQueue.clear();
+        }
+    }
+
+    WorkQueue.WorkItem addActiveWorkItem(Runnable callback) {
+        return addActiveWorkItem(callback, WorkQueue.DEFAULT_PRIORITY, true);
+    }
+
+    WorkQueue.WorkItem addActiveWorkItem(Runnable callback, boolean addToFront) {
+        return addActiveWorkItem(callback, WorkQueue.DEFAULT_PRIORITY, addToFront);
+    }
+
+    WorkQueue.WorkItem addActiveWorkItem(Runnable callback, int priority, boolean addToFront) {
+        long sequence = addToFront ? frontSequence.decrementAndGet() : backSequence.incrementAndGet();
+        WorkNode node = new WorkNode(callback, new Position(priority, sequence));
+        trackForAging(node, node.position.get(), System.currentTimeMillis());
+        pendingJobs.put(node.position.get(), node);
+
+        startItems();
+        return node;
+    }
+
+    // Same as WorkQueue.setPriority, except that the items are not all moved at the same instant.
+    void setPriority(List<? extends WorkQueue.WorkItem> items, int priority) {
+        for (int i = items.size() - 1; i >= 0; i--) {
+            WorkNode node = (WorkNode) items.get(i);
+            if (node.getQueue() != this) {
+                throw new IllegalArgumentException("Work item belongs to a different LockFreeWorkQueue");
+            }
+            node.reposition(priority, frontSequence.decrementAndGet(), System.currentTimeMillis());
+        }
+    }
+
+    // Only meaningful while no other thread is using the queue.
+    void validate() {
+        int running = runningCount.get();
+        assert running >= 0;
+
+        for (WorkNode node : pendingJobs.values()) {
+            // Cancelled items may linger until they reach the front
+            assert node.state.get() != RUNNING;
+        }
+    }
+
+    // Starts pending items until we run out of them or reach maxConcurrent.
+    private void startItems() {
+        while (true) {
+            int running = runningCount.get();
+            if (running >= maxConcurrent) {
+                return;
+            }
+            if (!runningCount.compareAndSet(running, running + 1)) {
+                continue;
+            }
+
+            // We now hold a slot; find something to run in it
+            ageWaitingItems(System.currentTimeMillis());
+            WorkNode ready = pollPending();
+            if (ready != null) {
+                execute(ready);
+                continue;
+            }
+
+            runningCount.decrementAndGet();
+
+            // An item may have been added after we looked, by a thread that saw our slot as taken.
+            // Now that the slot is free again, check once more so that item is not left waiting.
+            if (pendingJobs.isEmpty()) {
+                return;
+            }
+        }
+    }
+
+    private WorkNode pollPending() {
+        Map.Entry<Position, WorkNode> entry;
+        while ((entry = pendingJobs.pollFirstEntry()) != null) {
+            WorkNode node = entry.getValue();
+            if (node.position.get() == entry.getKey() && node.state.compareAndSet(PENDING, RUNNING)) {
+                return node;
+            }
+            // Cancelled, or a stale position of an item that is being moved
+        }
+        return null;
+    }
+
+    int getAgingQueueSizeForTest() {
+        return agingQueue.size();
+    }
+
+    // Items added while aging is off keep their priority even if aging is turned on later.
+    private void trackForAging(WorkNode node, Position position, long now) {
+        if (agingIntervalMillis != WorkQueue.NO_AGING) {
+            agingQueue.add(new AgingEntry(node, position, now));
+        }
+    }
+
+    private void ageWaitingItems(long now) {
+        long interval = agingIntervalMillis;
+        if (interval == WorkQueue.NO_AGING) {
+            return;
+        }
+
+        AgingEntry oldest;
+        while ((oldest = agingQueue.peek()) != null) {
+            if (!oldest.isCurrent()) {
+                agingQueue.remove(oldest);
+                continue;
+            }
+            if (now - oldest.waitingSince < interval) {
+                return;
+            }
+            if (!agingQueue.remove(oldest)) {
+                // Another thread is aging the same item
+                continue;
+            }
+
+            Position position = oldest.position;
+            long levels = (now - oldest.waitingSince) / interval;
+            int priority = (int) Math.min((long) position.priority + levels, Integer.MAX_VALUE);
+            // The item starts aging again from now, so it is not looked at again in this loop
+            oldest.node.reposition(priority, position.sequence, now);
+        }
+    }
+
+    private void execute(final WorkNode node) {
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                try {
+                    node.getCallback().run();
+                } finally {
+                    runningCount.decrementAndGet();
+                    startItems();
+                }
+            }
+        });
+    }
+
+    // Where a pending item sits in the queue. Positions are never modified, so a re-prioritized item gets
+    // a new one, which also tells apart its old entries in pendingJobs and agingQueue.
+    private static final class Position implements Comparable<Position> {
+        private static final AtomicLong nextId = new AtomicLong();
+
+        final int priority;
+        final long sequence;
+        // An item may briefly have two positions with the same priority and sequence while it is being
+        // moved, so every position is made distinct
+        final long id = nextId.incrementAndGet();
+
+        Position(int priority, long sequence) {
+            this.priority = priority;
+            this.sequence = sequence;
+        }
+
+        @Override
+        public int compareTo(Position other) {
+            // Higher priority first, then lower sequence
+            if (priority != other.priority) {
+                return (priority > other.priority) ? -1 : 1;
+            }
+            if (sequence != other.sequence) {
+                return (sequence < other.sequence) ? -1 : 1;
+            }
+            if (id != other.id) {
+                return (id < other.id) ? -1 : 1;
+            }
+            return 0;
+        }
+    }
+
+    private static final class AgingEntry {
+        final WorkNode node;
+        final Position position;
+        final long waitingSince;
+
+        AgingEntry(WorkNode node, Position position, long waitingSince) {
+            this.node = node;
+            this.position = position;
+            this.waitingSince = waitingSince;
+        }
+
+        boolean isCurrent() {
+            return node.state.get() == PENDING && node.position.get() == position;
+        }
+    }
+
+    private class WorkNode implements WorkQueue.WorkItem {
+        private final Runnable callback;
+        final AtomicInteger state = new AtomicInteger(PENDING);
+        final AtomicReference<Position> position;
+
+        WorkNode(Runnable callback, Position position) {
+            this.callback = callback;
+            this.position = new AtomicReference<Position>(position);
+        }
+
+        @Override
+        public boolean cancel() {
+            if (state.compareAndSet(PENDING, CANCELLED)) {
+                pendingJobs.remove(position.get(), this);
+                return true;
+            }
+            return false;
+        }
+
+        @Override
+        public void moveToFront() {
+            reposition(position.get().priority, frontSequence.decrementAndGet(), System.currentTimeMillis());
+        }
+
+        @Override
+        public int getPriority() {
+            return position.get().priority;
+        }
+
+        @Override
+        public void setPriority(int priority) {
+            reposition(priority, position.get().sequence, System.currentTimeMillis());
+        }
+
+        @Override
+        public boolean isRunning() {
+            return state.get() == RUNNING;
+        }
+
+        Runnable getCallback() {
+            return callback;
+        }
+
+        LockFreeWorkQueue getQueue() {
+            return LockFreeWorkQueue.this;
+        }
+
+        // Moves a pending item to a new position. If the item starts or is cancelled in the meantime,
+        // it is left alone.
+        void reposition(int priority, long sequence, long now) {
+            Position newPosition = new Position(priority, sequence);
+            while (state.get() == PENDING) {
+                Position oldPosition = position.get();
+                if (oldPosition.priority == priority && oldPosition.sequence == sequence) {
+                    return;
+                }
+                if (!position.compareAndSet(oldPosition, newPosition)) {
+                    // Somebody else moved it first; apply ours on top
+                    continue;
+                }
+
+                // Publish the new position before retiring the old one, so the item is never missing
+                // from pendingJobs. pollPending ignores the old entry, as it no longer matches.
+                pendingJobs.put(newPosition, this);
+                pendingJobs.remove(oldPosition, this);
+                trackForAging(this, newPosition, now);
+
+                if (state.get() != PENDING) {
+                    // Started or cancelled from the old entry while we were moving it
+                    pendingJobs.remove(newPosition, this);
+                }
+                startItems();
+                return;
+            }
+        }
+    }
+}
@@ -49,10 +49,37 @@ public class Logger {
         }
     }
 
+    // Callers that would otherwise have to build a message, or box arguments, on a hot path should check this
+    // first. It is a single volatile read.
+    public static boolean isLoggingEnabled(LoggingBehavior behavior) {
+        return Settings.isLoggingBehaviorEnabled(behavior);
+    }
+
     public static void log(LoggingBehavior behavior, String tag, String string) {
         log(behavior, Log.DEBUG, tag, string);
     }
 
+    // The fixed-arity overloads below format lazily like the varargs one, but without allocating an array
+    // for the arguments when logging is off.
+    public static void log(LoggingBehavior behavior, String tag, String format, Object arg) {
+        if (Settings.isLoggingBehaviorEnabled(behavior)) {
+            log(behavior, Log.DEBUG, tag, String.format(format, arg));
+        }
+    }
+
+    public static void log(LoggingBehavior behavior, String tag, String format, Object arg1, Object arg2) {
+        if (Settings.isLoggingBehaviorEnabled(behavior)) {
+            log(behavior, Log.DEBUG, tag, String.format(format, arg1, arg2));
+        }
+    }
+
+    public static void log(LoggingBehavior behavior, String tag, String format, Object arg1, Object arg2,
+            Object arg3) {
+        if (Settings.isLoggingBehaviorEnabled(behavior)) {
+            log(behavior, Log.DEBUG, tag, String.format(format, arg1, arg2, arg3));
+        }
+    }
+
     public static void log(LoggingBehavior behavior, String tag, String format, Object... args) {
         if (Settings.isLoggingBehaviorEnabled(behavior)) {
             String string = String.format(format, args);
@@ -60,6 +87,12 @@ public class Logger {
         }
     }
 
+    public static void log(LoggingBehavior behavior, int priority, String tag, String format, Object arg) {
+        if (Settings.isLoggingBehaviorEnabled(behavior)) {
+            log(behavior, priority, tag, String.format(format, arg));
+        }
+    }
+
     public static void log(LoggingBehavior behavior, int priority, String tag, String string) {
         if (Settings.isLoggingBehaviorEnabled(behavior)) {
             string = replaceStrings(string);
@@ -135,10 +168,12 @@ public class Logger {
     }
 
     public void appendKeyValue(String key, Object value) {
-        append("  %s:\t%s\n", key, value);
+        if (shouldLog()) {
+            contents.append("  ").append(key).append(":\t").append(value).append('\n');
+        }
     }
 
-    private boolean shouldLog() {
+    public boolean shouldLog() {
         return Settings.isLoggingBehaviorEnabled(behavior);
     }
 }
@@ -0,0 +1,78 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import com.facebook.Settings;
+import com.facebook.TaskInstrumentation;
+import com.facebook.TaskType;
+
+import java.util.concurrent.Executor;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+/**
+ * com.facebook.internal is solely for the use of other packages within the Facebook SDK for Android. Use of
+ * any of the classes in this package is unsupported, and they may be modified or removed without warning at
+ * any time.
+ *
+ * Reports work submitted straight to an Executor to the TaskInstrumentation registered in Settings. When
+ * none is registered, work is passed through unchanged.
+ */
+public final class TaskTracker {
+    // Number of items of each TaskType that have been submitted but not started
+    private static final AtomicIntegerArray queueLengths = new AtomicIntegerArray(TaskType.values().length);
+
+    private TaskTracker() {
+    }
+
+    public static Runnable wrap(final TaskType type, final Runnable runnable) {
+        final TaskInstrumentation instrumentation = Settings.getTaskInstrumentation();
+        if (instrumentation == null) {
+            return runnable;
+        }
+
+        final long queuedNanos = System.nanoTime();
+        instrumentation.onTaskQueued(type, queueLengths.incrementAndGet(type.ordinal()));
+
+        return new Runnable() {
+            @Override
+            public void run() {
+                queueLengths.decrementAndGet(type.ordinal());
+                long startNanos = System.nanoTime();
+                instrumentation.onTaskStarted(type, startNanos - queuedNanos);
+                try {
+                    runnable.run();
+                } finally {
+                    instrumentation.onTaskFinished(type, System.nanoTime() - startNanos);
+                }
+            }
+        };
+    }
+
+    // For APIs such as AsyncTask.executeOnExecutor that submit their own Runnables.
+    public static Executor wrap(final TaskType type, final Executor executor) {
+        if (Settings.getTaskInstrumentation() == null) {
+            return executor;
+        }
+
+        return new Executor() {
+            @Override
+            public void execute(Runnable runnable) {
+                executor.execute(wrap(type, runnable));
+            }
+        };
+    }
+}
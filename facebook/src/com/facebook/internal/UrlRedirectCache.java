@@ -19,6 +19,8 @@ package com.facebook.internal;
 import android.content.Context;
 import android.util.Log;
 import com.facebook.LoggingBehavior;
+import com.facebook.Settings;
+import com.facebook.TaskType;
 
 import java.io.IOException;
 import java.io.InputStream;
@@ -26,13 +28,39 @@ import java.io.InputStreamReader;
 import java.io.OutputStream;
 import java.net.URI;
 import java.net.URISyntaxException;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicBoolean;
 
+// Caches URL redirects on disk, with an in-memory table in front of it so that resolving a redirect
+// does not normally touch the file system. The table is loaded from disk in the background the first
+// time the cache is used, and chains of redirects are collapsed to their final target as they are seen.
 class UrlRedirectCache {
     static final String TAG = UrlRedirectCache.class.getSimpleName();
-    private static final String REDIRECT_CONTENT_TAG = TAG + "_Redirect";
+    static final String REDIRECT_CONTENT_TAG = TAG + "_Redirect";
+
+    private static final int MAX_MEMORY_ENTRIES = 512;
+    // Guards against redirect loops
+    private static final int MAX_REDIRECT_HOPS = 10;
+    // Stored in the memory table for urls we know have no redirect
+    private static final String NO_REDIRECT = "";
 
     private volatile static FileLruCache urlRedirectCache;
 
+    // Access-ordered, so the least recently used entry is dropped first
+    private static final Map<String, String> memoryCache =
+            new LinkedHashMap<String, String>(16, 0.75f, true) {
+                @Override
+                protected boolean removeEldestEntry(Map.Entry<String, String> eldest) {
+                    return size() > MAX_MEMORY_ENTRIES;
+                }
+            };
+    // Incremented under the memoryCache lock whenever the cache is cleared, so that redirects read from disk
+    // before the clear are not put back into memory after it
+    private static int generation;
+    private static final AtomicBoolean preloadStarted = new AtomicBoolean();
+
     synchronized static FileLruCache getCache(Context context) throws IOException{
         if (urlRedirectCache == null) {
             urlRedirectCache = new FileLruCache(context.getApplicationContext(), TAG, new FileLruCache.Limits());
@@ -40,45 +68,169 @@ class UrlRedirectCache {
         return urlRedirectCache;
     }
 
+    // Loads the redirects stored on disk into memory on a background thread. Only the first call does
+    // anything.
+    static void preloadAsync(Context context) {
+        if (context == null || !preloadStarted.compareAndSet(false, true)) {
+            return;
+        }
+
+        final Context applicationContext = context.getApplicationContext();
+        Settings.getExecutor(Settings.ExecutorType.DISK).execute(TaskTracker.wrap(TaskType.CACHE_READ, new Runnable() {
+            @Override
+            public void run() {
+                preload(applicationContext);
+            }
+        }));
+    }
+
+    static void preload(Context context) {
+        int startGeneration = getGeneration();
+        int count = 0;
+        try {
+            FileLruCache cache = getCache(context);
+            List<String> keys = cache.getKeys(REDIRECT_CONTENT_TAG);
+            for (String key : keys) {
+                synchronized (memoryCache) {
+                    if (generation != startGeneration) {
+                        // Cleared since we started
+                        return;
+                    }
+                    if (memoryCache.containsKey(key)) {
+                        // Already looked up or replaced since we started
+                        continue;
+                    }
+                }
+
+                // Preloading is not a use of the entry, so leave its access time alone for the disk LRU
+                String target = readRedirect(cache, key, false);
+                if (target != null) {
+                    synchronized (memoryCache) {
+                        if (generation != startGeneration) {
+                            return;
+                        }
+                        if (!memoryCache.containsKey(key)) {
+                            memoryCache.put(key, target);
+                            count++;
+                        }
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "preload failed " + e.getMessage());
+            return;
+        }
+        Logger.log(LoggingBehavior.CACHE, TAG, "preloaded %d redirects", count);
+    }
+
     static URI getRedirectedUri(Context context, URI uri) {
         if (uri == null) {
             return null;
         }
 
         String uriString = uri.toString();
-        InputStreamReader reader = null;
+        String target = resolveRedirect(context, uriString);
+        if (target == null) {
+            return null;
+        }
+
         try {
-            InputStream stream;
-            FileLruCache cache = getCache(context);
-            boolean redirectExists = false;
-            while ((stream = cache.get(uriString, REDIRECT_CONTENT_TAG)) != null) {
-                redirectExists = true;
-
-                // Get the redirected url
-                reader = new InputStreamReader(stream);
-                char[] buffer = new char[128];
-                int bufferLength;
-                StringBuilder urlBuilder = new StringBuilder();
-                while ((bufferLength = reader.read(buffer, 0, buffer.length)) > 0) {
-                    urlBuilder.append(buffer, 0, bufferLength);
-                }
-                Utility.closeQuietly(reader);
+            return new URI(target);
+        } catch (URISyntaxException e) {
+            // caching is best effort, so ignore the exception
+            return null;
+        }
+    }
 
-                // Iterate to the next url in the redirection
-                uriString = urlBuilder.toString();
+    // Follows the redirects starting at uriString and returns the final target, or null if there is
+    // no redirect.
+    private static String resolveRedirect(Context context, String uriString) {
+        int startGeneration = getGeneration();
+        String current = uriString;
+        int hops = 0;
+        while (hops < MAX_REDIRECT_HOPS) {
+            String next = getRedirect(context, current, startGeneration);
+            if (next == null) {
+                break;
             }
+            current = next;
+            hops++;
+        }
 
-            if (redirectExists) {
-                return new URI(uriString);
+        if (hops == 0 || current.equals(uriString)) {
+            return null;
+        }
+
+        if (hops > 1) {
+            // Point the original url straight at the final target, in memory and on disk, so the next lookup
+            // is a single hop
+            if (putInMemory(uriString, current, startGeneration)) {
+                writeRedirect(context, uriString, current);
             }
-        } catch (URISyntaxException e) {
-            // caching is best effort, so ignore the exception
-        } catch (IOException ioe) {
+        }
+        return current;
+    }
+
+    // Returns the next url in the redirect chain, or null if there is none.
+    private static String getRedirect(Context context, String uriString, int startGeneration) {
+        String target;
+        synchronized (memoryCache) {
+            target = memoryCache.get(uriString);
+        }
+
+        if (target == null) {
+            try {
+                target = readRedirect(getCache(context), uriString, true);
+            } catch (IOException e) {
+                // caching is best effort
+            }
+            if (target == null) {
+                target = NO_REDIRECT;
+            }
+            putInMemory(uriString, target, startGeneration);
+        }
+
+        return NO_REDIRECT.equals(target) ? null : target;
+    }
+
+    private static int getGeneration() {
+        synchronized (memoryCache) {
+            return generation;
+        }
+    }
+
+    // Returns false, without storing anything, if the cache was cleared after startGeneration was read.
+    private static boolean putInMemory(String uriString, String target, int startGeneration) {
+        synchronized (memoryCache) {
+            if (generation != startGeneration) {
+                return false;
+            }
+            memoryCache.put(uriString, target);
+            return true;
+        }
+    }
+
+    private static String readRedirect(FileLruCache cache, String uriString, boolean updateAccessTime)
+            throws IOException {
+        InputStream stream = cache.get(uriString, REDIRECT_CONTENT_TAG, updateAccessTime);
+        if (stream == null) {
+            return null;
+        }
+
+        InputStreamReader reader = null;
+        try {
+            reader = new InputStreamReader(stream);
+            char[] buffer = new char[128];
+            int bufferLength;
+            StringBuilder urlBuilder = new StringBuilder();
+            while ((bufferLength = reader.read(buffer, 0, buffer.length)) > 0) {
+                urlBuilder.append(buffer, 0, bufferLength);
+            }
+            return urlBuilder.toString();
         } finally {
             Utility.closeQuietly(reader);
+            Utility.closeQuietly(stream);
         }
-
-        return null;
     }
 
     static void cacheUriRedirect(Context context, URI fromUri, URI toUri) {
@@ -86,11 +238,30 @@ class UrlRedirectCache {
             return;
         }
 
+        String fromString = fromUri.toString();
+        String toString = toUri.toString();
+
+        // If we already know where the target goes, store the end of the chain instead
+        String finalTarget;
+        synchronized (memoryCache) {
+            finalTarget = memoryCache.get(toString);
+        }
+        if (finalTarget == null || NO_REDIRECT.equals(finalTarget) || finalTarget.equals(fromString)) {
+            finalTarget = toString;
+        }
+
+        synchronized (memoryCache) {
+            memoryCache.put(fromString, finalTarget);
+        }
+        writeRedirect(context, fromString, finalTarget);
+    }
+
+    private static void writeRedirect(Context context, String fromString, String toString) {
         OutputStream redirectStream = null;
         try {
             FileLruCache cache = getCache(context);
-            redirectStream = cache.openPutStream(fromUri.toString(), REDIRECT_CONTENT_TAG);
-            redirectStream.write(toUri.toString().getBytes());
+            redirectStream = cache.openPutStream(fromString, REDIRECT_CONTENT_TAG);
+            redirectStream.write(toString.getBytes());
         } catch (IOException e) {
             // Caching is best effort
         } finally {
@@ -98,11 +269,24 @@ class UrlRedirectCache {
         }
     }
 
+    static void clearMemoryCacheForTest() {
+        synchronized (memoryCache) {
+            memoryCache.clear();
+        }
+    }
+
     static void clearCache(Context context) {
-        try {
-            getCache(context).clearCache();
-        } catch (IOException e) {
-            Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "clearCache failed " + e.getMessage());
+        // Both caches are cleared under the lock, so that a lookup or preload cannot put back a redirect in
+        // between
+        synchronized (memoryCache) {
+            generation++;
+            memoryCache.clear();
+
+            try {
+                getCache(context).clearCache();
+            } catch (IOException e) {
+                Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "clearCache failed " + e.getMessage());
+            }
         }
     }
 }
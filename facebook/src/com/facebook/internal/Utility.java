@@ -219,7 +219,7 @@ public final class Utility {
             throws JSONException {
         Object value = jsonObject.opt(key);
         if (value != null && value instanceof String) {
-            JSONTokener tokener = new JSONTokener((String) value);
+            JSONTokener tokener = JsonKeyPool.createTokener((String) value);
             value = tokener.nextValue();
         }
 
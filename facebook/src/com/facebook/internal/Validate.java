@@ -68,6 +68,12 @@ public final class Validate {
         }
     }
 
+    public static void isPositive(int arg, String name) {
+        if (arg <= 0) {
+            throw new IllegalArgumentException("Argument '" + name + "' must be greater than 0");
+        }
+    }
+
     public static void oneOf(Object arg, String name, Object... values) {
         for (Object value : values) {
             if (value != null) {
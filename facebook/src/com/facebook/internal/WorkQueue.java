@@ -17,17 +17,41 @@
 package com.facebook.internal;
 
 import com.facebook.Settings;
+import com.facebook.TaskInstrumentation;
+import com.facebook.TaskType;
 
+import java.util.List;
 import java.util.concurrent.Executor;
 
 class WorkQueue {
     public static final int DEFAULT_MAX_CONCURRENT = 8;
+    public static final int DEFAULT_PRIORITY = 0;
+
+    // Pending items are raised one priority level for every interval they wait, so that a steady
+    // stream of higher priority work cannot starve them.
+    public static final long DEFAULT_AGING_INTERVAL_MILLIS = 5000;
+    public static final long NO_AGING = 0;
+
+    private static final int INITIAL_HEAP_CAPACITY = 16;
 
     private final Object workLock = new Object();
+
+    // Pending items ordered by priority, and then by position within a priority. This is a binary heap,
+    // so items are added, removed and re-prioritized in O(log n).
+    private WorkNode[] pendingHeap = new WorkNode[INITIAL_HEAP_CAPACITY];
+    private int pendingCount = 0;
+    // Pending items in the order they started waiting, oldest first; used for aging
     private WorkNode pendingJobs;
 
-    private final int maxConcurrent;
+    // Items added to the front get decreasing sequence numbers, and items added to the back increasing ones
+    private long frontSequence = 0;
+    private long backSequence = 0;
+
+    private int maxConcurrent;
+    private long agingIntervalMillis = DEFAULT_AGING_INTERVAL_MILLIS;
     private final Executor executor;
+    private final Settings.ExecutorType executorType;
+    private final TaskType taskType;
 
     private WorkNode runningJobs = null;
     private int runningCount = 0;
@@ -41,24 +65,119 @@ class WorkQueue {
     }
 
     WorkQueue(int maxConcurrent, Executor executor) {
+        Validate.isPositive(maxConcurrent, "maxConcurrent");
         this.maxConcurrent = maxConcurrent;
         this.executor = executor;
+        this.executorType = null;
+        this.taskType = TaskType.OTHER;
+    }
+
+    // Items are handed to Settings.getExecutor(executorType) as they start, so that changes made through
+    // Settings also apply to queues that already exist. Items are reported to the TaskInstrumentation
+    // as taskType.
+    WorkQueue(int maxConcurrent, Settings.ExecutorType executorType, TaskType taskType) {
+        Validate.isPositive(maxConcurrent, "maxConcurrent");
+        Validate.notNull(executorType, "executorType");
+        Validate.notNull(taskType, "taskType");
+        this.maxConcurrent = maxConcurrent;
+        this.executor = null;
+        this.executorType = executorType;
+        this.taskType = taskType;
+    }
+
+    int getMaxConcurrent() {
+        synchronized (workLock) {
+            return maxConcurrent;
+        }
+    }
+
+    // Items that are already running are allowed to finish if the limit is lowered; new items
+    // will not start until the running count drops below the new limit.
+    void setMaxConcurrent(int maxConcurrent) {
+        Validate.isPositive(maxConcurrent, "maxConcurrent");
+        synchronized (workLock) {
+            this.maxConcurrent = maxConcurrent;
+        }
+
+        while (startItem()) {
+            // Keep starting pending items until we reach the new limit
+        }
+    }
+
+    int getRunningCount() {
+        synchronized (workLock) {
+            return runningCount;
+        }
+    }
+
+    long getAgingInterval() {
+        synchronized (workLock) {
+            return agingIntervalMillis;
+        }
+    }
+
+    // NO_AGING turns aging off, so items only ever run in priority order.
+    void setAgingInterval(long agingIntervalMillis) {
+        if (agingIntervalMillis < 0) {
+            throw new IllegalArgumentException("Argument 'agingIntervalMillis' must not be negative");
+        }
+        synchronized (workLock) {
+            this.agingIntervalMillis = agingIntervalMillis;
+        }
     }
 
     WorkItem addActiveWorkItem(Runnable callback) {
-        return addActiveWorkItem(callback, true);
+        return addActiveWorkItem(callback, DEFAULT_PRIORITY, true);
     }
 
     WorkItem addActiveWorkItem(Runnable callback, boolean addToFront) {
-        WorkNode node = new WorkNode(callback);
+        return addActiveWorkItem(callback, DEFAULT_PRIORITY, addToFront);
+    }
+
+    // Items with a higher priority run first. Within a priority, items added to the front run before
+    // those that are already waiting.
+    WorkItem addActiveWorkItem(Runnable callback, int priority, boolean addToFront) {
+        WorkNode node = new WorkNode(callback, priority);
+        TaskInstrumentation instrumentation = Settings.getTaskInstrumentation();
+        if (instrumentation != null) {
+            node.instrumentation = instrumentation;
+            node.queuedNanos = System.nanoTime();
+        }
+
+        int queueLength;
         synchronized (workLock) {
-            pendingJobs = node.addToList(pendingJobs, addToFront);
+            node.sequence = addToFront ? --frontSequence : ++backSequence;
+            node.waitingSince = System.currentTimeMillis();
+            pendingJobs = node.addToList(pendingJobs, false);
+            heapAdd(node);
+            queueLength = pendingCount;
         }
 
+        if (instrumentation != null) {
+            instrumentation.onTaskQueued(taskType, queueLength);
+        }
         startItem();
         return node;
     }
 
+    // Sets the priority of several pending items at once, and moves them to the front of that priority
+    // in the order given, so that the first item runs first. Items that are no longer pending are skipped.
+    // This takes the lock once, rather than once per item.
+    void setPriority(List<? extends WorkItem> items, int priority) {
+        synchronized (workLock) {
+            long now = System.currentTimeMillis();
+            for (int i = items.size() - 1; i >= 0; i--) {
+                WorkNode node = (WorkNode) items.get(i);
+                if (node.getQueue() != this) {
+                    throw new IllegalArgumentException("Work item belongs to a different WorkQueue");
+                }
+                if (node.isPending()) {
+                    node.reprioritize(priority, --frontSequence, now);
+                }
+            }
+        }
+    }
+
     void validate() {
         synchronized (workLock) {
             // Verify that all running items know they are running, and counts match
@@ -74,14 +193,31 @@ class WorkQueue {
             }
 
             assert runningCount == count;
+
+            // Verify that every pending item is in the heap, and that the heap is ordered
+            count = 0;
+            if (pendingJobs != null) {
+                WorkNode walk = pendingJobs;
+                do {
+                    walk.verify(false);
+                    assert pendingHeap[walk.heapIndex] == walk;
+                    count++;
+                    walk = walk.getNext();
+                } while (walk != pendingJobs);
+            }
+
+            assert pendingCount == count;
+            for (int i = 1; i < pendingCount; i++) {
+                assert !runsBefore(pendingHeap[i], pendingHeap[(i - 1) / 2]);
+            }
         }
     }
 
-    private void startItem() {
-        finishItemAndStartNew(null);
+    private boolean startItem() {
+        return finishItemAndStartNew(null);
     }
 
-    private void finishItemAndStartNew(WorkNode finished) {
+    private boolean finishItemAndStartNew(WorkNode finished) {
         WorkNode ready = null;
 
         synchronized (workLock) {
@@ -90,54 +226,168 @@ class WorkQueue {
                 runningCount--;
             }
 
-            if (runningCount < maxConcurrent) {
-                ready = pendingJobs; // Head of the pendingJobs queue
-                if (ready != null) {
-                    // The Queue reassignments are necessary since 'ready' might have been
-                    // added / removed from the front of either queue, which changes its
-                    // respective head.
-                    pendingJobs = ready.removeFromList(pendingJobs);
-                    runningJobs = ready.addToList(runningJobs, false);
-                    runningCount++;
+            if (runningCount < maxConcurrent && pendingCount > 0) {
+                ageWaitingItems(System.currentTimeMillis());
 
-                    ready.setIsRunning(true);
-                }
+                ready = pendingHeap[0];
+                heapRemove(ready);
+                pendingJobs = ready.removeFromList(pendingJobs);
+                runningJobs = ready.addToList(runningJobs, false);
+                runningCount++;
+
+                ready.setIsRunning(true);
             }
         }
 
         if (ready != null) {
             execute(ready);
+            return true;
+        }
+        return false;
+    }
+
+    // Must be called while holding workLock. Only looks at items that have waited a whole interval,
+    // each of which is then moved to the back of pendingJobs, so this is cheap when nothing is starving.
+    private void ageWaitingItems(long now) {
+        if (agingIntervalMillis == NO_AGING) {
+            return;
+        }
+
+        while (pendingJobs != null && now - pendingJobs.waitingSince >= agingIntervalMillis) {
+            WorkNode oldest = pendingJobs;
+            long levels = (now - oldest.waitingSince) / agingIntervalMillis;
+            int priority = (int) Math.min((long) oldest.priority + levels, Integer.MAX_VALUE);
+            oldest.reprioritize(priority, oldest.sequence, now);
         }
     }
 
     private void execute(final WorkNode node) {
+        Executor executor = (this.executor != null) ? this.executor : Settings.getExecutor(executorType);
         executor.execute(new Runnable() {
             @Override
             public void run() {
+                TaskInstrumentation instrumentation = node.instrumentation;
+                long startNanos = 0;
+                if (instrumentation != null) {
+                    startNanos = System.nanoTime();
+                    instrumentation.onTaskStarted(taskType, startNanos - node.queuedNanos);
+                }
+
                 try {
                     node.getCallback().run();
                 } finally {
+                    if (instrumentation != null) {
+                        instrumentation.onTaskFinished(taskType, System.nanoTime() - startNanos);
+                    }
                     finishItemAndStartNew(node);
                 }
             }
         });
     }
 
+    // The heap operations below must be called while holding workLock.
+
+    private static boolean runsBefore(WorkNode a, WorkNode b) {
+        if (a.priority != b.priority) {
+            return a.priority > b.priority;
+        }
+        return a.sequence < b.sequence;
+    }
+
+    private void heapAdd(WorkNode node) {
+        if (pendingCount == pendingHeap.length) {
+            WorkNode[] grown = new WorkNode[pendingHeap.length * 2];
+            System.arraycopy(pendingHeap, 0, grown, 0, pendingCount);
+            pendingHeap = grown;
+        }
+
+        heapSet(pendingCount++, node);
+        heapSiftUp(node.heapIndex);
+    }
+
+    private void heapRemove(WorkNode node) {
+        int index = node.heapIndex;
+        WorkNode last = pendingHeap[--pendingCount];
+        pendingHeap[pendingCount] = null;
+        node.heapIndex = -1;
+
+        if (last != node) {
+            heapSet(index, last);
+            heapUpdate(last);
+        }
+    }
+
+    // Restores heap order after the priority or sequence of a pending node changed
+    private void heapUpdate(WorkNode node) {
+        heapSiftUp(node.heapIndex);
+        heapSiftDown(node.heapIndex);
+    }
+
+    private void heapSiftUp(int index) {
+        WorkNode node = pendingHeap[index];
+        while (index > 0) {
+            int parentIndex = (index - 1) / 2;
+            WorkNode parent = pendingHeap[parentIndex];
+            if (!runsBefore(node, parent)) {
+                break;
+            }
+            heapSet(index, parent);
+            index = parentIndex;
+        }
+        heapSet(index, node);
+    }
+
+    private void heapSiftDown(int index) {
+        WorkNode node = pendingHeap[index];
+        while (true) {
+            int childIndex = 2 * index + 1;
+            if (childIndex >= pendingCount) {
+                break;
+            }
+            if (childIndex + 1 < pendingCount && runsBefore(pendingHeap[childIndex + 1], pendingHeap[childIndex])) {
+                childIndex++;
+            }
+            WorkNode child = pendingHeap[childIndex];
+            if (!runsBefore(child, node)) {
+                break;
+            }
+            heapSet(index, child);
+            index = childIndex;
+        }
+        heapSet(index, node);
+    }
+
+    private void heapSet(int index, WorkNode node) {
+        pendingHeap[index] = node;
+        node.heapIndex = index;
+    }
+
     private class WorkNode implements WorkItem {
         private final Runnable callback;
         private WorkNode next;
         private WorkNode prev;
         private boolean isRunning;
+        // Set before the node is queued, and only read once it runs
+        private TaskInstrumentation instrumentation;
+        private long queuedNanos;
+
+        // These are guarded by workLock
+        private int priority;
+        private long sequence;
+        private long waitingSince;
+        private int heapIndex = -1;
 
-        WorkNode(Runnable callback) {
+        WorkNode(Runnable callback, int priority) {
             this.callback = callback;
+            this.priority = priority;
         }
 
         @Override
         public boolean cancel() {
             synchronized (workLock) {
-                if (!isRunning()) {
+                if (isPending()) {
                     pendingJobs = removeFromList(pendingJobs);
+                    heapRemove(this);
                     return true;
                 }
             }
@@ -148,9 +398,25 @@ class WorkQueue {
         @Override
         public void moveToFront() {
             synchronized (workLock) {
-                if (!isRunning()) {
-                    pendingJobs = removeFromList(pendingJobs);
-                    pendingJobs = addToList(pendingJobs, true);
+                if (isPending()) {
+                    sequence = --frontSequence;
+                    heapUpdate(this);
+                }
+            }
+        }
+
+        @Override
+        public int getPriority() {
+            synchronized (workLock) {
+                return priority;
+            }
+        }
+
+        @Override
+        public void setPriority(int priority) {
+            synchronized (workLock) {
+                if (isPending()) {
+                    reprioritize(priority, sequence, System.currentTimeMillis());
                 }
             }
         }
@@ -160,6 +426,11 @@ class WorkQueue {
             return isRunning;
         }
 
+        // Must be called while holding workLock. False once the item has started or been cancelled.
+        boolean isPending() {
+            return heapIndex >= 0;
+        }
+
         Runnable getCallback() {
             return callback;
         }
@@ -168,10 +439,24 @@ class WorkQueue {
             return next;
         }
 
+        WorkQueue getQueue() {
+            return WorkQueue.this;
+        }
+
         void setIsRunning(boolean isRunning) {
             this.isRunning = isRunning;
         }
 
+        // Must be called while holding workLock, on a pending node. The node starts aging again from now.
+        void reprioritize(int priority, long sequence, long now) {
+            this.priority = priority;
+            this.sequence = sequence;
+            this.waitingSince = now;
+            pendingJobs = removeFromList(pendingJobs);
+            pendingJobs = addToList(pendingJobs, false);
+            heapUpdate(this);
+        }
+
         WorkNode addToList(WorkNode list, boolean addToFront) {
             assert next == null;
             assert prev == null;
@@ -217,5 +502,8 @@ class WorkQueue {
         boolean cancel();
         boolean isRunning();
         void moveToFront();
+        int getPriority();
+        // Moves a pending item to its place among the items with the new priority
+        void setPriority(int priority);
     }
 }
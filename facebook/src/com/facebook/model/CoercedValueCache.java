@@ -0,0 +1,73 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import java.util.HashMap;
+
+// Remembers the wrappers created when a GraphObject's JSONObject and JSONArray properties, or a GraphObjectList's
+// items, are coerced to GraphObjects and GraphObjectLists, so that reading them again returns the same wrapper
+// instead of allocating a new one. A wrapper is only reused while the property still holds the very same
+// underlying value, so changes made through other views of the same JSON are always seen; the owner also drops
+// entries when it changes a property itself, so that replaced values are not kept alive.
+final class CoercedValueCache<K> {
+    private HashMap<K, Entry> entries;
+
+    // Returns the wrapper previously created for value when coercing it to expectedType (with items of itemType,
+    // for a collection), or null if there is none.
+    synchronized Object get(K key, Object value, Class<?> expectedType, Class<?> itemType) {
+        if (entries == null) {
+            return null;
+        }
+        Entry entry = entries.get(key);
+        if (entry == null || entry.value != value || entry.expectedType != expectedType ||
+                entry.itemType != itemType) {
+            return null;
+        }
+        return entry.wrapper;
+    }
+
+    synchronized void put(K key, Object value, Class<?> expectedType, Class<?> itemType, Object wrapper) {
+        if (entries == null) {
+            entries = new HashMap<K, Entry>();
+        }
+        entries.put(key, new Entry(value, expectedType, itemType, wrapper));
+    }
+
+    synchronized void remove(K key) {
+        if (entries != null) {
+            entries.remove(key);
+        }
+    }
+
+    synchronized void clear() {
+        entries = null;
+    }
+
+    private static final class Entry {
+        final Object value;
+        final Class<?> expectedType;
+        final Class<?> itemType;
+        final Object wrapper;
+
+        Entry(Object value, Class<?> expectedType, Class<?> itemType, Object wrapper) {
+            this.value = value;
+            this.expectedType = expectedType;
+            this.itemType = itemType;
+            this.wrapper = wrapper;
+        }
+    }
+}
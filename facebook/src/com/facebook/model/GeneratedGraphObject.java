@@ -0,0 +1,174 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Map;
+
+/**
+ * Base class for the GraphObject implementations generated at compile time by the GraphObject annotation
+ * processor. A generated implementation of a GraphObject-derived interface behaves exactly like the proxy
+ * GraphObject.Factory would otherwise create for that interface, backed by the same JSONObject, but calls
+ * its getters and setters directly rather than through reflection.
+ * <p/>
+ * This class is intended to be extended only by generated code. Create instances through GraphObject.Factory,
+ * which uses a generated implementation when one is available and falls back to a proxy otherwise.
+ */
+public abstract class GeneratedGraphObject implements GraphObject {
+    private final JSONObject state;
+    private final Class<? extends GraphObject> graphObjectClass;
+    private final CoercedValueCache<String> coercedValues;
+
+    /**
+     * Creates a GraphObject that exposes the given state through the given GraphObject-derived interface.
+     * @param state the JSONObject containing the data to be exposed
+     * @param graphObjectClass the GraphObject-derived interface the subclass implements
+     */
+    protected GeneratedGraphObject(JSONObject state, Class<? extends GraphObject> graphObjectClass) {
+        this.state = state;
+        this.graphObjectClass = graphObjectClass;
+        this.coercedValues = GraphObject.Factory.createCoercedValueCache();
+    }
+
+    @Override
+    public <T extends GraphObject> T cast(Class<T> graphObjectClass) {
+        if (graphObjectClass != null && graphObjectClass.isAssignableFrom(this.graphObjectClass)) {
+            @SuppressWarnings("unchecked")
+            T result = (T) this;
+            return result;
+        }
+        return GraphObject.Factory.create(state, graphObjectClass);
+    }
+
+    @Override
+    public Map<String, Object> asMap() {
+        return GraphObject.Factory.createGraphObjectProxyForMap(state);
+    }
+
+    @Override
+    public JSONObject getInnerJSONObject() {
+        return state;
+    }
+
+    @Override
+    public Object getProperty(String propertyName) {
+        return state.opt(propertyName);
+    }
+
+    @Override
+    public <T extends GraphObject> T getPropertyAs(String propertyName, Class<T> graphObjectClass) {
+        return getTypedProperty(propertyName, graphObjectClass);
+    }
+
+    @Override
+    public <T extends GraphObject> GraphObjectList<T> getPropertyAsList(String propertyName,
+            Class<T> graphObjectClass) {
+        return getCollectionProperty(propertyName, GraphObjectList.class, graphObjectClass);
+    }
+
+    @Override
+    public void setProperty(String propertyName, Object propertyValue) {
+        putProperty(propertyName, GraphObject.Factory.getUnderlyingJSONObject(propertyValue));
+    }
+
+    @Override
+    public void removeProperty(String propertyName) {
+        state.remove(propertyName);
+        if (coercedValues != null) {
+            coercedValues.remove(propertyName);
+        }
+    }
+
+    @Override
+    public boolean equals(Object other) {
+        // Same rule as the proxies: two GraphObjects are equal if they wrap the same JSONObject, or have the
+        // same id when Settings.getShouldCompareGraphObjectsById is set
+        return other instanceof GraphObject &&
+                GraphObject.Factory.graphObjectStatesEqual(state, ((GraphObject) other).getInnerJSONObject());
+    }
+
+    @Override
+    public int hashCode() {
+        return GraphObject.Factory.graphObjectStateHashCode(state);
+    }
+
+    @Override
+    public String toString() {
+        return String.format("GraphObject{graphObjectClass=%s, state=%s}", graphObjectClass.getSimpleName(), state);
+    }
+
+    /**
+     * Gets a property coerced to the given type, as a generated getter returning a non-generic reference type does.
+     * @param propertyName the name of the property to get
+     * @param expectedType the type to coerce the property to
+     * @return the coerced value of the property
+     */
+    protected final <U> U getTypedProperty(String propertyName, Class<U> expectedType) {
+        return expectedType.cast(GraphObject.Factory.coerceValueToExpectedType(state.opt(propertyName), expectedType,
+                null, null, coercedValues, propertyName));
+    }
+
+    /**
+     * Gets a property coerced to the given primitive type, boxed, as a generated getter returning a primitive does.
+     * @param propertyName the name of the property to get
+     * @param primitiveType the primitive type the getter returns
+     * @return the boxed value of the property, or the boxed default value of the primitive type if it is not set
+     */
+    protected final Object getPrimitiveProperty(String propertyName, Class<?> primitiveType) {
+        return GraphObject.Factory.coerceValueToExpectedType(state.opt(propertyName), primitiveType, null);
+    }
+
+    /**
+     * Gets a property coerced to a collection of the given item type, as a generated getter returning an Iterable,
+     * Collection, List or GraphObjectList does.
+     * @param propertyName the name of the property to get
+     * @param collectionType the collection type the getter returns
+     * @param itemType the type of the items in the collection
+     * @return the coerced value of the property
+     */
+    protected final <C> C getCollectionProperty(String propertyName, Class<?> collectionType, Class<?> itemType) {
+        @SuppressWarnings("unchecked")
+        C result = (C) GraphObject.Factory.coerceValueToExpectedType(state.opt(propertyName), collectionType,
+                itemType, null, coercedValues, propertyName);
+        return result;
+    }
+
+    /**
+     * Sets a property, as a generated setter does.
+     * @param propertyName the name of the property to set
+     * @param value the value passed to the setter
+     * @param createGraphObjectPropertyName the value of the setter's CreateGraphObject annotation, or null if it
+     *                                      has none
+     */
+    protected final void setTypedProperty(String propertyName, Object value, String createGraphObjectPropertyName) {
+        value = GraphObject.Factory.createGraphObjectsFromParameters(createGraphObjectPropertyName, value);
+        putProperty(propertyName, GraphObject.Factory.getUnderlyingJSONObject(value));
+    }
+
+    private void putProperty(String propertyName, Object value) {
+        try {
+            state.putOpt(propertyName, value);
+        } catch (JSONException e) {
+            throw new IllegalArgumentException(e);
+        }
+        if (coercedValues != null) {
+            coercedValues.remove(propertyName);
+        }
+    }
+}
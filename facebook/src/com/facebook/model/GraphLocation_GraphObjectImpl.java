@@ -0,0 +1,78 @@
+// Generated by GraphObjectProcessor from com.facebook.model.GraphLocation. Do not edit.
+package com.facebook.model;
+
+final class GraphLocation_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.GraphLocation {
+    GraphLocation_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.GraphLocation.class);
+    }
+
+    @Override
+    public java.lang.String getStreet() {
+        return getTypedProperty("street", java.lang.String.class);
+    }
+
+    @Override
+    public void setStreet(java.lang.String value) {
+        setTypedProperty("street", value, null);
+    }
+
+    @Override
+    public java.lang.String getCity() {
+        return getTypedProperty("city", java.lang.String.class);
+    }
+
+    @Override
+    public void setCity(java.lang.String value) {
+        setTypedProperty("city", value, null);
+    }
+
+    @Override
+    public java.lang.String getState() {
+        return getTypedProperty("state", java.lang.String.class);
+    }
+
+    @Override
+    public void setState(java.lang.String value) {
+        setTypedProperty("state", value, null);
+    }
+
+    @Override
+    public java.lang.String getCountry() {
+        return getTypedProperty("country", java.lang.String.class);
+    }
+
+    @Override
+    public void setCountry(java.lang.String value) {
+        setTypedProperty("country", value, null);
+    }
+
+    @Override
+    public java.lang.String getZip() {
+        return getTypedProperty("zip", java.lang.String.class);
+    }
+
+    @Override
+    public void setZip(java.lang.String value) {
+        setTypedProperty("zip", value, null);
+    }
+
+    @Override
+    public double getLatitude() {
+        return ((java.lang.Number) getPrimitiveProperty("latitude", double.class)).doubleValue();
+    }
+
+    @Override
+    public void setLatitude(double value) {
+        setTypedProperty("latitude", value, null);
+    }
+
+    @Override
+    public double getLongitude() {
+        return ((java.lang.Number) getPrimitiveProperty("longitude", double.class)).doubleValue();
+    }
+
+    @Override
+    public void setLongitude(double value) {
+        setTypedProperty("longitude", value, null);
+    }
+}
@@ -0,0 +1,13 @@
+// Generated by GraphObjectProcessor from com.facebook.model.GraphMultiResult. Do not edit.
+package com.facebook.model;
+
+final class GraphMultiResult_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.GraphMultiResult {
+    GraphMultiResult_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.GraphMultiResult.class);
+    }
+
+    @Override
+    public com.facebook.model.GraphObjectList<com.facebook.model.GraphObject> getData() {
+        return getCollectionProperty("data", com.facebook.model.GraphObjectList.class, com.facebook.model.GraphObject.class);
+    }
+}
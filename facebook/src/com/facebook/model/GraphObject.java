@@ -17,16 +17,19 @@
 package com.facebook.model;
 
 import com.facebook.FacebookGraphObjectException;
+import com.facebook.Settings;
+import com.facebook.internal.DateFormatter;
 import com.facebook.internal.Utility;
 import com.facebook.internal.Validate;
 import org.json.JSONArray;
 import org.json.JSONException;
 import org.json.JSONObject;
 
+import java.io.IOException;
+import java.io.Reader;
 import java.lang.reflect.*;
-import java.text.ParseException;
-import java.text.SimpleDateFormat;
 import java.util.*;
+import java.util.concurrent.ConcurrentHashMap;
 
 /**
  * GraphObject is the primary interface used by the Facebook SDK for Android to represent objects in the Facebook
@@ -107,12 +110,21 @@ public interface GraphObject {
      * <p/>
      * This supports get/set properties that use primitive types, JSON types, Date, other GraphObject types, Iterable,
      * Collection, List, and GraphObjectList.
+     * <p/>
+     * If the GraphObject annotation processor was run over the code declaring a GraphObject-derived interface,
+     * the Factory instantiates the implementation it generated instead of a proxy. Generated implementations
+     * behave the same as proxies but do not use reflection on each call.
      */
     final class Factory {
         private static final HashSet<Class<?>> verifiedGraphObjectClasses = new HashSet<Class<?>>();
-        private static final SimpleDateFormat[] dateFormats = new SimpleDateFormat[] {
-                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US),
-                new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ss", Locale.US), new SimpleDateFormat("yyyy-MM-dd", Locale.US), };
+        // Getters and setters, resolved once each, since resolving them uses reflection and a regex
+        private static final ConcurrentHashMap<Method, PropertyMethod> propertyMethods =
+                new ConcurrentHashMap<Method, PropertyMethod>();
+        // Implementations generated by the GraphObject annotation processor, looked up once per interface
+        private static final ConcurrentHashMap<Class<?>, GeneratedImplementation> generatedImplementations =
+                new ConcurrentHashMap<Class<?>, GeneratedImplementation>();
+        private static final String GENERATED_IMPLEMENTATION_SUFFIX = "_GraphObjectImpl";
+        private static final String ID_PROPERTY = "id";
 
         // No objects of this type should exist.
         private Factory() {
@@ -173,18 +185,20 @@ public interface GraphObject {
          * @return true if both graph objects have an ID and it is the same ID, false otherwise
          */
         public static boolean hasSameId(GraphObject a, GraphObject b) {
-            if (a == null || b == null || !a.asMap().containsKey("id") || !b.asMap().containsKey("id")) {
+            if (a == null || b == null) {
+                return false;
+            }
+            // Read the ids straight from the JSON, since this is called for every item when searching lists
+            JSONObject stateA = a.getInnerJSONObject();
+            JSONObject stateB = b.getInnerJSONObject();
+            if (!stateA.has(ID_PROPERTY) || !stateB.has(ID_PROPERTY)) {
                 return false;
             }
             if (a.equals(b)) {
                 return true;
             }
-            Object idA = a.getProperty("id");
-            Object idB = b.getProperty("id");
-            if (idA == null || idB == null || !(idA instanceof String) || !(idB instanceof String)) {
-                return false;
-            }
-            return idA.equals(idB);
+            String idA = getId(stateA);
+            return idA != null && idA.equals(getId(stateB));
         }
 
         /**
@@ -212,7 +226,114 @@ public interface GraphObject {
             return createList(new JSONArray(), graphObjectClass);
         }
 
+        /**
+         * Reads a GraphObject-derived object from a stream of JSON in a single pass. Only the properties that
+         * graphObjectClass declares getters or setters for are kept, and the same applies to the properties of
+         * any GraphObject-derived objects it contains; all other properties are skipped without being parsed,
+         * which saves both time and memory for large responses. A property that was skipped reads as null, even
+         * after casting the object to a different type.
+         * @param reader the Reader to read the JSON from; it is not closed
+         * @param graphObjectClass the GraphObject-derived type to return
+         * @param keepUndeclaredProperties whether to also keep the properties graphObjectClass does not declare
+         * @return a graphObjectClass that represents the data read
+         *
+         * @throws IOException if the JSON could not be read
+         * @throws JSONException if the JSON is malformed
+         * @throws com.facebook.FacebookException
+         *            If the passed in Class is not a valid GraphObject interface
+         */
+        public static <T extends GraphObject> T create(Reader reader, Class<T> graphObjectClass,
+                boolean keepUndeclaredProperties) throws IOException, JSONException {
+            GraphObjectStreamParser parser = new GraphObjectStreamParser(reader, keepUndeclaredProperties);
+            return create(parser.parseObject(graphObjectClass), graphObjectClass);
+        }
+
+        /**
+         * Reads a GraphObjectList from a stream containing a JSON array in a single pass. If graphObjectClass is a
+         * GraphObject-derived interface, only the properties of the items that it declares getters or setters for
+         * are kept, as with {@link #create(Reader, Class, boolean)}.
+         * @param reader the Reader to read the JSON from; it is not closed
+         * @param graphObjectClass the type of the items in the list
+         * @param keepUndeclaredProperties whether to also keep the properties graphObjectClass does not declare
+         * @return a GraphObjectList that represents the data read
+         *
+         * @throws IOException if the JSON could not be read
+         * @throws JSONException if the JSON is malformed
+         */
+        public static <T> GraphObjectList<T> createList(Reader reader, Class<T> graphObjectClass,
+                boolean keepUndeclaredProperties) throws IOException, JSONException {
+            GraphObjectStreamParser parser = new GraphObjectStreamParser(reader, keepUndeclaredProperties);
+            return createList(parser.parseArray(graphObjectClass), graphObjectClass);
+        }
+
+        /**
+         * Creates a compact, immutable snapshot of a GraphObject and of all the graph objects and lists it contains,
+         * for data that is kept for a long time. Objects with the same properties share a single copy of the
+         * property names, and lists of numbers are stored as primitive arrays. The snapshot is read like any other
+         * object of its type, but setting or removing its properties or changing its lists throws
+         * UnsupportedOperationException. Its inner JSONObject is read-only as well; setting the snapshot as a
+         * property of another GraphObject stores a mutable copy of it.
+         * @param graphObject the GraphObject to freeze
+         * @return an immutable copy of graphObject of the same GraphObject-derived type, or graphObject itself if it
+         *         is already frozen
+         *
+         * @throws com.facebook.FacebookException
+         *            If graphObject was not created by this Factory
+         */
+        public static <T extends GraphObject> T freeze(T graphObject) {
+            Validate.notNull(graphObject, "graphObject");
+
+            JSONObject state = graphObject.getInnerJSONObject();
+            if (GraphObjectSnapshot.isFrozen(state)) {
+                return graphObject;
+            }
+
+            @SuppressWarnings("unchecked")
+            Class<T> graphObjectClass = (Class<T>) getGraphObjectInterface(graphObject.getClass());
+            return createGraphObjectProxy(graphObjectClass, GraphObjectSnapshot.freeze(state));
+        }
+
+        /**
+         * Creates a compact, immutable snapshot of a GraphObjectList and of all the graph objects and lists it
+         * contains, as with {@link #freeze(GraphObject)}.
+         * @param graphObjectList the GraphObjectList to freeze
+         * @return an immutable copy of graphObjectList with the same item type, or graphObjectList itself if it is
+         *         already frozen
+         *
+         * @throws com.facebook.FacebookException
+         *            If graphObjectList was not created by this Factory
+         */
+        public static <T> GraphObjectList<T> freezeList(GraphObjectList<T> graphObjectList) {
+            Validate.notNull(graphObjectList, "graphObjectList");
+            if (!(graphObjectList instanceof GraphObjectListImpl)) {
+                throw new FacebookGraphObjectException("Can't freeze GraphObjectList of type " +
+                        graphObjectList.getClass());
+            }
+
+            JSONArray state = graphObjectList.getInnerJSONArray();
+            if (GraphObjectSnapshot.isFrozen(state)) {
+                return graphObjectList;
+            }
+            return new GraphObjectListImpl<T>(GraphObjectSnapshot.freeze(state),
+                    ((GraphObjectListImpl<T>) graphObjectList).itemType);
+        }
+
+        private static Class<?> getGraphObjectInterface(Class<?> implementationClass) {
+            // Both proxies and generated implementations implement exactly the interface they were created for
+            for (Class<?> implementedInterface : implementationClass.getInterfaces()) {
+                if (GraphObject.class.isAssignableFrom(implementedInterface)) {
+                    return implementedInterface;
+                }
+            }
+            throw new FacebookGraphObjectException("Can't freeze GraphObject of type " + implementationClass);
+        }
+
         private static <T extends GraphObject> T createGraphObjectProxy(Class<T> graphObjectClass, JSONObject state) {
+            T generatedGraphObject = createGeneratedGraphObject(graphObjectClass, state);
+            if (generatedGraphObject != null) {
+                return generatedGraphObject;
+            }
+
             verifyCanProxyClass(graphObjectClass);
 
             Class<?>[] interfaces = new Class<?>[] { graphObjectClass };
@@ -224,7 +345,55 @@ public interface GraphObject {
             return graphObject;
         }
 
-        private static Map<String, Object> createGraphObjectProxyForMap(JSONObject state) {
+        // Returns an instance of the implementation the annotation processor generated for graphObjectClass, or
+        // null if it did not generate one, in which case the caller falls back to a proxy.
+        private static <T extends GraphObject> T createGeneratedGraphObject(Class<T> graphObjectClass,
+                JSONObject state) {
+            GeneratedImplementation implementation = generatedImplementations.get(graphObjectClass);
+            if (implementation == null) {
+                implementation = new GeneratedImplementation(findGeneratedConstructor(graphObjectClass));
+                generatedImplementations.putIfAbsent(graphObjectClass, implementation);
+            }
+            if (implementation.constructor == null) {
+                return null;
+            }
+
+            try {
+                return graphObjectClass.cast(implementation.constructor.newInstance(state));
+            } catch (InstantiationException e) {
+                throw new FacebookGraphObjectException(e);
+            } catch (IllegalAccessException e) {
+                throw new FacebookGraphObjectException(e);
+            } catch (InvocationTargetException e) {
+                throw new FacebookGraphObjectException(e.getCause());
+            }
+        }
+
+        private static Constructor<?> findGeneratedConstructor(Class<?> graphObjectClass) {
+            if (!graphObjectClass.isInterface()) {
+                return null;
+            }
+
+            // The processor names the implementation after the interface's binary name, so that nested
+            // interfaces get a top-level implementation in the same package.
+            String className = graphObjectClass.getName().replace('$', '_') + GENERATED_IMPLEMENTATION_SUFFIX;
+            try {
+                Class<?> implementationClass = Class.forName(className, true, graphObjectClass.getClassLoader());
+                if (!GeneratedGraphObject.class.isAssignableFrom(implementationClass) ||
+                        !graphObjectClass.isAssignableFrom(implementationClass)) {
+                    return null;
+                }
+                Constructor<?> constructor = implementationClass.getDeclaredConstructor(JSONObject.class);
+                constructor.setAccessible(true);
+                return constructor;
+            } catch (ClassNotFoundException e) {
+                return null;
+            } catch (NoSuchMethodException e) {
+                return null;
+            }
+        }
+
+        static Map<String, Object> createGraphObjectProxyForMap(JSONObject state) {
             Class<?>[] interfaces = new Class<?>[]{Map.class};
             GraphObjectProxy graphObjectProxy = new GraphObjectProxy(state, Map.class);
 
@@ -383,59 +552,171 @@ public interface GraphObject {
                 }
             } else if (Date.class.equals(expectedType)) {
                 if (String.class.isAssignableFrom(valueType)) {
-                    for (SimpleDateFormat format : dateFormats) {
-                        try {
-                            Date date = format.parse((String) value);
-                            if (date != null) {
-                                @SuppressWarnings("unchecked")
-                                U result = (U) date;
-                                return result;
-                            }
-                        } catch (ParseException e) {
-                            // Keep going.
-                        }
+                    Date date = DateFormatter.parse((String) value);
+                    if (date != null) {
+                        @SuppressWarnings("unchecked")
+                        U result = (U) date;
+                        return result;
                     }
+                } else if (Integer.class.isAssignableFrom(valueType) || Long.class.isAssignableFrom(valueType)) {
+                    // Apps that predate the "Events Timezone" migration get Unix timestamps
+                    @SuppressWarnings("unchecked")
+                    U result = (U) new Date(((Number) value).longValue() * 1000);
+                    return result;
                 }
             }
             throw new FacebookGraphObjectException("Can't convert type" + valueType.getName() + " to "
                     + expectedType.getName());
         }
 
+        // Coerces value like coerceValueToExpectedType, reusing the wrapper the cache holds for it if there is one.
+        // itemType is the generic parameter of expectedType if that is a collection type; the parameterized type
+        // is only built from it if it is not given and the value is not in the cache.
+        static <K> Object coerceValueToExpectedType(Object value, Class<?> expectedType, Class<?> itemType,
+                ParameterizedType expectedTypeAsParameterizedType, CoercedValueCache<K> cache, K key) {
+            boolean isCacheable = cache != null && (value instanceof JSONObject || value instanceof JSONArray);
+            if (isCacheable) {
+                Object wrapper = cache.get(key, value, expectedType, itemType);
+                if (wrapper != null) {
+                    return wrapper;
+                }
+            }
+
+            if (expectedTypeAsParameterizedType == null && itemType != null) {
+                expectedTypeAsParameterizedType = createCollectionType(expectedType, itemType);
+            }
+            Object result = coerceValueToExpectedType(value, expectedType, expectedTypeAsParameterizedType);
+            if (isCacheable && result != value) {
+                cache.put(key, value, expectedType, itemType, result);
+            }
+            return result;
+        }
+
+        static ParameterizedType createCollectionType(final Class<?> collectionType, final Class<?> itemType) {
+            return new ParameterizedType() {
+                @Override
+                public Type[] getActualTypeArguments() {
+                    return new Type[]{ itemType };
+                }
+
+                @Override
+                public Type getOwnerType() {
+                    return null;
+                }
+
+                @Override
+                public Type getRawType() {
+                    return collectionType;
+                }
+            };
+        }
+
+        static <K> CoercedValueCache<K> createCoercedValueCache() {
+            return Settings.getShouldCacheGraphObjectWrappers() ? new CoercedValueCache<K>() : null;
+        }
+
+        private static PropertyMethod getPropertyMethod(Method method) {
+            PropertyMethod propertyMethod = propertyMethods.get(method);
+            if (propertyMethod == null) {
+                propertyMethod = new PropertyMethod(method);
+                // Racing threads resolve the same thing, so it doesn't matter whose copy wins
+                propertyMethods.putIfAbsent(method, propertyMethod);
+            }
+            return propertyMethod;
+        }
+
         static String convertCamelCaseToLowercaseWithUnderscores(String string) {
             string = string.replaceAll("([a-z])([A-Z])", "$1_$2");
             return string.toLowerCase(Locale.US);
         }
 
-        private static Object getUnderlyingJSONObject(Object obj) {
+        static Object createGraphObjectsFromParameters(String createGraphObjectPropertyName, Object value) {
+            if (value != null && !Utility.isNullOrEmpty(createGraphObjectPropertyName)) {
+                if (List.class.isAssignableFrom(value.getClass())) {
+                    GraphObjectList<GraphObject> graphObjects = GraphObject.Factory.createList(GraphObject.class);
+                    @SuppressWarnings("unchecked")
+                    List<Object> values = (List<Object>)value;
+                    for (Object obj : values) {
+                        GraphObject graphObject = GraphObject.Factory.create();
+                        graphObject.setProperty(createGraphObjectPropertyName, obj);
+                        graphObjects.add(graphObject);
+                    }
+
+                    value = graphObjects;
+                } else {
+                    GraphObject graphObject = GraphObject.Factory.create();
+                    graphObject.setProperty(createGraphObjectPropertyName, value);
+
+                    value = graphObject;
+                }
+            }
+
+            return value;
+        }
+
+        // Returns the id of the graph object state represents, or null if it has none.
+        private static String getId(JSONObject state) {
+            Object id = state.opt(ID_PROPERTY);
+            return (id instanceof String) ? (String) id : null;
+        }
+
+        // Equality for GraphObjects: the same underlying JSONObject, or, if Settings asks for it, the same id.
+        static boolean graphObjectStatesEqual(JSONObject state, JSONObject otherState) {
+            if (state == otherState) {
+                return true;
+            } else if (otherState == null || !Settings.getShouldCompareGraphObjectsById()) {
+                return false;
+            }
+            String id = getId(state);
+            return id != null && id.equals(getId(otherState));
+        }
+
+        // A hash code consistent with graphObjectStatesEqual. String caches its own hash code, so hashing by id
+        // costs a single property lookup.
+        static int graphObjectStateHashCode(JSONObject state) {
+            if (Settings.getShouldCompareGraphObjectsById()) {
+                String id = getId(state);
+                if (id != null) {
+                    return id.hashCode();
+                }
+            }
+            return state.hashCode();
+        }
+
+        static Object getUnderlyingJSONObject(Object obj) {
             if (obj == null) {
                 return null;
             }
 
+            // Frozen JSON cannot be serialized as part of mutable JSON, so it is stored as a mutable copy. This
+            // includes frozen JSONObjects and JSONArrays that are passed in directly, such as a property read
+            // from a frozen graph object.
             Class<?> objClass = obj.getClass();
             if (GraphObject.class.isAssignableFrom(objClass)) {
                 GraphObject graphObject = (GraphObject) obj;
-                return graphObject.getInnerJSONObject();
+                return GraphObjectSnapshot.thaw(graphObject.getInnerJSONObject());
             } else if (GraphObjectList.class.isAssignableFrom(objClass)) {
                 GraphObjectList<?> graphObjectList = (GraphObjectList<?>) obj;
-                return graphObjectList.getInnerJSONArray();
+                return GraphObjectSnapshot.thaw(graphObjectList.getInnerJSONArray());
             } else if (Iterable.class.isAssignableFrom(objClass)) {
                 JSONArray jsonArray = new JSONArray();
                 Iterable<?> iterable = (Iterable<?>) obj;
                 for (Object o : iterable ) {
                     if (GraphObject.class.isAssignableFrom(o.getClass())) {
-                        jsonArray.put(((GraphObject)o).getInnerJSONObject());
+                        jsonArray.put(GraphObjectSnapshot.thaw(((GraphObject)o).getInnerJSONObject()));
                     } else {
-                        jsonArray.put(o);
+                        jsonArray.put(GraphObjectSnapshot.thaw(o));
                     }
                 }
                 return jsonArray;
             }
-            return obj;
+            return GraphObjectSnapshot.thaw(obj);
         }
 
         private abstract static class ProxyBase<STATE> implements InvocationHandler {
             // Pre-loaded Method objects for the methods in java.lang.Object
             private static final String EQUALS_METHOD = "equals";
+            private static final String HASHCODE_METHOD = "hashCode";
             private static final String TOSTRING_METHOD = "toString";
 
             protected final STATE state;
@@ -458,13 +739,21 @@ public interface GraphObject {
                     if (other == null) {
                         return false;
                     }
+                    if (other instanceof GeneratedGraphObject) {
+                        return stateEquals(((GeneratedGraphObject) other).getInnerJSONObject());
+                    }
+                    if (!Proxy.isProxyClass(other.getClass())) {
+                        return false;
+                    }
 
                     InvocationHandler handler = Proxy.getInvocationHandler(other);
                     if (!(handler instanceof GraphObjectProxy)) {
                         return false;
                     }
                     GraphObjectProxy otherProxy = (GraphObjectProxy) handler;
-                    return this.state.equals(otherProxy.state);
+                    return stateEquals(otherProxy.state);
+                } else if (methodName.equals(HASHCODE_METHOD)) {
+                    return stateHashCode();
                 } else if (methodName.equals(TOSTRING_METHOD)) {
                     return toString();
                 }
@@ -473,35 +762,28 @@ public interface GraphObject {
                 return method.invoke(this.state, args);
             }
 
+            protected boolean stateEquals(Object otherState) {
+                return this.state.equals(otherState);
+            }
+
+            protected int stateHashCode() {
+                return this.state.hashCode();
+            }
         }
 
         private final static class GraphObjectProxy extends ProxyBase<JSONObject> {
-            private static final String CLEAR_METHOD = "clear";
-            private static final String CONTAINSKEY_METHOD = "containsKey";
-            private static final String CONTAINSVALUE_METHOD = "containsValue";
-            private static final String ENTRYSET_METHOD = "entrySet";
-            private static final String GET_METHOD = "get";
-            private static final String ISEMPTY_METHOD = "isEmpty";
-            private static final String KEYSET_METHOD = "keySet";
-            private static final String PUT_METHOD = "put";
-            private static final String PUTALL_METHOD = "putAll";
-            private static final String REMOVE_METHOD = "remove";
-            private static final String SIZE_METHOD = "size";
-            private static final String VALUES_METHOD = "values";
-            private static final String CAST_METHOD = "cast";
-            private static final String CASTTOMAP_METHOD = "asMap";
-            private static final String GETPROPERTY_METHOD = "getProperty";
-            private static final String GETPROPERTYAS_METHOD = "getPropertyAs";
-            private static final String GETPROPERTYASLIST_METHOD = "getPropertyAsList";
-            private static final String SETPROPERTY_METHOD = "setProperty";
-            private static final String REMOVEPROPERTY_METHOD = "removeProperty";
-            private static final String GETINNERJSONOBJECT_METHOD = "getInnerJSONObject";
+            // The Map and GraphObject methods, found with a single lookup per call instead of comparing names. The
+            // table is built once and never changes. It is keyed by Method.equals rather than by identity, since
+            // Dalvik passes a new Method instance to invoke on every call.
+            private static final Map<Method, ProxiedMethod> proxiedMethods = createProxiedMethods();
 
             private final Class<?> graphObjectClass;
+            private final CoercedValueCache<String> coercedValues;
 
             public GraphObjectProxy(JSONObject state, Class<?> graphObjectClass) {
                 super(state);
                 this.graphObjectClass = graphObjectClass;
+                this.coercedValues = createCoercedValueCache();
             }
 
             @Override
@@ -509,181 +791,149 @@ public interface GraphObject {
                 return String.format("GraphObject{graphObjectClass=%s, state=%s}", graphObjectClass.getSimpleName(), state);
             }
 
+            @Override
+            protected boolean stateEquals(Object otherState) {
+                return (otherState instanceof JSONObject) && graphObjectStatesEqual(state, (JSONObject) otherState);
+            }
+
+            @Override
+            protected int stateHashCode() {
+                return graphObjectStateHashCode(state);
+            }
+
             @Override
             public final Object invoke(Object proxy, Method method, Object[] args) throws Throwable {
-                Class<?> declaringClass = method.getDeclaringClass();
+                ProxiedMethod proxiedMethod = getProxiedMethod(method);
+                if (proxiedMethod != ProxiedMethod.NONE) {
+                    return invokeProxiedMethod(proxiedMethod, proxy, args);
+                }
 
+                Class<?> declaringClass = method.getDeclaringClass();
                 if (declaringClass == Object.class) {
                     return proxyObjectMethods(proxy, method, args);
-                } else if (declaringClass == Map.class) {
-                    return proxyMapMethods(method, args);
-                } else if (declaringClass == GraphObject.class) {
-                    return proxyGraphObjectMethods(proxy, method, args);
-                } else if (GraphObject.class.isAssignableFrom(declaringClass)) {
+                } else if (declaringClass != Map.class && declaringClass != GraphObject.class &&
+                        GraphObject.class.isAssignableFrom(declaringClass)) {
                     return proxyGraphObjectGettersAndSetters(method, args);
                 }
 
                 return throwUnexpectedMethodSignature(method);
             }
 
-            private final Object proxyMapMethods(Method method, Object[] args) {
-                String methodName = method.getName();
-                if (methodName.equals(CLEAR_METHOD)) {
-                    JsonUtil.jsonObjectClear(this.state);
-                    return null;
-                } else if (methodName.equals(CONTAINSKEY_METHOD)) {
-                    return this.state.has((String) args[0]);
-                } else if (methodName.equals(CONTAINSVALUE_METHOD)) {
-                    return JsonUtil.jsonObjectContainsValue(this.state, args[0]);
-                } else if (methodName.equals(ENTRYSET_METHOD)) {
-                    return JsonUtil.jsonObjectEntrySet(this.state);
-                } else if (methodName.equals(GET_METHOD)) {
-                    return this.state.opt((String) args[0]);
-                } else if (methodName.equals(ISEMPTY_METHOD)) {
-                    return this.state.length() == 0;
-                } else if (methodName.equals(KEYSET_METHOD)) {
-                    return JsonUtil.jsonObjectKeySet(this.state);
-                } else if (methodName.equals(PUT_METHOD)) {
-                    return setJSONProperty(args);
-                } else if (methodName.equals(PUTALL_METHOD)) {
-                    Map<String, Object> map = null;
-                    if (args[0] instanceof Map<?, ?>) {
-                        @SuppressWarnings("unchecked")
-                        Map<String, Object> castMap = (Map<String, Object>) args[0];
-                        map = castMap;
-                    } else if (args[0] instanceof GraphObject) {
-                        map = ((GraphObject) args[0]).asMap();
-                    } else {
-                        return null;
-                    }
-                    JsonUtil.jsonObjectPutAll(this.state, map);
-                    return null;
-                } else if (methodName.equals(REMOVE_METHOD)) {
-                    this.state.remove((String) args[0]);
-                    return null;
-                } else if (methodName.equals(SIZE_METHOD)) {
-                    return this.state.length();
-                } else if (methodName.equals(VALUES_METHOD)) {
-                    return JsonUtil.jsonObjectValues(this.state);
-                }
-
-                return throwUnexpectedMethodSignature(method);
+            private static ProxiedMethod getProxiedMethod(Method method) {
+                ProxiedMethod proxiedMethod = proxiedMethods.get(method);
+                return (proxiedMethod != null) ? proxiedMethod : ProxiedMethod.NONE;
             }
 
-            private final Object proxyGraphObjectMethods(Object proxy, Method method, Object[] args) {
-                String methodName = method.getName();
-                if (methodName.equals(CAST_METHOD)) {
-                    @SuppressWarnings("unchecked")
-                    Class<? extends GraphObject> graphObjectClass = (Class<? extends GraphObject>) args[0];
-
-                    if (graphObjectClass != null &&
-                            graphObjectClass.isAssignableFrom(this.graphObjectClass)) {
-                        return proxy;
+            private static Map<Method, ProxiedMethod> createProxiedMethods() {
+                HashMap<Method, ProxiedMethod> proxiedMethods = new HashMap<Method, ProxiedMethod>();
+                for (ProxiedMethod proxiedMethod : ProxiedMethod.values()) {
+                    if (proxiedMethod == ProxiedMethod.NONE) {
+                        continue;
                     }
-                    return Factory.createGraphObjectProxy(graphObjectClass, this.state);
-                } else if (methodName.equals(GETINNERJSONOBJECT_METHOD)) {
-                    InvocationHandler handler = Proxy.getInvocationHandler(proxy);
-                    GraphObjectProxy otherProxy = (GraphObjectProxy) handler;
-                    return otherProxy.state;
-                } else if (methodName.equals(CASTTOMAP_METHOD)) {
-                    return Factory.createGraphObjectProxyForMap(this.state);
-                } else if (methodName.equals(GETPROPERTY_METHOD)) {
-                    return state.opt((String) args[0]);
-                } else if (methodName.equals(GETPROPERTYAS_METHOD)) {
-                    Object value = state.opt((String) args[0]);
-                    Class<?> expectedType = (Class<?>) args[1];
-
-                    return coerceValueToExpectedType(value, expectedType, null);
-                } else if (methodName.equals(GETPROPERTYASLIST_METHOD)) {
-                    Object value = state.opt((String) args[0]);
-                    final Class<?> expectedType = (Class<?>) args[1];
-
-                    ParameterizedType parameterizedType = new ParameterizedType() {
-                        @Override
-                        public Type[] getActualTypeArguments() {
-                            return new Type[]{ expectedType };
+                    for (Method method : proxiedMethod.declaringClass.getMethods()) {
+                        if (method.getDeclaringClass() == proxiedMethod.declaringClass &&
+                                method.getName().equals(proxiedMethod.methodName) &&
+                                method.getParameterTypes().length == proxiedMethod.parameterCount) {
+                            proxiedMethods.put(method, proxiedMethod);
                         }
-
-                        @Override
-                        public Type getOwnerType() {
-                            return null;
-                        }
-
-                        @Override
-                        public Type getRawType() {
-                            return GraphObjectList.class;
-                        }
-                    };
-                    return coerceValueToExpectedType(value, GraphObjectList.class, parameterizedType);
-                } else if (methodName.equals(SETPROPERTY_METHOD)) {
-                    return setJSONProperty(args);
-                } else if (methodName.equals(REMOVEPROPERTY_METHOD)) {
-                    this.state.remove((String) args[0]);
-                    return null;
+                    }
                 }
-
-                return throwUnexpectedMethodSignature(method);
+                return Collections.unmodifiableMap(proxiedMethods);
             }
 
-            private Object createGraphObjectsFromParameters(CreateGraphObject createGraphObject, Object value) {
-                if (createGraphObject != null &&
-                        !Utility.isNullOrEmpty(createGraphObject.value())) {
-                    String propertyName = createGraphObject.value();
-                    if (List.class.isAssignableFrom(value.getClass())) {
-                        GraphObjectList<GraphObject> graphObjects = GraphObject.Factory.createList(GraphObject.class);
-                        @SuppressWarnings("unchecked")
-                        List<Object> values = (List<Object>)value;
-                        for (Object obj : values) {
-                            GraphObject graphObject = GraphObject.Factory.create();
-                            graphObject.setProperty(propertyName, obj);
-                            graphObjects.add(graphObject);
+            private Object invokeProxiedMethod(ProxiedMethod proxiedMethod, Object proxy, Object[] args) {
+                switch (proxiedMethod) {
+                    case MAP_CLEAR:
+                        JsonUtil.jsonObjectClear(this.state);
+                        clearCoercedValues();
+                        return null;
+                    case MAP_CONTAINSKEY:
+                        return this.state.has((String) args[0]);
+                    case MAP_CONTAINSVALUE:
+                        return JsonUtil.jsonObjectContainsValue(this.state, args[0]);
+                    case MAP_ENTRYSET:
+                        return JsonUtil.jsonObjectEntrySet(this.state);
+                    case MAP_GET:
+                        return this.state.opt((String) args[0]);
+                    case MAP_ISEMPTY:
+                        return this.state.length() == 0;
+                    case MAP_KEYSET:
+                        return JsonUtil.jsonObjectKeySet(this.state);
+                    case MAP_PUT:
+                        return setJSONProperty(args);
+                    case MAP_PUTALL:
+                        Map<String, Object> map = null;
+                        if (args[0] instanceof Map<?, ?>) {
+                            @SuppressWarnings("unchecked")
+                            Map<String, Object> castMap = (Map<String, Object>) args[0];
+                            map = castMap;
+                        } else if (args[0] instanceof GraphObject) {
+                            map = ((GraphObject) args[0]).asMap();
+                        } else {
+                            return null;
                         }
+                        JsonUtil.jsonObjectPutAll(this.state, map);
+                        clearCoercedValues();
+                        return null;
+                    case MAP_REMOVE:
+                    case REMOVEPROPERTY:
+                        this.state.remove((String) args[0]);
+                        removeCoercedValue((String) args[0]);
+                        return null;
+                    case MAP_SIZE:
+                        return this.state.length();
+                    case MAP_VALUES:
+                        return JsonUtil.jsonObjectValues(this.state);
+                    case CAST:
+                        @SuppressWarnings("unchecked")
+                        Class<? extends GraphObject> graphObjectClass = (Class<? extends GraphObject>) args[0];
 
-                        value = graphObjects;
-                    } else {
-                        GraphObject graphObject = GraphObject.Factory.create();
-                        graphObject.setProperty(propertyName, value);
-
-                        value = graphObject;
-                    }
+                        if (graphObjectClass != null &&
+                                graphObjectClass.isAssignableFrom(this.graphObjectClass)) {
+                            return proxy;
+                        }
+                        return Factory.createGraphObjectProxy(graphObjectClass, this.state);
+                    case GETINNERJSONOBJECT:
+                        return this.state;
+                    case ASMAP:
+                        return Factory.createGraphObjectProxyForMap(this.state);
+                    case GETPROPERTY:
+                        return state.opt((String) args[0]);
+                    case GETPROPERTYAS:
+                        return coerceValueToExpectedType(state.opt((String) args[0]), (Class<?>) args[1], null, null,
+                                coercedValues, (String) args[0]);
+                    case GETPROPERTYASLIST:
+                        return coerceValueToExpectedType(state.opt((String) args[0]), GraphObjectList.class,
+                                (Class<?>) args[1], null, coercedValues, (String) args[0]);
+                    case SETPROPERTY:
+                        return setJSONProperty(args);
+                    default:
+                        throw new IllegalStateException("Unhandled method " + proxiedMethod);
                 }
-
-                return value;
             }
 
             private final Object proxyGraphObjectGettersAndSetters(Method method, Object[] args) throws JSONException {
-                String methodName = method.getName();
-                int parameterCount = method.getParameterTypes().length;
-                PropertyName propertyNameOverride = method.getAnnotation(PropertyName.class);
-
-                String key = propertyNameOverride != null ? propertyNameOverride.value() :
-                        convertCamelCaseToLowercaseWithUnderscores(methodName.substring(3));
+                PropertyMethod propertyMethod = getPropertyMethod(method);
 
                 // If it's a get or a set on a GraphObject-derived class, we can handle it.
-                if (parameterCount == 0) {
+                if (propertyMethod.parameterCount == 0) {
                     // Has to be a getter. ASSUMPTION: The GraphObject-derived class has been verified
-                    Object value = this.state.opt(key);
-
-                    Class<?> expectedType = method.getReturnType();
-
-                    Type genericReturnType = method.getGenericReturnType();
-                    ParameterizedType parameterizedReturnType = null;
-                    if (genericReturnType instanceof ParameterizedType) {
-                        parameterizedReturnType = (ParameterizedType) genericReturnType;
-                    }
+                    Object value = this.state.opt(propertyMethod.key);
 
-                    value = coerceValueToExpectedType(value, expectedType, parameterizedReturnType);
+                    value = coerceValueToExpectedType(value, propertyMethod.expectedType, propertyMethod.itemType,
+                            propertyMethod.parameterizedReturnType, coercedValues, propertyMethod.key);
 
                     return value;
-                } else if (parameterCount == 1) {
+                } else if (propertyMethod.parameterCount == 1) {
                     // Has to be a setter. ASSUMPTION: The GraphObject-derived class has been verified
-                    CreateGraphObject createGraphObjectAnnotation = method.getAnnotation(CreateGraphObject.class);
-                    Object value = createGraphObjectsFromParameters(createGraphObjectAnnotation, args[0]);
+                    Object value = createGraphObjectsFromParameters(propertyMethod.createGraphObjectPropertyName,
+                            args[0]);
 
                     // If this is a wrapped object, store the underlying JSONObject instead, in order to serialize
                     // correctly.
                     value = getUnderlyingJSONObject(value);
-                    this.state.putOpt(key, value);
+                    this.state.putOpt(propertyMethod.key, value);
+                    removeCoercedValue(propertyMethod.key);
                     return null;
                 }
 
@@ -699,13 +949,101 @@ public interface GraphObject {
                 } catch (JSONException e) {
                     throw new IllegalArgumentException(e);
                 }
+                removeCoercedValue(name);
                 return null;
             }
+
+            private void removeCoercedValue(String key) {
+                if (coercedValues != null) {
+                    coercedValues.remove(key);
+                }
+            }
+
+            private void clearCoercedValues() {
+                if (coercedValues != null) {
+                    coercedValues.clear();
+                }
+            }
+        }
+
+        // The Map and GraphObject methods that GraphObjectProxy implements itself.
+        private enum ProxiedMethod {
+            MAP_CLEAR(Map.class, "clear", 0),
+            MAP_CONTAINSKEY(Map.class, "containsKey", 1),
+            MAP_CONTAINSVALUE(Map.class, "containsValue", 1),
+            MAP_ENTRYSET(Map.class, "entrySet", 0),
+            MAP_GET(Map.class, "get", 1),
+            MAP_ISEMPTY(Map.class, "isEmpty", 0),
+            MAP_KEYSET(Map.class, "keySet", 0),
+            MAP_PUT(Map.class, "put", 2),
+            MAP_PUTALL(Map.class, "putAll", 1),
+            MAP_REMOVE(Map.class, "remove", 1),
+            MAP_SIZE(Map.class, "size", 0),
+            MAP_VALUES(Map.class, "values", 0),
+            CAST(GraphObject.class, "cast", 1),
+            ASMAP(GraphObject.class, "asMap", 0),
+            GETINNERJSONOBJECT(GraphObject.class, "getInnerJSONObject", 0),
+            GETPROPERTY(GraphObject.class, "getProperty", 1),
+            GETPROPERTYAS(GraphObject.class, "getPropertyAs", 2),
+            GETPROPERTYASLIST(GraphObject.class, "getPropertyAsList", 2),
+            SETPROPERTY(GraphObject.class, "setProperty", 2),
+            REMOVEPROPERTY(GraphObject.class, "removeProperty", 1),
+            // Any other method: Object methods, getters and setters
+            NONE(null, null, 0);
+
+            final Class<?> declaringClass;
+            final String methodName;
+            final int parameterCount;
+
+            ProxiedMethod(Class<?> declaringClass, String methodName, int parameterCount) {
+                this.declaringClass = declaringClass;
+                this.methodName = methodName;
+                this.parameterCount = parameterCount;
+            }
+        }
+
+        // What proxyGraphObjectGettersAndSetters needs to know about a getter or setter.
+        private final static class PropertyMethod {
+            final String key;
+            final int parameterCount;
+            final Class<?> expectedType;
+            final ParameterizedType parameterizedReturnType;
+            final Class<?> itemType;
+            final String createGraphObjectPropertyName;
+
+            PropertyMethod(Method method) {
+                PropertyName propertyNameOverride = method.getAnnotation(PropertyName.class);
+                key = propertyNameOverride != null ? propertyNameOverride.value() :
+                        convertCamelCaseToLowercaseWithUnderscores(method.getName().substring(3));
+                parameterCount = method.getParameterTypes().length;
+                expectedType = method.getReturnType();
+
+                Type genericReturnType = method.getGenericReturnType();
+                parameterizedReturnType = (genericReturnType instanceof ParameterizedType) ?
+                        (ParameterizedType) genericReturnType : null;
+                Type[] typeArguments = (parameterizedReturnType != null) ?
+                        parameterizedReturnType.getActualTypeArguments() : null;
+                itemType = (typeArguments != null && typeArguments.length == 1 &&
+                        typeArguments[0] instanceof Class<?>) ? (Class<?>) typeArguments[0] : null;
+
+                CreateGraphObject createGraphObject = method.getAnnotation(CreateGraphObject.class);
+                createGraphObjectPropertyName = createGraphObject != null ? createGraphObject.value() : null;
+            }
+        }
+
+        // The constructor of a generated implementation, or null if there is none.
+        private final static class GeneratedImplementation {
+            final Constructor<?> constructor;
+
+            GeneratedImplementation(Constructor<?> constructor) {
+                this.constructor = constructor;
+            }
         }
 
         private final static class GraphObjectListImpl<T> extends AbstractList<T> implements GraphObjectList<T> {
             private final JSONArray state;
             private final Class<?> itemType;
+            private final CoercedValueCache<Integer> coercedItems;
 
             public GraphObjectListImpl(JSONArray state, Class<?> itemType) {
                 Validate.notNull(state, "state");
@@ -713,6 +1051,7 @@ public interface GraphObject {
 
                 this.state = state;
                 this.itemType = itemType;
+                this.coercedItems = createCoercedValueCache();
             }
 
             @Override
@@ -767,9 +1106,7 @@ public interface GraphObject {
 
                 Object value = state.opt(location);
 
-                // Class<?> expectedType = method.getReturnType();
-                // Type genericType = method.getGenericReturnType();
-                T result = (T) coerceValueToExpectedType(value, itemType, null);
+                T result = (T) coerceValueToExpectedType(value, itemType, null, null, coercedItems, location);
 
                 return result;
             }
@@ -833,6 +1170,9 @@ public interface GraphObject {
                 } catch (JSONException e) {
                     throw new IllegalArgumentException(e);
                 }
+                if (coercedItems != null) {
+                    coercedItems.remove(index);
+                }
             }
         }
     }
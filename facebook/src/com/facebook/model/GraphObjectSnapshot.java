@@ -0,0 +1,552 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.*;
+
+// Builds compact, immutable copies of JSON trees for graph objects that are kept for a long time. A frozen
+// object keeps its values in a plain array next to a table of its keys, and objects that have the same keys in
+// the same order share one table, so a list of a thousand friends holds a single copy of the keys instead of a
+// hash map per friend. Arrays whose items are all Integers, all Longs or all Doubles are stored as primitive
+// arrays. The copies still extend JSONObject and JSONArray, so GraphObject proxies and GraphObjectLists read
+// them as usual; anything that would modify them throws UnsupportedOperationException.
+//
+// JSONObject and JSONArray serialize nested objects through their private state, which is empty here, so a
+// frozen object must never be put into a mutable one. GraphObject.Factory thaws them before storing them.
+final class GraphObjectSnapshot {
+    // Key tables with more keys than this find keys through a hash map rather than by scanning
+    private static final int MAX_KEYS_TO_SCAN = 8;
+
+    private final HashMap<String, String> keys = new HashMap<String, String>();
+    private final HashMap<List<String>, KeyTable> keyTables = new HashMap<List<String>, KeyTable>();
+
+    private GraphObjectSnapshot() {
+    }
+
+    static JSONObject freeze(JSONObject jsonObject) {
+        if (jsonObject instanceof FrozenJSONObject) {
+            return jsonObject;
+        }
+        return new GraphObjectSnapshot().freezeObject(jsonObject);
+    }
+
+    static JSONArray freeze(JSONArray jsonArray) {
+        if (jsonArray instanceof FrozenJSONArray) {
+            return jsonArray;
+        }
+        return new GraphObjectSnapshot().freezeArray(jsonArray);
+    }
+
+    static boolean isFrozen(Object json) {
+        return json instanceof FrozenJSONObject || json instanceof FrozenJSONArray;
+    }
+
+    // Returns a mutable deep copy of json if it is frozen, and json itself otherwise.
+    static Object thaw(Object json) {
+        try {
+            if (json instanceof FrozenJSONObject) {
+                FrozenJSONObject frozenObject = (FrozenJSONObject) json;
+                JSONObject jsonObject = new JSONObject();
+                for (int i = 0; i < frozenObject.values.length; i++) {
+                    jsonObject.put(frozenObject.keyTable.keys[i], thaw(frozenObject.values[i]));
+                }
+                return jsonObject;
+            } else if (json instanceof FrozenJSONArray) {
+                FrozenJSONArray frozenArray = (FrozenJSONArray) json;
+                JSONArray jsonArray = new JSONArray();
+                for (int i = 0; i < frozenArray.length(); i++) {
+                    jsonArray.put(thaw(frozenArray.opt(i)));
+                }
+                return jsonArray;
+            }
+        } catch (JSONException e) {
+            // The values came out of valid JSON, so they can always be put back
+            throw new IllegalStateException(e);
+        }
+        return json;
+    }
+
+    private FrozenJSONObject freezeObject(JSONObject jsonObject) {
+        int length = jsonObject.length();
+        String[] names = new String[length];
+        Object[] values = new Object[length];
+
+        Iterator<?> iterator = jsonObject.keys();
+        for (int i = 0; i < length; i++) {
+            String name = (String) iterator.next();
+            names[i] = internKey(name);
+            values[i] = freezeValue(jsonObject.opt(name));
+        }
+
+        List<String> shape = Arrays.asList(names);
+        KeyTable keyTable = keyTables.get(shape);
+        if (keyTable == null) {
+            keyTable = new KeyTable(names);
+            keyTables.put(shape, keyTable);
+        }
+        return new FrozenJSONObject(keyTable, values);
+    }
+
+    private FrozenJSONArray freezeArray(JSONArray jsonArray) {
+        int length = jsonArray.length();
+        Class<?> itemClass = getCommonItemClass(jsonArray);
+
+        if (itemClass == Integer.class) {
+            int[] items = new int[length];
+            for (int i = 0; i < length; i++) {
+                items[i] = (Integer) jsonArray.opt(i);
+            }
+            return new IntArray(items);
+        } else if (itemClass == Long.class) {
+            long[] items = new long[length];
+            for (int i = 0; i < length; i++) {
+                items[i] = (Long) jsonArray.opt(i);
+            }
+            return new LongArray(items);
+        } else if (itemClass == Double.class) {
+            double[] items = new double[length];
+            for (int i = 0; i < length; i++) {
+                items[i] = (Double) jsonArray.opt(i);
+            }
+            return new DoubleArray(items);
+        }
+
+        Object[] items = new Object[length];
+        for (int i = 0; i < length; i++) {
+            items[i] = freezeValue(jsonArray.opt(i));
+        }
+        return new ObjectArray(items);
+    }
+
+    private Object freezeValue(Object value) {
+        if (isFrozen(value)) {
+            return value;
+        } else if (value instanceof JSONObject) {
+            return freezeObject((JSONObject) value);
+        } else if (value instanceof JSONArray) {
+            return freezeArray((JSONArray) value);
+        }
+        // Strings, numbers, booleans and JSONObject.NULL are immutable already
+        return value;
+    }
+
+    private String internKey(String key) {
+        String internedKey = keys.get(key);
+        if (internedKey == null) {
+            keys.put(key, key);
+            internedKey = key;
+        }
+        return internedKey;
+    }
+
+    // Returns the class all the items of jsonArray share, or null if they do not all have the same class.
+    private static Class<?> getCommonItemClass(JSONArray jsonArray) {
+        int length = jsonArray.length();
+        if (length == 0 || jsonArray.opt(0) == null) {
+            return null;
+        }
+        Class<?> itemClass = jsonArray.opt(0).getClass();
+        for (int i = 1; i < length; i++) {
+            Object item = jsonArray.opt(i);
+            if (item == null || item.getClass() != itemClass) {
+                return null;
+            }
+        }
+        return itemClass;
+    }
+
+    private static UnsupportedOperationException createImmutableException() {
+        return new UnsupportedOperationException("Frozen graph objects cannot be modified");
+    }
+
+    private static void appendValue(StringBuilder builder, Object value) {
+        if (value instanceof String) {
+            builder.append(JSONObject.quote((String) value));
+        } else if (value instanceof Number) {
+            try {
+                builder.append(JSONObject.numberToString((Number) value));
+            } catch (JSONException e) {
+                // Only non-finite numbers are rejected, and those cannot have come from JSON
+                throw new IllegalStateException(e);
+            }
+        } else if (value instanceof FrozenJSONObject) {
+            ((FrozenJSONObject) value).appendTo(builder);
+        } else if (value instanceof FrozenJSONArray) {
+            ((FrozenJSONArray) value).appendTo(builder);
+        } else {
+            builder.append(String.valueOf(value));
+        }
+    }
+
+    private static final class KeyTable {
+        private final String[] keys;
+        private final HashMap<String, Integer> indexes;
+
+        KeyTable(String[] keys) {
+            this.keys = keys;
+            if (keys.length > MAX_KEYS_TO_SCAN) {
+                indexes = new HashMap<String, Integer>(keys.length * 2);
+                for (int i = 0; i < keys.length; i++) {
+                    indexes.put(keys[i], i);
+                }
+            } else {
+                indexes = null;
+            }
+        }
+
+        int indexOf(String key) {
+            if (indexes != null) {
+                Integer index = indexes.get(key);
+                return (index != null) ? index : -1;
+            }
+            for (int i = 0; i < keys.length; i++) {
+                if (keys[i].equals(key)) {
+                    return i;
+                }
+            }
+            return -1;
+        }
+    }
+
+    private static final class FrozenJSONObject extends JSONObject {
+        private final KeyTable keyTable;
+        private final Object[] values;
+
+        FrozenJSONObject(KeyTable keyTable, Object[] values) {
+            this.keyTable = keyTable;
+            this.values = values;
+        }
+
+        @Override
+        public int length() {
+            return values.length;
+        }
+
+        @Override
+        public boolean has(String name) {
+            return keyTable.indexOf(name) >= 0;
+        }
+
+        @Override
+        public Object opt(String name) {
+            int index = keyTable.indexOf(name);
+            return (index >= 0) ? values[index] : null;
+        }
+
+        @Override
+        public Object get(String name) throws JSONException {
+            Object value = opt(name);
+            if (value == null) {
+                throw new JSONException("No value for " + name);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isNull(String name) {
+            Object value = opt(name);
+            return value == null || value == JSONObject.NULL;
+        }
+
+        @Override
+        public Iterator<String> keys() {
+            return Collections.unmodifiableList(Arrays.asList(keyTable.keys)).iterator();
+        }
+
+        @Override
+        public JSONArray names() {
+            return (values.length == 0) ? null : new JSONArray(Arrays.asList(keyTable.keys));
+        }
+
+        @Override
+        public JSONObject put(String name, boolean value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject put(String name, double value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject put(String name, int value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject put(String name, long value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject put(String name, Object value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject putOpt(String name, Object value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject accumulate(String name, Object value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public Object remove(String name) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+
+        @Override
+        public String toString(int indentSpaces) throws JSONException {
+            return ((JSONObject) thaw(this)).toString(indentSpaces);
+        }
+
+        void appendTo(StringBuilder builder) {
+            builder.append('{');
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    builder.append(',');
+                }
+                builder.append(JSONObject.quote(keyTable.keys[i])).append(':');
+                appendValue(builder, values[i]);
+            }
+            builder.append('}');
+        }
+    }
+
+    private abstract static class FrozenJSONArray extends JSONArray {
+        @Override
+        public abstract int length();
+
+        @Override
+        public abstract Object opt(int index);
+
+        @Override
+        public Object get(int index) throws JSONException {
+            Object value = opt(index);
+            if (value == null) {
+                throw new JSONException("No value at " + index);
+            }
+            return value;
+        }
+
+        @Override
+        public boolean isNull(int index) {
+            Object value = opt(index);
+            return value == null || value == JSONObject.NULL;
+        }
+
+        @Override
+        public JSONArray put(boolean value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(double value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(long value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(Object value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int index, boolean value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int index, double value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int index, int value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int index, long value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONArray put(int index, Object value) {
+            throw createImmutableException();
+        }
+
+        @Override
+        public JSONObject toJSONObject(JSONArray names) throws JSONException {
+            return ((JSONArray) thaw(this)).toJSONObject(names);
+        }
+
+        @Override
+        public String join(String separator) {
+            StringBuilder builder = new StringBuilder();
+            for (int i = 0; i < length(); i++) {
+                if (i > 0) {
+                    builder.append(separator);
+                }
+                appendValue(builder, opt(i));
+            }
+            return builder.toString();
+        }
+
+        @Override
+        public String toString() {
+            StringBuilder builder = new StringBuilder();
+            appendTo(builder);
+            return builder.toString();
+        }
+
+        @Override
+        public String toString(int indentSpaces) throws JSONException {
+            return ((JSONArray) thaw(this)).toString(indentSpaces);
+        }
+
+        @Override
+        public boolean equals(Object other) {
+            if (this == other) {
+                return true;
+            } else if (!(other instanceof FrozenJSONArray)) {
+                return false;
+            }
+            FrozenJSONArray otherArray = (FrozenJSONArray) other;
+            if (length() != otherArray.length()) {
+                return false;
+            }
+            for (int i = 0; i < length(); i++) {
+                Object item = opt(i);
+                Object otherItem = otherArray.opt(i);
+                if ((item == null) ? (otherItem != null) : !item.equals(otherItem)) {
+                    return false;
+                }
+            }
+            return true;
+        }
+
+        @Override
+        public int hashCode() {
+            int hashCode = 1;
+            for (int i = 0; i < length(); i++) {
+                Object item = opt(i);
+                hashCode = 31 * hashCode + ((item == null) ? 0 : item.hashCode());
+            }
+            return hashCode;
+        }
+
+        void appendTo(StringBuilder builder) {
+            builder.append('[').append(join(",")).append(']');
+        }
+    }
+
+    private static final class ObjectArray extends FrozenJSONArray {
+        private final Object[] items;
+
+        ObjectArray(Object[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public int length() {
+            return items.length;
+        }
+
+        @Override
+        public Object opt(int index) {
+            return (index >= 0 && index < items.length) ? items[index] : null;
+        }
+    }
+
+    private static final class IntArray extends FrozenJSONArray {
+        private final int[] items;
+
+        IntArray(int[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public int length() {
+            return items.length;
+        }
+
+        @Override
+        public Object opt(int index) {
+            return (index >= 0 && index < items.length) ? Integer.valueOf(items[index]) : null;
+        }
+    }
+
+    private static final class LongArray extends FrozenJSONArray {
+        private final long[] items;
+
+        LongArray(long[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public int length() {
+            return items.length;
+        }
+
+        @Override
+        public Object opt(int index) {
+            return (index >= 0 && index < items.length) ? Long.valueOf(items[index]) : null;
+        }
+    }
+
+    private static final class DoubleArray extends FrozenJSONArray {
+        private final double[] items;
+
+        DoubleArray(double[] items) {
+            this.items = items;
+        }
+
+        @Override
+        public int length() {
+            return items.length;
+        }
+
+        @Override
+        public Object opt(int index) {
+            return (index >= 0 && index < items.length) ? Double.valueOf(items[index]) : null;
+        }
+    }
+}
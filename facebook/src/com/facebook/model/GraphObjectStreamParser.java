@@ -0,0 +1,407 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import com.facebook.internal.JsonKeyPool;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.Reader;
+import java.lang.reflect.Method;
+import java.lang.reflect.ParameterizedType;
+import java.lang.reflect.Type;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+// Reads JSON from a stream in a single pass, without first reading it into a String, and only builds the
+// properties that the target GraphObject interface (and, recursively, the GraphObject types of its properties)
+// declares getters or setters for. Undeclared properties are skipped without being parsed unless
+// keepUndeclaredProperties is set. The result is still a tree of JSONObjects and JSONArrays, since that is what
+// every GraphObject is backed by.
+class GraphObjectStreamParser {
+    private static final int BUFFER_SIZE = 8 * 1024;
+
+    private static final ConcurrentHashMap<Class<?>, Schema> schemas = new ConcurrentHashMap<Class<?>, Schema>();
+
+    private final Reader reader;
+    private final boolean keepUndeclaredProperties;
+    private final char[] buffer = new char[BUFFER_SIZE];
+    private final StringBuilder stringBuilder = new StringBuilder();
+    private int position;
+    private int limit;
+    private long offset;
+
+    GraphObjectStreamParser(Reader reader, boolean keepUndeclaredProperties) {
+        this.reader = reader;
+        this.keepUndeclaredProperties = keepUndeclaredProperties;
+    }
+
+    JSONObject parseObject(Class<?> graphObjectClass) throws IOException, JSONException {
+        Object value = parseValue(read(), getSchema(graphObjectClass));
+        if (!(value instanceof JSONObject)) {
+            throw syntaxError("Expected a JSON object");
+        }
+        expectEnd();
+        return (JSONObject) value;
+    }
+
+    JSONArray parseArray(Class<?> itemClass) throws IOException, JSONException {
+        Object value = parseValue(read(), getSchema(itemClass));
+        if (!(value instanceof JSONArray)) {
+            throw syntaxError("Expected a JSON array");
+        }
+        expectEnd();
+        return (JSONArray) value;
+    }
+
+    // A null schema means that everything in the value is kept.
+    private Object parseValue(int c, Schema schema) throws IOException, JSONException {
+        c = skipWhitespace(c);
+        switch (c) {
+            case '{':
+                return parseObjectBody(schema);
+            case '[':
+                return parseArrayBody(schema);
+            case '"':
+                return readString();
+            default:
+                return parseLiteral(c);
+        }
+    }
+
+    private JSONObject parseObjectBody(Schema schema) throws IOException, JSONException {
+        JSONObject object = new JSONObject();
+        int c = skipWhitespace(read());
+        if (c == '}') {
+            return object;
+        }
+
+        while (true) {
+            if (c != '"') {
+                throw syntaxError("Expected a property name");
+            }
+            String name = readString();
+            if (skipWhitespace(read()) != ':') {
+                throw syntaxError("Expected ':' after " + name);
+            }
+
+            if (schema == null) {
+                object.put(JsonKeyPool.intern(name), parseValue(read(), null));
+            } else if (schema.declaresProperty(name)) {
+                object.put(JsonKeyPool.intern(name), parseValue(read(), schema.getPropertySchema(name)));
+            } else if (keepUndeclaredProperties) {
+                object.put(JsonKeyPool.intern(name), parseValue(read(), null));
+            } else {
+                skipValue();
+            }
+
+            c = skipWhitespace(read());
+            if (c == '}') {
+                return object;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or '}'");
+            }
+            c = skipWhitespace(read());
+        }
+    }
+
+    // The items of an array of GraphObjects share the schema of the array itself.
+    private JSONArray parseArrayBody(Schema itemSchema) throws IOException, JSONException {
+        JSONArray array = new JSONArray();
+        int c = skipWhitespace(read());
+        if (c == ']') {
+            return array;
+        }
+
+        while (true) {
+            array.put(parseValue(c, itemSchema));
+
+            c = skipWhitespace(read());
+            if (c == ']') {
+                return array;
+            } else if (c != ',') {
+                throw syntaxError("Expected ',' or ']'");
+            }
+            c = read();
+        }
+    }
+
+    private Object parseLiteral(int c) throws IOException, JSONException {
+        String literal = readLiteral(c);
+        if (literal.equals("null")) {
+            return JSONObject.NULL;
+        } else if (literal.equals("true")) {
+            return Boolean.TRUE;
+        } else if (literal.equals("false")) {
+            return Boolean.FALSE;
+        }
+
+        // Numbers are given the same types that org.json gives them
+        if (literal.indexOf('.') == -1 && literal.indexOf('e') == -1 && literal.indexOf('E') == -1) {
+            try {
+                long longValue = Long.parseLong(literal);
+                if (longValue >= Integer.MIN_VALUE && longValue <= Integer.MAX_VALUE) {
+                    return (int) longValue;
+                }
+                return longValue;
+            } catch (NumberFormatException e) {
+                // Too large for a long; org.json falls back to a Double, as below
+            }
+        }
+        try {
+            return Double.valueOf(literal);
+        } catch (NumberFormatException e) {
+            throw syntaxError("Unexpected value " + literal);
+        }
+    }
+
+    private String readLiteral(int c) throws IOException, JSONException {
+        if (c == -1) {
+            throw syntaxError("Unexpected end of input");
+        }
+
+        stringBuilder.setLength(0);
+        while (c != -1 && !isDelimiter(c)) {
+            stringBuilder.append((char) c);
+            c = read();
+        }
+        if (c != -1) {
+            // The delimiter belongs to whatever encloses the literal
+            position--;
+        }
+        if (stringBuilder.length() == 0) {
+            throw syntaxError("Unexpected character '" + (char) c + "'");
+        }
+        return stringBuilder.toString();
+    }
+
+    // Reads the rest of a string whose opening quote has been read.
+    private String readString() throws IOException, JSONException {
+        stringBuilder.setLength(0);
+        while (true) {
+            // Copy runs of ordinary characters straight out of the buffer
+            int start = position;
+            while (position < limit && buffer[position] != '"' && buffer[position] != '\\') {
+                position++;
+            }
+            stringBuilder.append(buffer, start, position - start);
+
+            int c = read();
+            if (c == '"') {
+                return stringBuilder.toString();
+            } else if (c == '\\') {
+                stringBuilder.append(readEscapedCharacter());
+            } else if (c == -1) {
+                throw syntaxError("Unterminated string");
+            } else {
+                // read() refilled the buffer
+                stringBuilder.append((char) c);
+            }
+        }
+    }
+
+    private char readEscapedCharacter() throws IOException, JSONException {
+        int c = read();
+        switch (c) {
+            case 'b':
+                return '\b';
+            case 'f':
+                return '\f';
+            case 'n':
+                return '\n';
+            case 'r':
+                return '\r';
+            case 't':
+                return '\t';
+            case 'u':
+                int value = 0;
+                for (int i = 0; i < 4; i++) {
+                    int digit = Character.digit(read(), 16);
+                    if (digit == -1) {
+                        throw syntaxError("Invalid unicode escape");
+                    }
+                    value = (value << 4) | digit;
+                }
+                return (char) value;
+            case -1:
+                throw syntaxError("Unterminated string");
+            default:
+                // '"', '\\', '/' and anything else stand for themselves
+                return (char) c;
+        }
+    }
+
+    // Skips a value without building it. Only the nesting of skipped objects and arrays is checked.
+    private void skipValue() throws IOException, JSONException {
+        int c = skipWhitespace(read());
+        if (c == '"') {
+            skipString();
+        } else if (c == '{' || c == '[') {
+            int depth = 1;
+            while (depth > 0) {
+                c = read();
+                if (c == '"') {
+                    skipString();
+                } else if (c == '{' || c == '[') {
+                    depth++;
+                } else if (c == '}' || c == ']') {
+                    depth--;
+                } else if (c == -1) {
+                    throw syntaxError("Unexpected end of input");
+                }
+            }
+        } else {
+            readLiteral(c);
+        }
+    }
+
+    private void skipString() throws IOException, JSONException {
+        while (true) {
+            int c = read();
+            if (c == '"') {
+                return;
+            } else if (c == '\\') {
+                read();
+            } else if (c == -1) {
+                throw syntaxError("Unterminated string");
+            }
+        }
+    }
+
+    private void expectEnd() throws IOException, JSONException {
+        if (skipWhitespace(read()) != -1) {
+            throw syntaxError("Unexpected data after the end of the value");
+        }
+    }
+
+    private int skipWhitespace(int c) throws IOException {
+        while (c == ' ' || c == '\t' || c == '\n' || c == '\r') {
+            c = read();
+        }
+        return c;
+    }
+
+    private static boolean isDelimiter(int c) {
+        switch (c) {
+            case ' ':
+            case '\t':
+            case '\n':
+            case '\r':
+            case ',':
+            case ':':
+            case '}':
+            case ']':
+            case '{':
+            case '[':
+            case '"':
+                return true;
+            default:
+                return false;
+        }
+    }
+
+    private int read() throws IOException {
+        if (position == limit) {
+            offset += limit;
+            position = 0;
+            limit = reader.read(buffer, 0, buffer.length);
+            if (limit <= 0) {
+                limit = 0;
+                return -1;
+            }
+        }
+        return buffer[position++];
+    }
+
+    private JSONException syntaxError(String message) {
+        return new JSONException(message + " at character " + (offset + position));
+    }
+
+    private static Schema getSchema(Class<?> type) {
+        if (!type.isInterface() || !GraphObject.class.isAssignableFrom(type)) {
+            return null;
+        }
+
+        Schema schema = schemas.get(type);
+        if (schema == null) {
+            schema = new Schema(type);
+            // Racing threads build the same thing, so it doesn't matter whose copy wins
+            schemas.putIfAbsent(type, schema);
+        }
+        return schema;
+    }
+
+    // The properties a GraphObject interface declares getters or setters for, each mapped to the GraphObject type
+    // of its value (or of the items of its value, if it is a collection), or to null if it is any other type.
+    // Child schemas are looked up lazily, so that interfaces may refer to themselves.
+    private static final class Schema {
+        private final Map<String, Class<?>> properties = new HashMap<String, Class<?>>();
+
+        Schema(Class<?> graphObjectClass) {
+            for (Method method : graphObjectClass.getMethods()) {
+                if (method.getDeclaringClass().isAssignableFrom(GraphObject.class)) {
+                    continue;
+                }
+
+                PropertyName propertyNameOverride = method.getAnnotation(PropertyName.class);
+                if (propertyNameOverride == null && method.getName().length() <= 3) {
+                    // Not a getter or setter; the Factory rejects the interface once it has been parsed
+                    continue;
+                }
+                String key = propertyNameOverride != null ? propertyNameOverride.value() :
+                        GraphObject.Factory.convertCamelCaseToLowercaseWithUnderscores(method.getName().substring(3));
+
+                Type propertyType = null;
+                if (method.getParameterTypes().length == 0) {
+                    propertyType = method.getGenericReturnType();
+                } else if (!method.isAnnotationPresent(CreateGraphObject.class)) {
+                    // A setter that wraps its value in a new GraphObject says nothing about the value's type
+                    propertyType = method.getGenericParameterTypes()[0];
+                }
+                Class<?> graphObjectType = getGraphObjectType(propertyType);
+                if (graphObjectType != null || !properties.containsKey(key)) {
+                    properties.put(key, graphObjectType);
+                }
+            }
+        }
+
+        // An interface that declares no properties, like GraphObject itself, keeps all of them
+        boolean declaresProperty(String name) {
+            return properties.isEmpty() || properties.containsKey(name);
+        }
+
+        Schema getPropertySchema(String name) {
+            Class<?> type = properties.get(name);
+            return type != null ? getSchema(type) : null;
+        }
+
+        private static Class<?> getGraphObjectType(Type type) {
+            if (type instanceof ParameterizedType) {
+                // An Iterable, Collection, List or GraphObjectList of GraphObjects
+                Type[] typeArguments = ((ParameterizedType) type).getActualTypeArguments();
+                type = typeArguments.length == 1 ? typeArguments[0] : null;
+            }
+            if (type instanceof Class<?> && GraphObject.class.isAssignableFrom((Class<?>) type)) {
+                return (Class<?>) type;
+            }
+            return null;
+        }
+    }
+}
@@ -0,0 +1,8 @@
+// Generated by GraphObjectProcessor from com.facebook.model.GraphObject. Do not edit.
+package com.facebook.model;
+
+final class GraphObject_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.GraphObject {
+    GraphObject_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.GraphObject.class);
+    }
+}
@@ -0,0 +1,48 @@
+// Generated by GraphObjectProcessor from com.facebook.model.GraphPlace. Do not edit.
+package com.facebook.model;
+
+final class GraphPlace_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.GraphPlace {
+    GraphPlace_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.GraphPlace.class);
+    }
+
+    @Override
+    public java.lang.String getId() {
+        return getTypedProperty("id", java.lang.String.class);
+    }
+
+    @Override
+    public void setId(java.lang.String value) {
+        setTypedProperty("id", value, null);
+    }
+
+    @Override
+    public java.lang.String getName() {
+        return getTypedProperty("name", java.lang.String.class);
+    }
+
+    @Override
+    public void setName(java.lang.String value) {
+        setTypedProperty("name", value, null);
+    }
+
+    @Override
+    public java.lang.String getCategory() {
+        return getTypedProperty("category", java.lang.String.class);
+    }
+
+    @Override
+    public void setCategory(java.lang.String value) {
+        setTypedProperty("category", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphLocation getLocation() {
+        return getTypedProperty("location", com.facebook.model.GraphLocation.class);
+    }
+
+    @Override
+    public void setLocation(com.facebook.model.GraphLocation value) {
+        setTypedProperty("location", value, null);
+    }
+}
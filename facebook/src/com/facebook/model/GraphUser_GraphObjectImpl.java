@@ -0,0 +1,98 @@
+// Generated by GraphObjectProcessor from com.facebook.model.GraphUser. Do not edit.
+package com.facebook.model;
+
+final class GraphUser_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.GraphUser {
+    GraphUser_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.GraphUser.class);
+    }
+
+    @Override
+    public java.lang.String getId() {
+        return getTypedProperty("id", java.lang.String.class);
+    }
+
+    @Override
+    public void setId(java.lang.String value) {
+        setTypedProperty("id", value, null);
+    }
+
+    @Override
+    public java.lang.String getName() {
+        return getTypedProperty("name", java.lang.String.class);
+    }
+
+    @Override
+    public void setName(java.lang.String value) {
+        setTypedProperty("name", value, null);
+    }
+
+    @Override
+    public java.lang.String getFirstName() {
+        return getTypedProperty("first_name", java.lang.String.class);
+    }
+
+    @Override
+    public void setFirstName(java.lang.String value) {
+        setTypedProperty("first_name", value, null);
+    }
+
+    @Override
+    public java.lang.String getMiddleName() {
+        return getTypedProperty("middle_name", java.lang.String.class);
+    }
+
+    @Override
+    public void setMiddleName(java.lang.String value) {
+        setTypedProperty("middle_name", value, null);
+    }
+
+    @Override
+    public java.lang.String getLastName() {
+        return getTypedProperty("last_name", java.lang.String.class);
+    }
+
+    @Override
+    public void setLastName(java.lang.String value) {
+        setTypedProperty("last_name", value, null);
+    }
+
+    @Override
+    public java.lang.String getLink() {
+        return getTypedProperty("link", java.lang.String.class);
+    }
+
+    @Override
+    public void setLink(java.lang.String value) {
+        setTypedProperty("link", value, null);
+    }
+
+    @Override
+    public java.lang.String getUsername() {
+        return getTypedProperty("username", java.lang.String.class);
+    }
+
+    @Override
+    public void setUsername(java.lang.String value) {
+        setTypedProperty("username", value, null);
+    }
+
+    @Override
+    public java.lang.String getBirthday() {
+        return getTypedProperty("birthday", java.lang.String.class);
+    }
+
+    @Override
+    public void setBirthday(java.lang.String value) {
+        setTypedProperty("birthday", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphLocation getLocation() {
+        return getTypedProperty("location", com.facebook.model.GraphLocation.class);
+    }
+
+    @Override
+    public void setLocation(com.facebook.model.GraphLocation value) {
+        setTypedProperty("location", value, null);
+    }
+}
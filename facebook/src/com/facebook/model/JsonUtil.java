@@ -17,6 +17,7 @@
 package com.facebook.model;
 
 import android.annotation.SuppressLint;
+import com.facebook.internal.JsonKeyPool;
 import org.json.JSONException;
 import org.json.JSONObject;
 
@@ -69,54 +70,136 @@ class JsonUtil {
             throw new UnsupportedOperationException("JSONObjectEntry is immutable");
         }
 
+        @Override
+        public boolean equals(Object other) {
+            if (!(other instanceof Map.Entry)) {
+                return false;
+            }
+            Map.Entry<?, ?> otherEntry = (Map.Entry<?, ?>) other;
+            return key.equals(otherEntry.getKey()) &&
+                    (value == null ? otherEntry.getValue() == null : value.equals(otherEntry.getValue()));
+        }
+
+        @Override
+        public int hashCode() {
+            // As specified by Map.Entry
+            return key.hashCode() ^ (value == null ? 0 : value.hashCode());
+        }
     }
 
-    static Set<Map.Entry<String, Object>> jsonObjectEntrySet(JSONObject jsonObject) {
-        HashSet<Map.Entry<String, Object>> result = new HashSet<Map.Entry<String, Object>>();
+    // The collections below are live views of the JSONObject, as Map requires, rather than copies: they walk the
+    // JSONObject's own key iterator, so iterating them does not allocate anything in proportion to the number of
+    // properties, and removing through them removes the property.
+
+    static Set<Map.Entry<String, Object>> jsonObjectEntrySet(final JSONObject jsonObject) {
+        return new AbstractSet<Map.Entry<String, Object>>() {
+            @Override
+            public Iterator<Map.Entry<String, Object>> iterator() {
+                @SuppressWarnings("unchecked")
+                final Iterator<String> keys = (Iterator<String>) jsonObject.keys();
+                return new Iterator<Map.Entry<String, Object>>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Map.Entry<String, Object> next() {
+                        String key = keys.next();
+                        return new JSONObjectEntry(key, jsonObject.opt(key));
+                    }
+
+                    @Override
+                    public void remove() {
+                        keys.remove();
+                    }
+                };
+            }
 
-        @SuppressWarnings("unchecked")
-        Iterator<String> keys = (Iterator<String>) jsonObject.keys();
-        while (keys.hasNext()) {
-            String key = keys.next();
-            Object value = jsonObject.opt(key);
-            result.add(new JSONObjectEntry(key, value));
-        }
+            @Override
+            public int size() {
+                return jsonObject.length();
+            }
 
-        return result;
+            @Override
+            public boolean contains(Object object) {
+                if (!(object instanceof Map.Entry)) {
+                    return false;
+                }
+                Map.Entry<?, ?> entry = (Map.Entry<?, ?>) object;
+                Object key = entry.getKey();
+                Object value = (key instanceof String) ? jsonObject.opt((String) key) : null;
+                return value != null && value.equals(entry.getValue());
+            }
+        };
     }
 
-    static Set<String> jsonObjectKeySet(JSONObject jsonObject) {
-        HashSet<String> result = new HashSet<String>();
+    static Set<String> jsonObjectKeySet(final JSONObject jsonObject) {
+        return new AbstractSet<String>() {
+            @Override
+            public Iterator<String> iterator() {
+                @SuppressWarnings("unchecked")
+                Iterator<String> keys = (Iterator<String>) jsonObject.keys();
+                return keys;
+            }
 
-        @SuppressWarnings("unchecked")
-        Iterator<String> keys = (Iterator<String>) jsonObject.keys();
-        while (keys.hasNext()) {
-            result.add(keys.next());
-        }
+            @Override
+            public int size() {
+                return jsonObject.length();
+            }
 
-        return result;
+            @Override
+            public boolean contains(Object object) {
+                return (object instanceof String) && jsonObject.has((String) object);
+            }
+        };
     }
 
     static void jsonObjectPutAll(JSONObject jsonObject, Map<String, Object> map) {
         Set<Map.Entry<String, Object>> entrySet = map.entrySet();
         for (Map.Entry<String, Object> entry : entrySet) {
             try {
-                jsonObject.putOpt(entry.getKey(), entry.getValue());
+                // Values copied from a frozen graph object would otherwise serialize as empty JSON
+                jsonObject.putOpt(JsonKeyPool.intern(entry.getKey()), GraphObjectSnapshot.thaw(entry.getValue()));
             } catch (JSONException e) {
                 throw new IllegalArgumentException(e);
             }
         }
     }
 
-    static Collection<Object> jsonObjectValues(JSONObject jsonObject) {
-        ArrayList<Object> result = new ArrayList<Object>();
+    static Collection<Object> jsonObjectValues(final JSONObject jsonObject) {
+        return new AbstractCollection<Object>() {
+            @Override
+            public Iterator<Object> iterator() {
+                @SuppressWarnings("unchecked")
+                final Iterator<String> keys = (Iterator<String>) jsonObject.keys();
+                return new Iterator<Object>() {
+                    @Override
+                    public boolean hasNext() {
+                        return keys.hasNext();
+                    }
+
+                    @Override
+                    public Object next() {
+                        return jsonObject.opt(keys.next());
+                    }
+
+                    @Override
+                    public void remove() {
+                        keys.remove();
+                    }
+                };
+            }
 
-        @SuppressWarnings("unchecked")
-        Iterator<String> keys = (Iterator<String>) jsonObject.keys();
-        while (keys.hasNext()) {
-            result.add(jsonObject.opt(keys.next()));
-        }
+            @Override
+            public int size() {
+                return jsonObject.length();
+            }
 
-        return result;
+            @Override
+            public boolean contains(Object object) {
+                return jsonObjectContainsValue(jsonObject, object);
+            }
+        };
     }
 }
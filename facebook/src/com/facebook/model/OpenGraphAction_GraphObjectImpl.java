@@ -0,0 +1,183 @@
+// Generated by GraphObjectProcessor from com.facebook.model.OpenGraphAction. Do not edit.
+package com.facebook.model;
+
+final class OpenGraphAction_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.model.OpenGraphAction {
+    OpenGraphAction_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.model.OpenGraphAction.class);
+    }
+
+    @Override
+    public java.lang.String getId() {
+        return getTypedProperty("id", java.lang.String.class);
+    }
+
+    @Override
+    public void setId(java.lang.String value) {
+        setTypedProperty("id", value, null);
+    }
+
+    @Override
+    public java.lang.String getType() {
+        return getTypedProperty("type", java.lang.String.class);
+    }
+
+    @Override
+    public void setType(java.lang.String value) {
+        setTypedProperty("type", value, null);
+    }
+
+    @Override
+    public java.util.Date getStartTime() {
+        return getTypedProperty("start_time", java.util.Date.class);
+    }
+
+    @Override
+    public void setStartTime(java.util.Date value) {
+        setTypedProperty("start_time", value, null);
+    }
+
+    @Override
+    public java.util.Date getEndTime() {
+        return getTypedProperty("end_time", java.util.Date.class);
+    }
+
+    @Override
+    public void setEndTime(java.util.Date value) {
+        setTypedProperty("end_time", value, null);
+    }
+
+    @Override
+    public java.util.Date getPublishTime() {
+        return getTypedProperty("publish_time", java.util.Date.class);
+    }
+
+    @Override
+    public void setPublishTime(java.util.Date value) {
+        setTypedProperty("publish_time", value, null);
+    }
+
+    @Override
+    public java.util.Date getCreatedTime() {
+        return getTypedProperty("created_time", java.util.Date.class);
+    }
+
+    @Override
+    public void setCreatedTime(java.util.Date value) {
+        setTypedProperty("created_time", value, null);
+    }
+
+    @Override
+    public java.util.Date getExpiresTime() {
+        return getTypedProperty("expires_time", java.util.Date.class);
+    }
+
+    @Override
+    public void setExpiresTime(java.util.Date value) {
+        setTypedProperty("expires_time", value, null);
+    }
+
+    @Override
+    public java.lang.String getRef() {
+        return getTypedProperty("ref", java.lang.String.class);
+    }
+
+    @Override
+    public void setRef(java.lang.String value) {
+        setTypedProperty("ref", value, null);
+    }
+
+    @Override
+    public java.lang.String getMessage() {
+        return getTypedProperty("message", java.lang.String.class);
+    }
+
+    @Override
+    public void setMessage(java.lang.String value) {
+        setTypedProperty("message", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphPlace getPlace() {
+        return getTypedProperty("place", com.facebook.model.GraphPlace.class);
+    }
+
+    @Override
+    public void setPlace(com.facebook.model.GraphPlace value) {
+        setTypedProperty("place", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphObjectList<com.facebook.model.GraphObject> getTags() {
+        return getCollectionProperty("tags", com.facebook.model.GraphObjectList.class, com.facebook.model.GraphObject.class);
+    }
+
+    @Override
+    public void setTags(java.util.List<? extends com.facebook.model.GraphObject> value) {
+        setTypedProperty("tags", value, null);
+    }
+
+    @Override
+    public java.util.List<org.json.JSONObject> getImage() {
+        return getCollectionProperty("image", java.util.List.class, org.json.JSONObject.class);
+    }
+
+    @Override
+    public void setImage(java.util.List<org.json.JSONObject> value) {
+        setTypedProperty("image", value, null);
+    }
+
+    @Override
+    public void setImageUrls(java.util.List<java.lang.String> value) {
+        setTypedProperty("image", value, "url");
+    }
+
+    @Override
+    public com.facebook.model.GraphUser getFrom() {
+        return getTypedProperty("from", com.facebook.model.GraphUser.class);
+    }
+
+    @Override
+    public void setFrom(com.facebook.model.GraphUser value) {
+        setTypedProperty("from", value, null);
+    }
+
+    @Override
+    public org.json.JSONObject getLikes() {
+        return getTypedProperty("likes", org.json.JSONObject.class);
+    }
+
+    @Override
+    public void setLikes(org.json.JSONObject value) {
+        setTypedProperty("likes", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphObject getApplication() {
+        return getTypedProperty("application", com.facebook.model.GraphObject.class);
+    }
+
+    @Override
+    public void setApplication(com.facebook.model.GraphObject value) {
+        setTypedProperty("application", value, null);
+    }
+
+    @Override
+    public org.json.JSONObject getComments() {
+        return getTypedProperty("comments", org.json.JSONObject.class);
+    }
+
+    @Override
+    public void setComments(org.json.JSONObject value) {
+        setTypedProperty("comments", value, null);
+    }
+
+    @Override
+    public com.facebook.model.GraphObject getData() {
+        return getTypedProperty("data", com.facebook.model.GraphObject.class);
+    }
+
+    @Override
+    public void setData(com.facebook.model.GraphObject value) {
+        setTypedProperty("data", value, null);
+    }
+}
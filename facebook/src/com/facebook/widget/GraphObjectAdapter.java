@@ -48,6 +48,8 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
     private static final String PICTURE = "picture";
 
     private final Map<String, ImageRequest> pendingRequests = new HashMap<String, ImageRequest>();
+    // Requests that were given high priority by the last call to prioritizeViewRange
+    private ArrayList<ImageRequest> prioritizedRequests = new ArrayList<ImageRequest>();
     private final LayoutInflater inflater;
     private List<String> sectionKeys = new ArrayList<String>();
     private Map<String, ArrayList<T>> graphObjectsBySection = new HashMap<String, ArrayList<T>>();
@@ -61,8 +63,10 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
     private DataNeededListener dataNeededListener;
     private GraphObjectCursor<T> cursor;
     private Context context;
-    private Map<String, ImageResponse> prefetchedPictureCache = new HashMap<String, ImageResponse>();
     private ArrayList<String> prefetchedProfilePictureIds = new ArrayList<String>();
+    private int pictureWidth = ImageRequest.UNSPECIFIED_DIMENSION;
+    private int pictureHeight = ImageRequest.UNSPECIFIED_DIMENSION;
+    private Map<ImageView, Bitmap> displayedPictures = new HashMap<ImageView, Bitmap>();
     private OnErrorListener onErrorListener;
 
     public interface DataNeededListener {
@@ -186,26 +190,33 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
         // We want to prioritize requests for items which are visible but do not have pictures
         // loaded yet. We also want to pre-fetch pictures for items which are not yet visible
         // but are within a buffer on either side of the visible items, on the assumption that
-        // they will be visible soon. For these latter items, we'll store the images in memory
-        // in the hopes we can immediately populate their image view when needed.
-
-        // Prioritize the requests in reverse order since each call to prioritizeRequest will just
-        // move it to the front of the queue. And we want the earliest ones in the range to be at
-        // the front of the queue, so all else being equal, the list will appear to populate from
-        // the top down.
-        for (int i = lastVisibleItem; i >= 0; i--) {
+        // they will be visible soon. For these latter items, ImageDownloader will keep the decoded
+        // images in memory in the hopes we can immediately populate their image view when needed.
+
+        // Visible rows go ahead of everything else, top row first, so that all else being equal the list
+        // will appear to populate from the top down. Rows that have scrolled out of view go back to normal
+        // priority. Both are done in a single call each, rather than once per row.
+        ArrayList<ImageRequest> visibleRequests = new ArrayList<ImageRequest>();
+        for (int i = firstVisibleItem; i <= lastVisibleItem; i++) {
             SectionAndItem<T> sectionAndItem = getSectionAndItem(i);
             if (sectionAndItem.graphObject != null) {
                 String id = getIdOfGraphObject(sectionAndItem.graphObject);
                 ImageRequest request = pendingRequests.get(id);
                 if (request != null) {
-                    ImageDownloader.prioritizeRequest(request);
+                    visibleRequests.add(request);
                 }
             }
         }
 
+        prioritizedRequests.removeAll(visibleRequests);
+        if (!prioritizedRequests.isEmpty()) {
+            ImageDownloader.setRequestPriority(prioritizedRequests, ImageDownloader.PRIORITY_NORMAL);
+        }
+        ImageDownloader.setRequestPriority(visibleRequests, ImageDownloader.PRIORITY_HIGH);
+        prioritizedRequests = visibleRequests;
+
         // For items which are not visible, but within the buffer on either side, we want to
-        // fetch those items and store them in a small in-memory cache of bitmaps.
+        // fetch those items so that they end up in ImageDownloader's in-memory cache of bitmaps.
         int start = Math.max(0, firstVisibleItem - prefetchBuffer);
         int end = Math.min(lastVisibleItem + prefetchBuffer, getCount() - 1);
         ArrayList<T> graphObjectsToPrefetchPicturesFor = new ArrayList<T>();
@@ -236,6 +247,11 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 downloadProfilePicture(id, uri, null);
             }
         }
+
+        // Only remember the most recent pre-fetches; older ones may have been evicted from memory.
+        while (prefetchedProfilePictureIds.size() > MAX_PREFETCHED_PICTURES) {
+            prefetchedProfilePictureIds.remove(0);
+        }
     }
 
     protected String getSectionKeyOfGraphObject(T graphObject) {
@@ -379,12 +395,13 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
 
             if (pictureURI != null) {
                 ImageView profilePic = (ImageView) view.findViewById(R.id.com_facebook_picker_image);
+                updatePictureSize(profilePic);
 
-                // See if we have already pre-fetched this; if not, download it.
-                if (prefetchedPictureCache.containsKey(id)) {
-                    ImageResponse response = prefetchedPictureCache.get(id);
-                    profilePic.setImageBitmap(response.getBitmap());
-                    profilePic.setTag(response.getRequest().getImageUri());
+                // See if we have already pre-fetched or displayed this; if not, download it.
+                Bitmap cachedBitmap = ImageDownloader.getCachedBitmap(createImageRequestBuilder(pictureURI).build());
+                if (cachedBitmap != null) {
+                    setPictureBitmap(profilePic, cachedBitmap);
+                    profilePic.setTag(pictureURI);
                 } else {
                     downloadProfilePicture(id, pictureURI, profilePic);
                 }
@@ -711,8 +728,8 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
     }
 
     public List<T> getGraphObjectsById(Collection<String> ids) {
-        Set<String> idSet = new HashSet<String>();
-        idSet.addAll(ids);
+        // A Set of ids is already free of duplicates, so only copy other collections
+        Collection<String> idSet = (ids instanceof Set) ? ids : new HashSet<String>(ids);
 
         ArrayList<T> result = new ArrayList<T>(idSet.size());
         for (String id : idSet) {
@@ -740,10 +757,10 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
                 // Setting the tag to the profile ID indicates that we're currently downloading the
                 // picture for this profile; we'll set it to the actual picture URL when complete.
                 imageView.setTag(profileId);
-                imageView.setImageResource(getDefaultPicture());
+                setPictureResource(imageView, getDefaultPicture());
             }
 
-            ImageRequest.Builder builder = new ImageRequest.Builder(context.getApplicationContext(), pictureURI)
+            ImageRequest.Builder builder = createImageRequestBuilder(pictureURI)
                     .setCallerTag(this)
                     .setCallback(
                             new ImageRequest.Callback() {
@@ -760,6 +777,36 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
         }
     }
 
+    private ImageRequest.Builder createImageRequestBuilder(URI pictureURI) {
+        // Pictures are decoded at the size of the row's image view rather than at full resolution
+        return new ImageRequest.Builder(context.getApplicationContext(), pictureURI)
+                .setTargetSize(pictureWidth, pictureHeight)
+                .setReleasesBitmap(true);
+    }
+
+    // Bitmaps are handed back to ImageDownloader once the row's ImageView stops showing them, which
+    // happens when getView recycles the row for another graph object.
+    private void setPictureBitmap(ImageView imageView, Bitmap bitmap) {
+        Bitmap previousBitmap = displayedPictures.put(imageView, bitmap);
+        imageView.setImageBitmap(bitmap);
+        ImageDownloader.releaseBitmap(previousBitmap);
+    }
+
+    private void setPictureResource(ImageView imageView, int resourceId) {
+        Bitmap previousBitmap = displayedPictures.remove(imageView);
+        imageView.setImageResource(resourceId);
+        ImageDownloader.releaseBitmap(previousBitmap);
+    }
+
+    private void updatePictureSize(ImageView imageView) {
+        // Note: these dimensions are in pixels, not dips
+        ViewGroup.LayoutParams layoutParams = imageView.getLayoutParams();
+        if (layoutParams != null) {
+            pictureWidth = Math.max(layoutParams.width, ImageRequest.UNSPECIFIED_DIMENSION);
+            pictureHeight = Math.max(layoutParams.height, ImageRequest.UNSPECIFIED_DIMENSION);
+        }
+    }
+
     private void callOnErrorListener(Exception exception) {
         if (onErrorListener != null) {
             if (!(exception instanceof FacebookException)) {
@@ -775,24 +822,14 @@ class GraphObjectAdapter<T extends GraphObject> extends BaseAdapter implements S
             callOnErrorListener(response.getError());
         }
 
-        if (imageView == null) {
-            // This was a pre-fetch request.
-            if (response.getBitmap() != null) {
-                // Is the cache too big?
-                if (prefetchedPictureCache.size() >= MAX_PREFETCHED_PICTURES) {
-                    // Find the oldest one and remove it.
-                    String oldestId = prefetchedProfilePictureIds.remove(0);
-                    prefetchedPictureCache.remove(oldestId);
-                }
-                prefetchedPictureCache.put(graphObjectId, response);
-            }
-        } else if (graphObjectId.equals(imageView.getTag())) {
-            Exception error = response.getError();
-            Bitmap bitmap = response.getBitmap();
-            if (error == null && bitmap != null) {
-                imageView.setImageBitmap(bitmap);
-                imageView.setTag(response.getRequest().getImageUri());
-            }
+        // Pre-fetch requests have no imageView; their bitmaps are kept in memory by ImageDownloader.
+        Bitmap bitmap = response.getBitmap();
+        if (imageView != null && graphObjectId.equals(imageView.getTag()) &&
+                response.getError() == null && bitmap != null) {
+            setPictureBitmap(imageView, bitmap);
+            imageView.setTag(response.getRequest().getImageUri());
+        } else {
+            ImageDownloader.releaseBitmap(bitmap);
         }
     }
 
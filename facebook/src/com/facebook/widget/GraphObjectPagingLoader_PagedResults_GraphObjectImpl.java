@@ -0,0 +1,13 @@
+// Generated by GraphObjectProcessor from com.facebook.widget.GraphObjectPagingLoader.PagedResults. Do not edit.
+package com.facebook.widget;
+
+final class GraphObjectPagingLoader_PagedResults_GraphObjectImpl extends com.facebook.model.GeneratedGraphObject implements com.facebook.widget.GraphObjectPagingLoader.PagedResults {
+    GraphObjectPagingLoader_PagedResults_GraphObjectImpl(org.json.JSONObject state) {
+        super(state, com.facebook.widget.GraphObjectPagingLoader.PagedResults.class);
+    }
+
+    @Override
+    public com.facebook.model.GraphObjectList<com.facebook.model.GraphObject> getData() {
+        return getCollectionProperty("data", com.facebook.model.GraphObjectList.class, com.facebook.model.GraphObject.class);
+    }
+}
@@ -431,8 +431,15 @@ public class ProfilePictureView extends FrameLayout {
 
             ImageRequest request = requestBuilder.setAllowCachedRedirects(allowCachedResponse)
                     .setCallerTag(this)
+                    .setTargetSize(queryWidth, queryHeight)
+                    .setScaleMode(isCropped() ? ImageRequest.ScaleMode.FILL : ImageRequest.ScaleMode.FIT)
                     .setCallback(
-                    new ImageRequest.Callback() {
+                    new ImageRequest.PreviewCallback() {
+                        @Override
+                        public void onPreview(ImageResponse response) {
+                            processPreview(response);
+                        }
+
                         @Override
                         public void onCompleted(ImageResponse response) {
                             processResponse(response);
@@ -454,6 +461,13 @@ public class ProfilePictureView extends FrameLayout {
         }
     }
 
+    private void processPreview(ImageResponse response) {
+        // Show the partial image until the full one arrives, unless this request has been super-ceded
+        if (response.getRequest() == lastRequest) {
+            setImageBitmap(response.getBitmap());
+        }
+    }
+
     private void processResponse(ImageResponse response) {
         // First check if the response is for the right request. We may have:
         // 1. Sent a new request, thus super-ceding this one.
@@ -421,6 +421,9 @@ public class UserSettingsFragment extends FacebookFragment {
                             getResources().getDimensionPixelSize(R.dimen.com_facebook_usersettingsfragment_profile_picture_height)));
 
             request = requestBuilder.setCallerTag(this)
+                    .setTargetSize(
+                            getResources().getDimensionPixelSize(R.dimen.com_facebook_usersettingsfragment_profile_picture_width),
+                            getResources().getDimensionPixelSize(R.dimen.com_facebook_usersettingsfragment_profile_picture_height))
                     .setCallback(
                             new ImageRequest.Callback() {
                                 @Override
@@ -0,0 +1,110 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+public class RequestMetricsTests extends AndroidTestCase {
+
+    @SmallTest @MediumTest @LargeTest
+    public void testCountingOutputStream() throws IOException {
+        ByteArrayOutputStream target = new ByteArrayOutputStream();
+        RequestMetrics.CountingOutputStream stream = new RequestMetrics.CountingOutputStream(target);
+        stream.write(1);
+        stream.write(new byte[10], 2, 5);
+        stream.close();
+
+        assertEquals(6, stream.getCount());
+        assertEquals(6, target.size());
+        assertTrue(stream.getWriteTimeNanos() >= 0);
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testDownloadAndParseAreMeasured() throws Exception {
+        byte[] body = "{\"id\":\"4\",\"name\":\"Mark\"}".getBytes("UTF-8");
+        RequestMetrics metrics = new RequestMetrics();
+
+        List<Response> responses = Response.createResponsesFromStream(new ByteArrayInputStream(body), null,
+                new RequestBatch(new Request()), true, metrics);
+
+        assertEquals(1, responses.size());
+        assertEquals(body.length, metrics.getBytesReceived());
+        assertTrue(metrics.getDownloadTimeNanos() >= 0);
+        assertTrue(metrics.getParseTimeNanos() >= 0);
+        assertEquals(RequestMetrics.NOT_MEASURED, metrics.getConnectTimeNanos());
+        assertEquals(RequestMetrics.NOT_MEASURED, metrics.getTimeToFirstByteNanos());
+        assertEquals(metrics.getDownloadTimeNanos() + metrics.getParseTimeNanos(), metrics.getTotalTimeNanos());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testSerializingBatchTwiceKeepsMetricsApart() {
+        RequestBatch batch = new RequestBatch(new Request(null, "me"));
+        RequestMetrics first = new RequestMetrics();
+        RequestMetrics second = new RequestMetrics();
+
+        Request.toHttpConnection(batch, first);
+        long firstSerializeTimeNanos = first.getSerializeTimeNanos();
+        assertTrue(firstSerializeTimeNanos >= 0);
+
+        // The second serialization only records into its own metrics
+        Request.toHttpConnection(batch, second);
+        assertTrue(second.getSerializeTimeNanos() >= 0);
+        assertEquals(firstSerializeTimeNanos, first.getSerializeTimeNanos());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testListenerIsNotifiedAfterCallbacks() {
+        final ArrayList<String> events = new ArrayList<String>();
+        Request request = new Request();
+        request.setCallback(new Request.Callback() {
+            @Override
+            public void onCompleted(Response response) {
+                events.add("callback");
+            }
+        });
+        RequestBatch batch = new RequestBatch(request);
+        List<Response> responses = Response.constructErrorResponses(batch, null, new FacebookException("test"));
+        final RequestMetrics metrics = new RequestMetrics();
+
+        Settings.setRequestMetricsListener(new RequestMetrics.Listener() {
+            @Override
+            public void onCompleted(List<Response> responses, RequestMetrics notifiedMetrics) {
+                assertSame(metrics, notifiedMetrics);
+                events.add("metrics");
+            }
+        });
+        try {
+            Request.runCallbacks(batch, responses, metrics);
+        } finally {
+            Settings.setRequestMetricsListener(null);
+        }
+
+        assertEquals(2, events.size());
+        assertEquals("callback", events.get(0));
+        assertEquals("metrics", events.get(1));
+        assertTrue(metrics.getCallbackTimeNanos() >= 0);
+    }
+}
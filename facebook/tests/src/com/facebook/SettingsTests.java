@@ -21,6 +21,7 @@ import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
+import com.facebook.internal.BoundedExecutor;
 import com.facebook.internal.ServerProtocol;
 import com.facebook.internal.Utility;
 
@@ -75,6 +76,25 @@ public final class SettingsTests extends AndroidTestCase {
         }
     }
 
+    @SmallTest @MediumTest @LargeTest
+    public void testReplacedExecutorIsShutDown() {
+        int originalThreadCount = Settings.getExecutorThreadCount(Settings.ExecutorType.DECODE);
+        try {
+            BoundedExecutor created = (BoundedExecutor) Settings.getExecutor(Settings.ExecutorType.DECODE);
+            Settings.setExecutorThreadCount(Settings.ExecutorType.DECODE, originalThreadCount + 1);
+            assertTrue(created.isShutdown());
+
+            // Pools passed in by the app are left alone
+            BoundedExecutor passedIn = new BoundedExecutor("test", 1, 1);
+            Settings.setExecutor(Settings.ExecutorType.DECODE, passedIn);
+            Settings.setExecutorThreadCount(Settings.ExecutorType.DECODE, originalThreadCount);
+            assertFalse(passedIn.isShutdown());
+            passedIn.shutdown();
+        } finally {
+            Settings.setExecutorThreadCount(Settings.ExecutorType.DECODE, originalThreadCount);
+        }
+    }
+
     @SmallTest @MediumTest @LargeTest
     public void testLogdException() {
         try {
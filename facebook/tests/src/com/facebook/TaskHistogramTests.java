@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public class TaskHistogramTests extends AndroidTestCase {
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPercentiles() {
+        TaskHistogram histogram = new TaskHistogram();
+        for (int i = 0; i < 90; i++) {
+            record(histogram, TaskType.DECODE, 0, 100 * 1000);
+        }
+        for (int i = 0; i < 10; i++) {
+            record(histogram, TaskType.DECODE, 0, 10 * 1000 * 1000);
+        }
+
+        assertEquals(100, histogram.getTaskCount(TaskType.DECODE));
+        assertEquals(0, histogram.getTaskCount(TaskType.REQUEST));
+
+        // 100us falls in the bucket below 128us, and 10ms in the bucket below 16384us
+        assertEquals(128, histogram.getRunTimeMicrosAtPercentile(TaskType.DECODE, 50));
+        assertEquals(128, histogram.getRunTimeMicrosAtPercentile(TaskType.DECODE, 90));
+        assertEquals(16384, histogram.getRunTimeMicrosAtPercentile(TaskType.DECODE, 95));
+        assertEquals(1, histogram.getWaitTimeMicrosAtPercentile(TaskType.DECODE, 100));
+        assertEquals(0, histogram.getRunTimeMicrosAtPercentile(TaskType.REQUEST, 50));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testQueueAndActiveCounts() {
+        TaskHistogram histogram = new TaskHistogram();
+        histogram.onTaskQueued(TaskType.CACHE_TRIM, 1);
+        histogram.onTaskQueued(TaskType.CACHE_TRIM, 2);
+        histogram.onTaskStarted(TaskType.CACHE_TRIM, 0);
+        histogram.onTaskStarted(TaskType.CACHE_TRIM, 0);
+        histogram.onTaskFinished(TaskType.CACHE_TRIM, 0);
+        histogram.onTaskFinished(TaskType.CACHE_TRIM, 0);
+
+        assertEquals(2, histogram.getMaxQueueLength(TaskType.CACHE_TRIM));
+        assertEquals(2, histogram.getMaxActiveCount(TaskType.CACHE_TRIM));
+        assertTrue(histogram.dump().startsWith("CACHE_TRIM: count 2"));
+
+        histogram.reset();
+        assertEquals(0, histogram.getTaskCount(TaskType.CACHE_TRIM));
+        assertEquals(0, histogram.getMaxQueueLength(TaskType.CACHE_TRIM));
+        assertEquals("", histogram.dump());
+    }
+
+    private static void record(TaskHistogram histogram, TaskType type, long waitTimeNanos, long runTimeNanos) {
+        histogram.onTaskQueued(type, 1);
+        histogram.onTaskStarted(type, waitTimeNanos);
+        histogram.onTaskFinished(type, runTimeNanos);
+    }
+}
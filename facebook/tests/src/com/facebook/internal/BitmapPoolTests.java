@@ -0,0 +1,72 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public final class BitmapPoolTests extends AndroidTestCase {
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        BitmapPool.clear();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testReleasedBitmapIsReused() {
+        if (!BitmapPool.isSupported()) {
+            return;
+        }
+
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool.retain(bitmap);
+        BitmapPool.retain(bitmap);
+
+        BitmapPool.release(bitmap);
+        assertNull(BitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+
+        int reuseCount = BitmapPool.getReuseCount();
+        BitmapPool.release(bitmap);
+        assertNull(BitmapPool.get(10, 20, Bitmap.Config.ARGB_8888));
+        assertSame(bitmap, BitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+        assertEquals(reuseCount + 1, BitmapPool.getReuseCount());
+        assertEquals(0, BitmapPool.getSize());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPinnedBitmapIsNotReused() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        BitmapPool.retain(bitmap);
+        BitmapPool.pin(bitmap);
+        BitmapPool.release(bitmap);
+
+        assertNull(BitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testImmutableBitmapIsNotReused() {
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888).copy(Bitmap.Config.ARGB_8888, false);
+        BitmapPool.retain(bitmap);
+        BitmapPool.release(bitmap);
+
+        assertNull(BitmapPool.get(10, 10, Bitmap.Config.ARGB_8888));
+    }
+}
@@ -0,0 +1,183 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicIntegerArray;
+
+public class BoundedExecutorTests extends AndroidTestCase {
+
+    @SmallTest @MediumTest @LargeTest
+    public void testWorkBeyondQueueCapacityRuns() throws InterruptedException {
+        final int taskCount = 50;
+        BoundedExecutor executor = new BoundedExecutor("test", 2, 4);
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+
+        for (int i = 0; i < taskCount; i++) {
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    sleep(5);
+                    latch.countDown();
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        executor.shutdown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPoolThreadsDoNotBlockOnFullQueue() throws InterruptedException {
+        final int taskCount = 20;
+        final BoundedExecutor executor = new BoundedExecutor("test", 1, 1);
+        final CountDownLatch latch = new CountDownLatch(taskCount);
+        final AtomicInteger runCount = new AtomicInteger();
+
+        // With a single thread, waiting for room from inside the pool would never finish
+        executor.execute(new Runnable() {
+            @Override
+            public void run() {
+                for (int i = 0; i < taskCount; i++) {
+                    executor.execute(new Runnable() {
+                        @Override
+                        public void run() {
+                            runCount.incrementAndGet();
+                            latch.countDown();
+                        }
+                    });
+                }
+            }
+        });
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        assertEquals(taskCount, runCount.get());
+        assertEquals(0, executor.getOverflowCount());
+        executor.shutdown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testConcurrentDrainsRunEachTaskOnce() throws InterruptedException {
+        final int threadCount = 4;
+        final int tasksPerThread = 100;
+        final BoundedExecutor executor = new BoundedExecutor("test", threadCount, 1);
+        final AtomicIntegerArray runCounts = new AtomicIntegerArray(threadCount * tasksPerThread);
+        final CountDownLatch latch = new CountDownLatch(threadCount * tasksPerThread);
+        final CountDownLatch started = new CountDownLatch(threadCount);
+
+        // Every pool thread fills the overflow list, then all of them drain it at the same time
+        for (int i = 0; i < threadCount; i++) {
+            final int firstTask = i * tasksPerThread;
+            executor.execute(new Runnable() {
+                @Override
+                public void run() {
+                    started.countDown();
+                    try {
+                        started.await();
+                    } catch (InterruptedException e) {
+                        Thread.currentThread().interrupt();
+                    }
+
+                    for (int j = 0; j < tasksPerThread; j++) {
+                        final int task = firstTask + j;
+                        executor.execute(new Runnable() {
+                            @Override
+                            public void run() {
+                                runCounts.incrementAndGet(task);
+                                latch.countDown();
+                            }
+                        });
+                    }
+                }
+            });
+        }
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        // Give a task that was queued twice the chance to run again
+        sleep(100);
+        for (int i = 0; i < runCounts.length(); i++) {
+            assertEquals(1, runCounts.get(i));
+        }
+        assertEquals(0, executor.getOverflowCount());
+        executor.shutdown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPoolsSubmittingToEachOtherDoNotDeadlock() throws InterruptedException {
+        final int taskCount = 20;
+        final BoundedExecutor first = new BoundedExecutor("first", 1, 1);
+        final BoundedExecutor second = new BoundedExecutor("second", 1, 1);
+        final CountDownLatch started = new CountDownLatch(2);
+        final CountDownLatch latch = new CountDownLatch(2 * taskCount);
+
+        // Each pool's only thread fills the other pool's queue at the same time
+        first.execute(new FloodingRunnable(second, taskCount, started, latch));
+        second.execute(new FloodingRunnable(first, taskCount, started, latch));
+
+        assertTrue(latch.await(10, TimeUnit.SECONDS));
+        first.shutdown();
+        second.shutdown();
+    }
+
+    private static class FloodingRunnable implements Runnable {
+        private final BoundedExecutor target;
+        private final int taskCount;
+        private final CountDownLatch started;
+        private final CountDownLatch latch;
+
+        FloodingRunnable(BoundedExecutor target, int taskCount, CountDownLatch started, CountDownLatch latch) {
+            this.target = target;
+            this.taskCount = taskCount;
+            this.started = started;
+            this.latch = latch;
+        }
+
+        @Override
+        public void run() {
+            started.countDown();
+            try {
+                started.await();
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+
+            for (int i = 0; i < taskCount; i++) {
+                target.execute(new Runnable() {
+                    @Override
+                    public void run() {
+                        latch.countDown();
+                    }
+                });
+            }
+        }
+    }
+
+    private static void sleep(long millis) {
+        try {
+            Thread.sleep(millis);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+}
@@ -0,0 +1,101 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.text.ParseException;
+import java.text.SimpleDateFormat;
+import java.util.*;
+
+public final class DateFormatterTests extends AndroidTestCase {
+    private static final String[] TIME_ZONES = { "UTC", "America/Los_Angeles", "Asia/Kolkata", "Australia/Lord_Howe" };
+
+    private TimeZone defaultTimeZone;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        defaultTimeZone = TimeZone.getDefault();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        TimeZone.setDefault(defaultTimeZone);
+        super.tearDown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testParseMatchesSimpleDateFormat() throws ParseException {
+        for (String timeZone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+
+            assertParsesLike("yyyy-MM-dd'T'HH:mm:ssZ", "2012-07-04T19:20:40-0400");
+            assertParsesLike("yyyy-MM-dd'T'HH:mm:ssZ", "2012-07-04T19:20:40+0000");
+            assertParsesLike("yyyy-MM-dd'T'HH:mm:ssZ", "1969-12-31T23:59:59+0530");
+            assertParsesLike("yyyy-MM-dd'T'HH:mm:ss", "2012-07-04T19:30:50");
+            assertParsesLike("yyyy-MM-dd'T'HH:mm:ss", "2012-03-11T12:00:00");
+            assertParsesLike("yyyy-MM-dd", "2012-07-04");
+            assertParsesLike("yyyy-MM-dd", "2000-02-29");
+        }
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testParseOtherIso8601Forms() {
+        // 2012-07-04T23:20:40Z
+        long expected = 1341444040000L;
+
+        assertEquals(expected, DateFormatter.parse("2012-07-04T23:20:40Z").getTime());
+        assertEquals(expected, DateFormatter.parse("2012-07-04T19:20:40-04:00").getTime());
+        assertEquals(expected, DateFormatter.parse("2012-07-04T19:20:40-04").getTime());
+        assertEquals(expected + 123, DateFormatter.parse("2012-07-04T23:20:40.123456Z").getTime());
+        assertEquals(expected - 40000, DateFormatter.parse("2012-07-04T23:20Z").getTime());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testParseRejectsMalformedDates() {
+        String[] malformed = { null, "", "2012", "2012-7-4", "2012/07/04", "2012-13-01", "2011-02-29",
+                "2012-07-04T25:00:00", "2012-07-04T19", "2012-07-04T19:20:40.Z", "2012-07-04T19:20:40+25",
+                "2012-07-04T19:20:40-04:", "2012-07-04T19:20:40 ", "07/04/2012" };
+        for (String date : malformed) {
+            assertNull(date, DateFormatter.parse(date));
+        }
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testFormatMatchesSimpleDateFormat() throws ParseException {
+        long[] times = { 0, -1, 1341444040000L, 1351418000000L, 1331460000000L, -2208988800000L, 253402128000000L };
+        for (String timeZone : TIME_ZONES) {
+            TimeZone.setDefault(TimeZone.getTimeZone(timeZone));
+            SimpleDateFormat format = new SimpleDateFormat("yyyy-MM-dd'T'HH:mm:ssZ", Locale.US);
+
+            for (long time : times) {
+                Date date = new Date(time);
+                String formatted = DateFormatter.format(date);
+                assertEquals(format.format(date), formatted);
+                assertEquals(format.parse(formatted), DateFormatter.parse(formatted));
+            }
+        }
+    }
+
+    private static void assertParsesLike(String pattern, String date) throws ParseException {
+        assertEquals(date, new SimpleDateFormat(pattern, Locale.US).parse(date), DateFormatter.parse(date));
+    }
+}
@@ -0,0 +1,81 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+public class DownloadConcurrencyControllerTests extends AndroidTestCase {
+    private static final int WINDOW_SIZE = 4;
+    private static final long MAX_LATENCY_MILLIS = 1000;
+
+    @SmallTest @MediumTest @LargeTest
+    public void testIncreasesWhileThroughputImproves() {
+        DownloadConcurrencyController controller = new DownloadConcurrencyController(1, 4, 2, WINDOW_SIZE,
+                MAX_LATENCY_MILLIS);
+
+        completeWindow(controller, 0, 1000, 100);
+        assertEquals(3, controller.getConcurrency());
+
+        completeWindow(controller, 1000, 2000, 100);
+        assertEquals(4, controller.getConcurrency());
+
+        // Capped at the maximum
+        completeWindow(controller, 2000, 4000, 100);
+        assertEquals(4, controller.getConcurrency());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testDecreasesWhenThroughputDrops() {
+        DownloadConcurrencyController controller = new DownloadConcurrencyController(1, 4, 2, WINDOW_SIZE,
+                MAX_LATENCY_MILLIS);
+
+        completeWindow(controller, 0, 4000, 100);
+        assertEquals(3, controller.getConcurrency());
+
+        completeWindow(controller, 1000, 100, 100);
+        assertEquals(2, controller.getConcurrency());
+
+        // Unchanged throughput keeps the current concurrency
+        completeWindow(controller, 1000, 100, 100);
+        assertEquals(2, controller.getConcurrency());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testDecreasesWhenLatencyIsHigh() {
+        DownloadConcurrencyController controller = new DownloadConcurrencyController(1, 4, 2, WINDOW_SIZE,
+                MAX_LATENCY_MILLIS);
+
+        completeWindow(controller, 0, 100000, MAX_LATENCY_MILLIS * 2);
+        assertEquals(1, controller.getConcurrency());
+
+        // Never below the minimum
+        completeWindow(controller, 0, 100000, MAX_LATENCY_MILLIS * 2);
+        assertEquals(1, controller.getConcurrency());
+    }
+
+    // Completes a window of downloads that each take durationMillis, back to back.
+    private void completeWindow(DownloadConcurrencyController controller, long startMillis, long bytesPerDownload,
+            long durationMillis) {
+        for (int i = 0; i < WINDOW_SIZE; i++) {
+            long downloadStart = startMillis + i * durationMillis;
+            controller.onDownloadCompleted(bytesPerDownload, downloadStart, downloadStart + durationMillis);
+        }
+    }
+}
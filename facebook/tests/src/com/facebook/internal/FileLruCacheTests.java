@@ -26,6 +26,7 @@ import java.io.ByteArrayInputStream;
 import java.io.IOException;
 import java.io.InputStream;
 import java.io.OutputStream;
+import java.util.List;
 import java.util.Random;
 
 public final class FileLruCacheTests extends AndroidTestCase {
@@ -79,6 +80,27 @@ public final class FileLruCacheTests extends AndroidTestCase {
         assertEquals(0, cache.sizeInBytesForTest());
     }
 
+    @SmallTest @MediumTest @LargeTest
+    public void testGetKeys() throws Exception {
+        int dataSize = 1024;
+        byte[] data = generateBytes(dataSize);
+
+        FileLruCache cache = new FileLruCache(getContext(), "testGetKeys", limitCacheSize(10*dataSize));
+        TestUtils.clearFileLruCache(cache);
+
+        OutputStream stream = cache.openPutStream("a", "tag");
+        stream.write(data);
+        stream.close();
+        stream = cache.openPutStream("b", "otherTag");
+        stream.write(data);
+        stream.close();
+
+        List<String> keys = cache.getKeys("tag");
+        assertEquals(1, keys.size());
+        assertEquals("a", keys.get(0));
+        TestUtils.clearFileLruCache(cache);
+    }
+
     @SmallTest @MediumTest @LargeTest
     public void testCacheClearMidBuffer() throws Exception {
         int dataSize = 1024;
@@ -0,0 +1,299 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.content.Context;
+import android.content.ContextWrapper;
+import android.content.pm.PackageManager;
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.net.URI;
+import java.util.Arrays;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+public final class ImageDownloaderTests extends AndroidTestCase {
+    private WorkQueueTests.ScriptableExecutor cacheReadExecutor;
+    private WorkQueueTests.ScriptableExecutor downloadExecutor;
+    private WorkQueue cacheReadQueue;
+    private boolean prefetchOnMeteredNetwork;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+
+        // A single cache read may start at a time, and nothing runs until the test says so
+        cacheReadExecutor = new WorkQueueTests.ScriptableExecutor();
+        downloadExecutor = new WorkQueueTests.ScriptableExecutor();
+        cacheReadQueue = new WorkQueue(1, cacheReadExecutor);
+        ImageDownloader.setWorkQueuesForTest(cacheReadQueue, new WorkQueue(1, downloadExecutor));
+        prefetchOnMeteredNetwork = ImageDownloader.getPrefetchOnMeteredNetwork();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        ImageDownloader.setWorkQueuesForTest(null, null);
+        ImageDownloader.setPrefetchOnMeteredNetwork(prefetchOnMeteredNetwork);
+        super.tearDown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testCancelKeepsSharedWorkUntilLastCallerLeaves() throws Exception {
+        ImageRequest blocker = new ImageRequest.Builder(getContext(), uniqueUri("blocker")).build();
+        ImageDownloader.downloadAsync(blocker);
+        assertEquals(1, cacheReadExecutor.getPendingCount());
+
+        URI uri = uniqueUri("shared");
+        ImageRequest first = new ImageRequest.Builder(getContext(), uri).build();
+        ImageRequest second = new ImageRequest.Builder(getContext(), uri).build();
+        ImageDownloader.downloadAsync(first);
+        ImageDownloader.downloadAsync(second);
+        assertEquals(1, cacheReadExecutor.getPendingCount());
+
+        assertTrue(ImageDownloader.cancelRequest(first));
+        assertFalse(ImageDownloader.isPendingForTest(first));
+        assertTrue(ImageDownloader.isPendingForTest(second));
+        assertFalse(ImageDownloader.cancelRequest(first));
+
+        assertTrue(ImageDownloader.cancelRequest(second));
+        assertFalse(ImageDownloader.isPendingForTest(second));
+
+        // The shared cache read was cancelled, so finishing the blocker does not start anything else
+        cacheReadExecutor.runNext();
+        assertEquals(0, cacheReadExecutor.getPendingCount());
+
+        ImageDownloader.cancelRequest(blocker);
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testSharedWorkStillRunsForRemainingCaller() throws Exception {
+        URI uri = uniqueUri("remaining");
+        ImageRequest first = new ImageRequest.Builder(getContext(), uri).build();
+        ImageRequest second = new ImageRequest.Builder(getContext(), uri).build();
+        ImageDownloader.downloadAsync(first);
+        ImageDownloader.downloadAsync(second);
+        assertEquals(1, cacheReadExecutor.getPendingCount());
+
+        assertTrue(ImageDownloader.cancelRequest(first));
+
+        // The image is not cached, so the remaining caller gets a download
+        cacheReadExecutor.runNext();
+        assertEquals(1, downloadExecutor.getPendingCount());
+        assertTrue(ImageDownloader.isPendingForTest(second));
+
+        ImageDownloader.cancelRequest(second);
+    }
+
+    @MediumTest @LargeTest
+    public void testJoiningAgedPrefetchDoesNotLowerItsPriority() throws Exception {
+        final long agingIntervalMillis = 200;
+        cacheReadQueue.setAgingInterval(agingIntervalMillis);
+        cacheReadQueue.addActiveWorkItem(new WorkQueueTests.CountingRunnable(), WorkQueue.DEFAULT_PRIORITY, true);
+
+        ImageRequest request = new ImageRequest.Builder(getContext(), uniqueUri("aged")).build();
+        ImageDownloader.prefetch(getContext(), Arrays.asList(request));
+
+        // Age the prefetch past PRIORITY_NORMAL while something more important takes the free slot
+        Thread.sleep(agingIntervalMillis * 3 + agingIntervalMillis / 2);
+        cacheReadQueue.addActiveWorkItem(new WorkQueueTests.CountingRunnable(), Integer.MAX_VALUE, true);
+        cacheReadExecutor.runNext();
+
+        final AtomicBoolean competitorRan = new AtomicBoolean();
+        cacheReadQueue.addActiveWorkItem(new Runnable() {
+            @Override
+            public void run() {
+                competitorRan.set(true);
+            }
+        }, ImageDownloader.PRIORITY_NORMAL + 1, true);
+
+        // Joining must not pull the prefetch back down to PRIORITY_NORMAL
+        ImageDownloader.downloadAsync(request);
+        cacheReadExecutor.runNext();
+        cacheReadExecutor.runNext();
+        assertFalse(competitorRan.get());
+        assertEquals(1, downloadExecutor.getPendingCount());
+
+        ImageDownloader.cancelRequest(request);
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPrefetchByteCap() {
+        ImageDownloader.setPrefetchOnMeteredNetwork(true);
+        ImageDownloader.PrefetchBatch batch = new ImageDownloader.PrefetchBatch(getContext(), 100);
+
+        // Downloads in flight count towards the limit until they are settled
+        assertTrue(batch.tryReserve(60));
+        assertTrue(batch.tryReserve(60));
+        assertFalse(batch.tryReserve(60));
+
+        // One turned out smaller than reserved, which makes room again
+        batch.settle(60, 10);
+        assertTrue(batch.tryReserve(60));
+        batch.settle(60, 30);
+        batch.settle(60, 60);
+        assertFalse(batch.tryReserve(60));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPrefetchSkipsMeteredNetwork() {
+        // Without the network state permission, the network is treated as metered
+        Context meteredContext = new MeteredContext(getContext());
+        ImageDownloader.PrefetchBatch batch =
+                new ImageDownloader.PrefetchBatch(meteredContext, ImageDownloader.DEFAULT_PREFETCH_MAX_BYTES);
+
+        ImageDownloader.setPrefetchOnMeteredNetwork(false);
+        assertFalse(batch.tryReserve(1));
+        ImageDownloader.setPrefetchOnMeteredNetwork(true);
+        assertTrue(batch.tryReserve(1));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPrefetchDoesNotDownloadPastByteCap() throws Exception {
+        ImageDownloader.setPrefetchOnMeteredNetwork(true);
+        ImageRequest request = new ImageRequest.Builder(getContext(), uniqueUri("capped")).build();
+        ImageDownloader.prefetch(getContext(), Arrays.asList(request), 0);
+        assertEquals(1, cacheReadExecutor.getPendingCount());
+
+        cacheReadExecutor.runNext();
+        assertEquals(0, downloadExecutor.getPendingCount());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPrefetchCountsDownloadsInFlightAgainstByteCap() throws Exception {
+        ImageDownloader.setPrefetchOnMeteredNetwork(true);
+        ImageDownloader.setWorkQueuesForTest(cacheReadQueue, new WorkQueue(3, downloadExecutor));
+        ImageRequest first = new ImageRequest.Builder(getContext(), uniqueUri("first")).build();
+        ImageRequest second = new ImageRequest.Builder(getContext(), uniqueUri("second")).build();
+        ImageRequest third = new ImageRequest.Builder(getContext(), uniqueUri("third")).build();
+        ImageDownloader.prefetch(getContext(), Arrays.asList(first, second, third), 1);
+
+        // Nothing has finished downloading yet, but the first download already uses up the limit
+        cacheReadExecutor.runNext();
+        cacheReadExecutor.runNext();
+        cacheReadExecutor.runNext();
+        assertEquals(1, downloadExecutor.getPendingCount());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPrefetchOnMeteredNetworkIsSkipped() throws Exception {
+        ImageDownloader.setPrefetchOnMeteredNetwork(false);
+        Context meteredContext = new MeteredContext(getContext());
+        ImageRequest request = new ImageRequest.Builder(meteredContext, uniqueUri("metered")).build();
+        ImageDownloader.prefetch(meteredContext, Arrays.asList(request));
+
+        cacheReadExecutor.runNext();
+        assertEquals(0, downloadExecutor.getPendingCount());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testCallerJoiningPrefetchIsDownloadedPastByteCap() throws Exception {
+        ImageDownloader.setPrefetchOnMeteredNetwork(true);
+        ImageRequest request = new ImageRequest.Builder(getContext(), uniqueUri("joined")).build();
+        ImageDownloader.prefetch(getContext(), Arrays.asList(request), 0);
+        ImageDownloader.downloadAsync(request);
+
+        cacheReadExecutor.runNext();
+        assertEquals(1, downloadExecutor.getPendingCount());
+
+        ImageDownloader.cancelRequest(request);
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPreviewSizes() {
+        // Spread evenly over a download of known length
+        assertEquals(30000, ImageDownloader.getPreviewSize(0, 90000));
+        assertEquals(60000, ImageDownloader.getPreviewSize(1, 90000));
+
+        // Fixed intervals otherwise
+        assertEquals(32 * 1024, ImageDownloader.getPreviewSize(0, -1));
+        assertEquals(64 * 1024, ImageDownloader.getPreviewSize(1, -1));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPreviewsOnlyReachPendingPreviewCallers() throws Exception {
+        URI uri = uniqueUri("preview");
+        RecordingPreviewCallback previewCallback = new RecordingPreviewCallback();
+        ImageRequest previewRequest = new ImageRequest.Builder(getContext(), uri).setCallback(previewCallback).build();
+        ImageRequest plainRequest = new ImageRequest.Builder(getContext(), uri)
+                .setCallback(new ImageRequest.Callback() {
+                    @Override
+                    public void onCompleted(ImageResponse response) {
+                        fail("Previews must not complete other callers");
+                    }
+                })
+                .build();
+        ImageDownloader.downloadAsync(previewRequest);
+        ImageDownloader.downloadAsync(plainRequest);
+
+        Bitmap preview = Bitmap.createBitmap(1, 1, Bitmap.Config.ARGB_8888);
+        ImageDownloader.issuePreviewForTest(previewRequest, preview);
+        assertTrue(previewCallback.firstPreview.await(5, TimeUnit.SECONDS));
+        assertTrue(previewCallback.response.isPreview());
+        assertSame(preview, previewCallback.response.getBitmap());
+        assertSame(previewRequest, previewCallback.response.getRequest());
+
+        // A cancelled caller gets no further previews
+        ImageDownloader.cancelRequest(previewRequest);
+        ImageDownloader.issuePreviewForTest(plainRequest, preview);
+        assertFalse(previewCallback.secondPreview.await(500, TimeUnit.MILLISECONDS));
+
+        ImageDownloader.cancelRequest(plainRequest);
+    }
+
+    private URI uniqueUri(String name) throws Exception {
+        return new URI("http://example.com/" + getName() + "/" + name + System.nanoTime() + ".jpg");
+    }
+
+    private static class MeteredContext extends ContextWrapper {
+        MeteredContext(Context base) {
+            super(base);
+        }
+
+        @Override
+        public Context getApplicationContext() {
+            return this;
+        }
+
+        @Override
+        public int checkCallingOrSelfPermission(String permission) {
+            return PackageManager.PERMISSION_DENIED;
+        }
+    }
+
+    private static class RecordingPreviewCallback implements ImageRequest.PreviewCallback {
+        final CountDownLatch firstPreview = new CountDownLatch(1);
+        final CountDownLatch secondPreview = new CountDownLatch(2);
+        volatile ImageResponse response;
+
+        @Override
+        public void onPreview(ImageResponse response) {
+            this.response = response;
+            firstPreview.countDown();
+            secondPreview.countDown();
+        }
+
+        @Override
+        public void onCompleted(ImageResponse response) {
+            fail("No download was run");
+        }
+    }
+}
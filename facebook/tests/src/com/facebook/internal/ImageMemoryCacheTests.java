@@ -0,0 +1,100 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.graphics.Bitmap;
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+
+import java.net.URI;
+
+public final class ImageMemoryCacheTests extends AndroidTestCase {
+    private static final int NO_SIZE = ImageRequest.UNSPECIFIED_DIMENSION;
+    private static final ImageRequest.ScaleMode FIT = ImageRequest.ScaleMode.FIT;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        ImageMemoryCache.clearCache();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPutAndGet() throws Exception {
+        URI uri = new URI("http://profile.ak.fbcdn.net/test_image.jpg");
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        int missCount = ImageMemoryCache.getMissCount();
+        assertNull(ImageMemoryCache.get(uri, NO_SIZE, NO_SIZE, FIT));
+        assertEquals(missCount + 1, ImageMemoryCache.getMissCount());
+
+        int hitCount = ImageMemoryCache.getHitCount();
+        ImageMemoryCache.put(uri, NO_SIZE, NO_SIZE, FIT, bitmap, false);
+        ImageMemoryCache.Entry entry = ImageMemoryCache.get(uri, NO_SIZE, NO_SIZE, FIT);
+        assertNotNull(entry);
+        assertSame(bitmap, entry.getBitmap());
+        assertFalse(entry.isRedirect());
+        assertEquals(hitCount + 1, ImageMemoryCache.getHitCount());
+        assertEquals(bitmap.getRowBytes() * bitmap.getHeight(), ImageMemoryCache.getSize());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testRedirectEntry() throws Exception {
+        URI uri = new URI("https://graph.facebook.com/4/picture");
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+
+        ImageMemoryCache.put(uri, NO_SIZE, NO_SIZE, FIT, bitmap, true);
+        assertTrue(ImageMemoryCache.get(uri, NO_SIZE, NO_SIZE, FIT).isRedirect());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testTargetSizesCachedSeparately() throws Exception {
+        URI uri = new URI("http://profile.ak.fbcdn.net/test_image.jpg");
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        Bitmap smallBitmap = Bitmap.createBitmap(5, 5, Bitmap.Config.ARGB_8888);
+
+        ImageMemoryCache.put(uri, NO_SIZE, NO_SIZE, FIT, bitmap, false);
+        ImageMemoryCache.put(uri, 5, 5, FIT, smallBitmap, false);
+
+        assertSame(bitmap, ImageMemoryCache.get(uri, NO_SIZE, NO_SIZE, FIT).getBitmap());
+        assertSame(smallBitmap, ImageMemoryCache.get(uri, 5, 5, FIT).getBitmap());
+        assertNull(ImageMemoryCache.get(uri, 5, 5, ImageRequest.ScaleMode.FILL));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testInSampleSize() {
+        assertEquals(1, ImageDecoder.calculateInSampleSize(100, 100, 100, 100, FIT));
+        assertEquals(1, ImageDecoder.calculateInSampleSize(100, 100, 200, 200, FIT));
+        assertEquals(2, ImageDecoder.calculateInSampleSize(200, 200, 100, 100, FIT));
+        assertEquals(4, ImageDecoder.calculateInSampleSize(500, 500, 100, 100, FIT));
+        assertEquals(8, ImageDecoder.calculateInSampleSize(800, 400, 100, NO_SIZE, FIT));
+        assertEquals(8, ImageDecoder.calculateInSampleSize(800, 400, 100, 100, FIT));
+        assertEquals(4, ImageDecoder.calculateInSampleSize(800, 400, 100, 100, ImageRequest.ScaleMode.FILL));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testClearCache() throws Exception {
+        URI uri = new URI("http://profile.ak.fbcdn.net/test_image.jpg");
+        Bitmap bitmap = Bitmap.createBitmap(10, 10, Bitmap.Config.ARGB_8888);
+        ImageMemoryCache.put(uri, NO_SIZE, NO_SIZE, FIT, bitmap, false);
+
+        ImageMemoryCache.clearCache();
+        assertNull(ImageMemoryCache.get(uri, NO_SIZE, NO_SIZE, FIT));
+        assertEquals(0, ImageMemoryCache.getSize());
+    }
+}
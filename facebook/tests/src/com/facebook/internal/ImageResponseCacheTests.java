@@ -22,6 +22,7 @@ import android.graphics.BitmapFactory;
 import android.test.AndroidTestCase;
 import android.test.suitebuilder.annotation.LargeTest;
 import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
 import com.facebook.TestUtils;
 import com.facebook.internal.Utility;
 import com.facebook.internal.ImageResponseCache;
@@ -57,6 +58,33 @@ public final class ImageResponseCacheTests extends AndroidTestCase {
         compareImages(bmp1, bmp2);
     }
 
+    @SmallTest @MediumTest @LargeTest
+    public void testCacheableHostPatterns() throws Exception {
+        assertTrue(ImageResponseCache.isCacheableUrl(new URI("http://profile.ak.fbcdn.net/a.jpg")));
+        assertTrue(ImageResponseCache.isCacheableUrl(new URI("http://fbcdn-profile-a.akamaihd.net/a.jpg")));
+        assertFalse(ImageResponseCache.isCacheableUrl(new URI("http://graph.facebook.com/4/picture")));
+
+        assertFalse(ImageResponseCache.isCacheableUrl(new URI("http://img.cacheable-host-test.com/a.jpg")));
+        ImageResponseCache.addCacheableHostPattern("*.cacheable-host-test.com");
+        assertTrue(ImageResponseCache.isCacheableUrl(new URI("http://img.cacheable-host-test.com/a.jpg")));
+        assertFalse(ImageResponseCache.isCacheableUrl(new URI("http://cacheable-host-test.com.evil.net/a.jpg")));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testExpiration() {
+        long now = 1000000;
+
+        assertEquals(FileLruCache.NO_EXPIRATION, ImageResponseCache.getExpiration(null, false, 0, now));
+        assertEquals(now + 60000, ImageResponseCache.getExpiration("public, max-age=60", false, 0, now));
+        assertEquals(ImageResponseCache.NOT_CACHEABLE, ImageResponseCache.getExpiration("no-store", false, 0, now));
+        assertEquals(ImageResponseCache.NOT_CACHEABLE, ImageResponseCache.getExpiration("max-age=0", false, 0, now));
+
+        // max-age wins over Expires
+        assertEquals(now + 60000, ImageResponseCache.getExpiration("max-age=60", true, now + 5, now));
+        assertEquals(now + 5, ImageResponseCache.getExpiration(null, true, now + 5, now));
+        assertEquals(ImageResponseCache.NOT_CACHEABLE, ImageResponseCache.getExpiration(null, true, 0, now));
+    }
+
     private Bitmap readImage(String uri, boolean expectedFromCache) {
         Bitmap bmp = null;
         InputStream istream = null;
@@ -0,0 +1,86 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.util.Iterator;
+
+public final class JsonKeyPoolTests extends AndroidTestCase {
+    private static final String FRIENDS = "{\"data\":[{\"id\":\"1\",\"name\":\"a:b\"} , {\"name\" : \"c\",\"id\":\"2\"}]}";
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        JsonKeyPool.clear();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testParsedObjectsShareKeys() throws JSONException {
+        JSONArray data = ((JSONObject) JsonKeyPool.createTokener(FRIENDS).nextValue()).getJSONArray("data");
+        JSONArray otherData = ((JSONObject) JsonKeyPool.createTokener(FRIENDS).nextValue()).getJSONArray("data");
+
+        assertSame(getKey(data.getJSONObject(0), "id"), getKey(data.getJSONObject(1), "id"));
+        assertSame(getKey(data.getJSONObject(0), "name"), getKey(otherData.getJSONObject(1), "name"));
+        assertEquals("a:b", data.getJSONObject(0).getString("name"));
+        assertEquals("2", data.getJSONObject(1).getString("id"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testOnlyNamesArePooled() throws JSONException {
+        JsonKeyPool.createTokener("{\"12345\":{\"id\":\"12345\"},\"values\":[\"a\",\"b\"]}").nextValue();
+
+        // "id" and "values"
+        assertEquals(2, JsonKeyPool.getSize());
+        String data = JsonKeyPool.intern(new String("data"));
+        assertSame(data, JsonKeyPool.intern(new String("data")));
+        assertEquals(3, JsonKeyPool.getSize());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPoolStopsGrowingWhenFull() {
+        for (int i = 0; i < JsonKeyPool.MAX_KEYS + 10; i++) {
+            JsonKeyPool.intern("key" + i);
+        }
+        assertEquals(JsonKeyPool.MAX_KEYS, JsonKeyPool.getSize());
+
+        String key = "key" + JsonKeyPool.MAX_KEYS;
+        assertNotSame(JsonKeyPool.intern(key), JsonKeyPool.intern(new String(key)));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testTopLevelStringParses() throws JSONException {
+        assertEquals("id", JsonKeyPool.createTokener("\"id\"").nextValue());
+    }
+
+    private static String getKey(JSONObject jsonObject, String key) {
+        Iterator<?> keys = jsonObject.keys();
+        while (keys.hasNext()) {
+            String thisKey = (String) keys.next();
+            if (thisKey.equals(key)) {
+                return thisKey;
+            }
+        }
+        return null;
+    }
+}
@@ -0,0 +1,247 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+import com.facebook.FacebookTestCase;
+
+import java.security.SecureRandom;
+import java.util.ArrayList;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+public class LockFreeWorkQueueTests extends FacebookTestCase {
+    private static final String TAG = LockFreeWorkQueueTests.class.getSimpleName();
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testRunSequence() {
+        final int workTotal = 100;
+
+        WorkQueueTests.CountingRunnable run = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.ScriptableExecutor executor = new WorkQueueTests.ScriptableExecutor();
+        LockFreeWorkQueue manager = new LockFreeWorkQueue(1, executor);
+
+        for (int i = 0; i < workTotal; i++) {
+            manager.addActiveWorkItem(run);
+            assertEquals(1, executor.getPendingCount());
+        }
+
+        for (int i = 0; i < workTotal; i++) {
+            assertEquals(1, executor.getPendingCount());
+            assertEquals(i, run.getRunCount());
+            executor.runNext();
+        }
+        assertEquals(0, executor.getPendingCount());
+        assertEquals(workTotal, run.getRunCount());
+        manager.validate();
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testSimpleCancel() {
+        WorkQueueTests.CountingRunnable run = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.ScriptableExecutor executor = new WorkQueueTests.ScriptableExecutor();
+        LockFreeWorkQueue manager = new LockFreeWorkQueue(1, executor);
+
+        WorkQueue.WorkItem work0 = manager.addActiveWorkItem(run);
+        WorkQueue.WorkItem work1 = manager.addActiveWorkItem(run);
+        assertTrue(work1.cancel());
+        assertFalse(work1.cancel());
+        assertFalse(work0.cancel());
+        assertTrue(work0.isRunning());
+
+        assertEquals(1, executor.getPendingCount());
+        executor.runNext();
+        assertEquals(0, executor.getPendingCount());
+        assertEquals(1, run.getRunCount());
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testPriorityAndMoveToFront() {
+        WorkQueueTests.CountingRunnable lowRun = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.CountingRunnable normalRun = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.CountingRunnable highRun = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.ScriptableExecutor executor = new WorkQueueTests.ScriptableExecutor();
+        LockFreeWorkQueue manager = new LockFreeWorkQueue(1, executor);
+        manager.setAgingInterval(WorkQueue.NO_AGING);
+
+        // Keeps the queue busy while the rest are added
+        manager.addActiveWorkItem(normalRun);
+        WorkQueue.WorkItem normal = manager.addActiveWorkItem(normalRun, 0, false);
+        manager.addActiveWorkItem(lowRun, -1, true);
+        manager.addActiveWorkItem(highRun, 0, true);
+        WorkQueue.WorkItem raised = manager.addActiveWorkItem(highRun, -1, true);
+        raised.setPriority(1);
+        normal.moveToFront();
+
+        executor.runNext();
+        assertEquals(1, normalRun.getRunCount());
+        executor.runNext();
+        assertEquals(1, highRun.getRunCount());
+        executor.runNext();
+        assertEquals(2, normalRun.getRunCount());
+        executor.runNext();
+        assertEquals(2, highRun.getRunCount());
+        executor.runNext();
+        assertEquals(1, lowRun.getRunCount());
+        assertEquals(0, executor.getPendingCount());
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testNoAgingKeepsAgingQueueEmpty() {
+        final int workTotal = 1000;
+
+        WorkQueueTests.CountingRunnable run = new WorkQueueTests.CountingRunnable();
+        WorkQueueTests.ScriptableExecutor executor = new WorkQueueTests.ScriptableExecutor();
+        LockFreeWorkQueue manager = new LockFreeWorkQueue(1, executor);
+        manager.addActiveWorkItem(run);
+        manager.setAgingInterval(WorkQueue.NO_AGING);
+        assertEquals(0, manager.getAgingQueueSizeForTest());
+
+        for (int i = 0; i < workTotal; i++) {
+            WorkQueue.WorkItem workItem = manager.addActiveWorkItem(run);
+            workItem.moveToFront();
+            workItem.setPriority(1);
+        }
+        assertEquals(0, manager.getAgingQueueSizeForTest());
+
+        for (int i = 0; i <= workTotal; i++) {
+            executor.runNext();
+        }
+        assertEquals(workTotal + 1, run.getRunCount());
+        assertEquals(0, manager.getAgingQueueSizeForTest());
+    }
+
+    // Compares WorkQueue and LockFreeWorkQueue when many threads add and prioritize work at the same
+    // time as workers finish it, much like a fast fling through a long friend picker. The timings are
+    // logged rather than asserted, since they depend on the device.
+    @LargeTest
+    public void testContentionBenchmark() throws Exception {
+        final int producerCount = 4;
+        final int itemsPerProducer = 2000;
+        final int workerCount = 8;
+
+        ExecutorService workers = Executors.newFixedThreadPool(workerCount);
+        try {
+            // Warm up both, so that neither pays for class loading and JIT
+            runContention(new LockingQueue(new WorkQueue(workerCount, workers)), producerCount, 200);
+            runContention(new LockFreeQueue(new LockFreeWorkQueue(workerCount, workers)), producerCount, 200);
+
+            long lockingMillis = runContention(
+                    new LockingQueue(new WorkQueue(workerCount, workers)),
+                    producerCount,
+                    itemsPerProducer);
+            long lockFreeMillis = runContention(
+                    new LockFreeQueue(new LockFreeWorkQueue(workerCount, workers)),
+                    producerCount,
+                    itemsPerProducer);
+
+            Log.i(TAG, String.format("%d items from %d threads: WorkQueue %d ms, LockFreeWorkQueue %d ms",
+                    producerCount * itemsPerProducer, producerCount, lockingMillis, lockFreeMillis));
+        } finally {
+            workers.shutdown();
+        }
+    }
+
+    // Returns the time taken until every item has run or been cancelled.
+    private long runContention(final QueueUnderTest queue, int producerCount, final int itemsPerProducer)
+            throws InterruptedException {
+        final CountDownLatch done = new CountDownLatch(producerCount * itemsPerProducer);
+        final Runnable work = new Runnable() {
+            @Override
+            public void run() {
+                done.countDown();
+            }
+        };
+
+        ArrayList<Thread> producers = new ArrayList<Thread>();
+        for (int p = 0; p < producerCount; p++) {
+            producers.add(new Thread() {
+                @Override
+                public void run() {
+                    SecureRandom random = new SecureRandom();
+                    ArrayList<WorkQueue.WorkItem> added = new ArrayList<WorkQueue.WorkItem>();
+                    for (int i = 0; i < itemsPerProducer; i++) {
+                        added.add(queue.add(work, random.nextInt(3) - 1));
+
+                        // Rows scrolling into view get prioritized, and rows scrolling out get cancelled
+                        WorkQueue.WorkItem other = added.get(random.nextInt(added.size()));
+                        if (random.nextInt(4) == 0) {
+                            if (other.cancel()) {
+                                done.countDown();
+                            }
+                        } else {
+                            other.moveToFront();
+                        }
+                    }
+                }
+            });
+        }
+
+        long start = System.currentTimeMillis();
+        for (Thread producer : producers) {
+            producer.start();
+        }
+        for (Thread producer : producers) {
+            producer.join();
+        }
+        assertTrue(done.await(60, TimeUnit.SECONDS));
+        return System.currentTimeMillis() - start;
+    }
+
+    private interface QueueUnderTest {
+        WorkQueue.WorkItem add(Runnable runnable, int priority);
+    }
+
+    private static class LockingQueue implements QueueUnderTest {
+        private final WorkQueue queue;
+
+        LockingQueue(WorkQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public WorkQueue.WorkItem add(Runnable runnable, int priority) {
+            return queue.addActiveWorkItem(runnable, priority, true);
+        }
+    }
+
+    private static class LockFreeQueue implements QueueUnderTest {
+        private final LockFreeWorkQueue queue;
+
+        LockFreeQueue(LockFreeWorkQueue queue) {
+            this.queue = queue;
+        }
+
+        @Override
+        public WorkQueue.WorkItem add(Runnable runnable, int priority) {
+            return queue.addActiveWorkItem(runnable, priority, true);
+        }
+    }
+}
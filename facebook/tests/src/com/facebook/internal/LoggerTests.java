@@ -0,0 +1,127 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import android.util.Log;
+import com.facebook.LoggingBehavior;
+import com.facebook.Settings;
+
+import java.util.HashSet;
+import java.util.Set;
+
+public class LoggerTests extends AndroidTestCase {
+    private static final String TAG = LoggerTests.class.getSimpleName();
+
+    private Set<LoggingBehavior> savedBehaviors;
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        savedBehaviors = Settings.getLoggingBehaviors();
+    }
+
+    @Override
+    protected void tearDown() throws Exception {
+        Settings.clearLoggingBehaviors();
+        for (LoggingBehavior behavior : savedBehaviors) {
+            Settings.addLoggingBehavior(behavior);
+        }
+        super.tearDown();
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testAddAndRemoveBehaviors() {
+        Settings.clearLoggingBehaviors();
+        assertTrue(Settings.getLoggingBehaviors().isEmpty());
+
+        Settings.addLoggingBehavior(LoggingBehavior.CACHE);
+        Settings.addLoggingBehavior(LoggingBehavior.REQUESTS);
+        Settings.addLoggingBehavior(LoggingBehavior.CACHE);
+        HashSet<LoggingBehavior> expected = new HashSet<LoggingBehavior>();
+        expected.add(LoggingBehavior.CACHE);
+        expected.add(LoggingBehavior.REQUESTS);
+        assertEquals(expected, Settings.getLoggingBehaviors());
+
+        Settings.removeLoggingBehavior(LoggingBehavior.CACHE);
+        assertFalse(Settings.isLoggingBehaviorEnabled(LoggingBehavior.CACHE));
+        assertEquals(1, Settings.getLoggingBehaviors().size());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testDisabledLoggingDoesNotFormat() {
+        Settings.removeLoggingBehavior(LoggingBehavior.CACHE);
+        CountingArgument argument = new CountingArgument();
+
+        Logger.log(LoggingBehavior.CACHE, TAG, "%s", argument);
+        Logger.log(LoggingBehavior.CACHE, TAG, "%s %s", argument, argument);
+        Logger.log(LoggingBehavior.CACHE, TAG, "%s %s %s %s", argument, argument, argument, argument);
+        Logger.log(LoggingBehavior.CACHE, Log.WARN, TAG, "%s", argument);
+
+        assertEquals(0, argument.toStringCount);
+    }
+
+    @LargeTest
+    public void testDisabledLoggingBenchmark() {
+        final int iterations = 200000;
+        Settings.removeLoggingBehavior(LoggingBehavior.CACHE);
+        String name = "0123456789abcdef";
+
+        // Warm up both, so that neither pays for JIT
+        logEagerly(name, 1000);
+        logLazily(name, 1000);
+
+        long startNanos = System.nanoTime();
+        logEagerly(name, iterations);
+        long eagerNanos = System.nanoTime() - startNanos;
+
+        startNanos = System.nanoTime();
+        logLazily(name, iterations);
+        long lazyNanos = System.nanoTime() - startNanos;
+
+        Log.i(TAG, String.format("%d calls with logging off: eager %d ns/call, lazy %d ns/call",
+                iterations, eagerNanos / iterations, lazyNanos / iterations));
+    }
+
+    // How FileLruCache.get used to log each hit
+    private static void logEagerly(String name, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to " + Long.valueOf(i) + " for " + name);
+        }
+    }
+
+    private static void logLazily(String name, int iterations) {
+        for (int i = 0; i < iterations; i++) {
+            if (Logger.isLoggingEnabled(LoggingBehavior.CACHE)) {
+                Logger.log(LoggingBehavior.CACHE, TAG, "Setting lastModified to %d for %s", i, name);
+            }
+        }
+    }
+
+    private static class CountingArgument {
+        int toStringCount;
+
+        @Override
+        public String toString() {
+            toStringCount++;
+            return "argument";
+        }
+    }
+}
@@ -0,0 +1,123 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.internal;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import com.facebook.TestUtils;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+import java.net.URI;
+
+public final class UrlRedirectCacheTests extends AndroidTestCase {
+    private static final URI FIRST = URI.create("http://graph.facebook.com/4/picture");
+    private static final URI SECOND = URI.create("http://profile.ak.fbcdn.net/4_q.jpg");
+    private static final URI THIRD = URI.create("http://fbcdn-profile-a.akamaihd.net/4_q.jpg");
+
+    @Override
+    protected void setUp() throws Exception {
+        super.setUp();
+        UrlRedirectCache.clearCache(getContext());
+        TestUtils.clearFileLruCache(UrlRedirectCache.getCache(getContext()));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testRedirectIsServedFromMemory() throws Exception {
+        UrlRedirectCache.cacheUriRedirect(getContext(), FIRST, SECOND);
+        TestUtils.clearFileLruCache(UrlRedirectCache.getCache(getContext()));
+
+        assertEquals(SECOND, UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testMissingRedirectIsRemembered() throws Exception {
+        assertNull(UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+
+        // Written behind the memory table's back, so only seen once the table forgets FIRST has no redirect
+        writeToDisk(FIRST, SECOND);
+        assertNull(UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+
+        UrlRedirectCache.clearMemoryCacheForTest();
+        assertEquals(SECOND, UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testChainIsCollapsedInMemoryAndOnDisk() throws Exception {
+        UrlRedirectCache.cacheUriRedirect(getContext(), FIRST, SECOND);
+        UrlRedirectCache.cacheUriRedirect(getContext(), SECOND, THIRD);
+        assertEquals(SECOND.toString(), readFromDisk(FIRST));
+
+        assertEquals(THIRD, UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+        assertEquals(THIRD.toString(), readFromDisk(FIRST));
+
+        // The collapsed entry no longer goes through the middle of the chain
+        UrlRedirectCache.clearMemoryCacheForTest();
+        writeToDisk(SECOND, URI.create("http://example.com/elsewhere.jpg"));
+        assertEquals(THIRD, UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testPreloadDoesNotUpdateAccessTime() throws Exception {
+        UrlRedirectCache.cacheUriRedirect(getContext(), FIRST, SECOND);
+        UrlRedirectCache.clearMemoryCacheForTest();
+
+        File file = new File(new File(getContext().getCacheDir(), UrlRedirectCache.TAG),
+                Utility.md5hash(FIRST.toString()));
+        // File systems may keep only whole seconds
+        long lastModified = (System.currentTimeMillis() - 24 * 60 * 60 * 1000) / 1000 * 1000;
+        assertTrue(file.setLastModified(lastModified));
+
+        UrlRedirectCache.preload(getContext());
+        assertEquals(lastModified, file.lastModified());
+
+        // The preloaded redirect is served without reading the disk again
+        TestUtils.clearFileLruCache(UrlRedirectCache.getCache(getContext()));
+        assertEquals(SECOND, UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testClearCacheForgetsRedirects() throws Exception {
+        UrlRedirectCache.cacheUriRedirect(getContext(), FIRST, SECOND);
+        UrlRedirectCache.clearCache(getContext());
+
+        assertNull(UrlRedirectCache.getRedirectedUri(getContext(), FIRST));
+    }
+
+    private void writeToDisk(URI from, URI to) throws IOException {
+        OutputStream stream = UrlRedirectCache.getCache(getContext())
+                .openPutStream(from.toString(), UrlRedirectCache.REDIRECT_CONTENT_TAG);
+        try {
+            stream.write(to.toString().getBytes());
+        } finally {
+            stream.close();
+        }
+    }
+
+    private String readFromDisk(URI from) throws IOException {
+        InputStream stream = UrlRedirectCache.getCache(getContext())
+                .get(from.toString(), UrlRedirectCache.REDIRECT_CONTENT_TAG);
+        if (stream == null) {
+            return null;
+        }
+        return Utility.readStreamToString(stream);
+    }
+}
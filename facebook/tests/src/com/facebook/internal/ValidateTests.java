@@ -102,4 +102,18 @@ public class ValidateTests extends AndroidTestCase {
         } catch (Exception e) {
         }
     }
+
+    @SmallTest
+    public void testIsPositiveOnPositive() {
+        Validate.isPositive(1, "name");
+    }
+
+    @SmallTest
+    public void testIsPositiveOnZero() {
+        try {
+            Validate.isPositive(0, "name");
+            fail("expected exception");
+        } catch (Exception e) {
+        }
+    }
 }
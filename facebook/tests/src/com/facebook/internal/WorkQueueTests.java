@@ -20,6 +20,9 @@ import android.test.suitebuilder.annotation.LargeTest;
 import android.test.suitebuilder.annotation.MediumTest;
 import android.test.suitebuilder.annotation.SmallTest;
 import com.facebook.FacebookTestCase;
+import com.facebook.Settings;
+import com.facebook.TaskHistogram;
+import com.facebook.TaskType;
 import com.facebook.internal.WorkQueue;
 
 import java.util.ArrayList;
@@ -174,6 +177,167 @@ public class WorkQueueTests extends FacebookTestCase {
         assertEquals(lowCount, lowRun.getRunCount());
     }
 
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testChangeMaxConcurrent() {
+        final int workTotal = 10;
+
+        CountingRunnable run = new CountingRunnable();
+        ScriptableExecutor executor = new ScriptableExecutor();
+        WorkQueue manager = new WorkQueue(1, executor);
+
+        for (int i = 0; i < workTotal; i++) {
+            addActiveWorkItem(manager, run);
+        }
+        assertEquals(1, executor.getPendingCount());
+
+        // Raising the limit starts pending items right away
+        manager.setMaxConcurrent(4);
+        manager.validate();
+        assertEquals(4, executor.getPendingCount());
+        assertEquals(4, manager.getRunningCount());
+
+        // Lowering the limit lets running items finish, but does not start new ones until below the limit
+        manager.setMaxConcurrent(2);
+        executeNext(manager, executor);
+        assertEquals(3, executor.getPendingCount());
+        executeNext(manager, executor);
+        assertEquals(2, executor.getPendingCount());
+        executeNext(manager, executor);
+        assertEquals(2, executor.getPendingCount());
+
+        while (executor.getPendingCount() > 0) {
+            executeNext(manager, executor);
+        }
+        assertEquals(workTotal, run.getRunCount());
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testPriority() {
+        CountingRunnable lowRun = new CountingRunnable();
+        CountingRunnable normalRun = new CountingRunnable();
+        CountingRunnable highRun = new CountingRunnable();
+        ScriptableExecutor executor = new ScriptableExecutor();
+        WorkQueue manager = new WorkQueue(1, executor);
+        manager.setAgingInterval(WorkQueue.NO_AGING);
+
+        // Keeps the queue busy while the rest are added
+        addActiveWorkItem(manager, normalRun);
+        addActiveWorkItem(manager, lowRun, -1);
+        addActiveWorkItem(manager, normalRun, 0);
+        WorkQueue.WorkItem raised = addActiveWorkItem(manager, lowRun, -1);
+        addActiveWorkItem(manager, highRun, 1);
+
+        manager.validate();
+        raised.setPriority(2);
+        manager.validate();
+        assertEquals(2, raised.getPriority());
+
+        executeNext(manager, executor);
+        assertEquals(1, normalRun.getRunCount());
+        executeNext(manager, executor);
+        assertEquals(1, lowRun.getRunCount());
+        executeNext(manager, executor);
+        assertEquals(1, highRun.getRunCount());
+        executeNext(manager, executor);
+        assertEquals(2, normalRun.getRunCount());
+        executeNext(manager, executor);
+        assertEquals(2, lowRun.getRunCount());
+        assertEquals(0, executor.getPendingCount());
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testBulkSetPriority() {
+        final int workTotal = 10;
+
+        OrderRecordingRunnable run = new OrderRecordingRunnable();
+        ScriptableExecutor executor = new ScriptableExecutor();
+        WorkQueue manager = new WorkQueue(1, executor);
+        manager.setAgingInterval(WorkQueue.NO_AGING);
+
+        addActiveWorkItem(manager, new CountingRunnable());
+        ArrayList<WorkQueue.WorkItem> workItems = new ArrayList<WorkQueue.WorkItem>();
+        for (int i = 0; i < workTotal; i++) {
+            workItems.add(addActiveWorkItem(manager, run.forIndex(i)));
+        }
+
+        // Raise every other item; they should then run first, in list order
+        ArrayList<WorkQueue.WorkItem> raised = new ArrayList<WorkQueue.WorkItem>();
+        for (int i = 0; i < workTotal; i += 2) {
+            raised.add(workItems.get(i));
+        }
+        manager.setPriority(raised, 1);
+        manager.validate();
+
+        while (executor.getPendingCount() > 0) {
+            executeNext(manager, executor);
+        }
+
+        ArrayList<Integer> order = run.getOrder();
+        assertEquals(workTotal, order.size());
+        for (int i = 0; i < raised.size(); i++) {
+            assertEquals(Integer.valueOf(2 * i), order.get(i));
+        }
+    }
+
+    @MediumTest
+    @LargeTest
+    public void testAging() throws Exception {
+        CountingRunnable lowRun = new CountingRunnable();
+        CountingRunnable highRun = new CountingRunnable();
+        ScriptableExecutor executor = new ScriptableExecutor();
+        WorkQueue manager = new WorkQueue(1, executor);
+        manager.setAgingInterval(50);
+
+        addActiveWorkItem(manager, highRun);
+        addActiveWorkItem(manager, lowRun, -1);
+        Thread.sleep(120);
+        addActiveWorkItem(manager, highRun, 0);
+
+        // The low item has waited two intervals, which lifts it above the newer item
+        executeNext(manager, executor);
+        executeNext(manager, executor);
+        assertEquals(1, lowRun.getRunCount());
+        assertEquals(1, highRun.getRunCount());
+        executeNext(manager, executor);
+        assertEquals(2, highRun.getRunCount());
+    }
+
+    @SmallTest
+    @MediumTest
+    @LargeTest
+    public void testInstrumentation() {
+        ScriptableExecutor executor = new ScriptableExecutor();
+        WorkQueue manager = new WorkQueue(1, executor);
+        TaskHistogram histogram = new TaskHistogram();
+
+        Settings.setTaskInstrumentation(histogram);
+        try {
+            addActiveWorkItem(manager, new CountingRunnable());
+            addActiveWorkItem(manager, new CountingRunnable());
+            addActiveWorkItem(manager, new CountingRunnable());
+        } finally {
+            Settings.setTaskInstrumentation(null);
+        }
+
+        // The first item started right away, so at most two were waiting at once
+        assertEquals(2, histogram.getMaxQueueLength(TaskType.OTHER));
+        assertEquals(0, histogram.getTaskCount(TaskType.OTHER));
+
+        // Items keep reporting to the instrumentation they were queued with
+        executeNext(manager, executor);
+        executeNext(manager, executor);
+        executeNext(manager, executor);
+        assertEquals(3, histogram.getTaskCount(TaskType.OTHER));
+        assertEquals(1, histogram.getMaxActiveCount(TaskType.OTHER));
+        assertTrue(histogram.getRunTimeMicrosAtPercentile(TaskType.OTHER, 50) >= 1000);
+    }
+
     // Test cancelling running work item, completed work item
 
     @LargeTest
@@ -202,6 +366,13 @@ public class WorkQueueTests extends FacebookTestCase {
         return workItem;
     }
 
+    private WorkQueue.WorkItem addActiveWorkItem(WorkQueue manager, Runnable runnable, int priority) {
+        manager.validate();
+        WorkQueue.WorkItem workItem = manager.addActiveWorkItem(runnable, priority, true);
+        manager.validate();
+        return workItem;
+    }
+
     private void executeNext(WorkQueue manager, ScriptableExecutor executor) {
         manager.validate();
         executor.runNext();
@@ -323,6 +494,27 @@ public class WorkQueueTests extends FacebookTestCase {
         }
     }
 
+    static class OrderRecordingRunnable {
+        private final ArrayList<Integer> order = new ArrayList<Integer>();
+
+        Runnable forIndex(final int index) {
+            return new Runnable() {
+                @Override
+                public void run() {
+                    synchronized (order) {
+                        order.add(index);
+                    }
+                }
+            };
+        }
+
+        ArrayList<Integer> getOrder() {
+            synchronized (order) {
+                return new ArrayList<Integer>(order);
+            }
+        }
+    }
+
     static class CountingRunnable implements Runnable {
         private int runCount = 0;
 
@@ -0,0 +1,115 @@
+/**
+ * Copyright 2010-present Facebook.
+ *
+ * Licensed under the Apache License, Version 2.0 (the "License");
+ * you may not use this file except in compliance with the License.
+ * You may obtain a copy of the License at
+ *
+ *    http://www.apache.org/licenses/LICENSE-2.0
+ *
+ * Unless required by applicable law or agreed to in writing, software
+ * distributed under the License is distributed on an "AS IS" BASIS,
+ * WITHOUT WARRANTIES OR CONDITIONS OF ANY KIND, either express or implied.
+ * See the License for the specific language governing permissions and
+ * limitations under the License.
+ */
+
+package com.facebook.model;
+
+import android.test.AndroidTestCase;
+import android.test.suitebuilder.annotation.LargeTest;
+import android.test.suitebuilder.annotation.MediumTest;
+import android.test.suitebuilder.annotation.SmallTest;
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.IOException;
+import java.io.StringReader;
+
+public final class GraphObjectStreamParserTests extends AndroidTestCase {
+    private static final String USER = "{\"id\":\"4\",\"name\":\"Mark\",\"bio\":{\"long\":[\"text\",{\"a\":1}]}," +
+            "\"location\":{\"city\":\"Menlo Park\",\"id\":\"7\"}}";
+
+    @SmallTest @MediumTest @LargeTest
+    public void testKeepsOnlyDeclaredProperties() throws IOException, JSONException {
+        GraphUser user = GraphObject.Factory.create(new StringReader(USER), GraphUser.class, false);
+
+        assertEquals("4", user.getId());
+        assertEquals("Mark", user.getName());
+        assertFalse(user.asMap().containsKey("bio"));
+        assertEquals("Menlo Park", user.getLocation().getCity());
+        assertFalse(user.getLocation().asMap().containsKey("id"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testKeepsUndeclaredPropertiesWhenAsked() throws IOException, JSONException {
+        GraphUser user = GraphObject.Factory.create(new StringReader(USER), GraphUser.class, true);
+
+        assertEquals("Mark", user.getName());
+        assertEquals("7", user.getLocation().getProperty("id"));
+        JSONArray bio = user.getPropertyAs("bio", GraphObject.class).getInnerJSONObject().getJSONArray("long");
+        assertEquals("text", bio.getString(0));
+        assertEquals(1, bio.getJSONObject(1).getInt("a"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testGraphObjectKeepsAllProperties() throws IOException, JSONException {
+        GraphObject graphObject = GraphObject.Factory.create(new StringReader(USER), GraphObject.class, false);
+
+        assertEquals("7", graphObject.getPropertyAs("location", GraphObject.class).getProperty("id"));
+        assertTrue(graphObject.asMap().containsKey("bio"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testCreateList() throws IOException, JSONException {
+        String json = " [ " + USER + " , {\"name\":\"Dustin\",\"friends\":[]} ] ";
+        GraphObjectList<GraphUser> users = GraphObject.Factory.createList(new StringReader(json), GraphUser.class,
+                false);
+
+        assertEquals(2, users.size());
+        assertEquals("Mark", users.get(0).getName());
+        assertEquals("Dustin", users.get(1).getName());
+        assertFalse(users.get(1).asMap().containsKey("friends"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testValuesMatchOrgJson() throws IOException, JSONException {
+        String json = "{\"int\":-12,\"long\":12345678901,\"double\":1.5e2,\"true\":true,\"false\":false," +
+                "\"null\":null,\"string\":\"a\\\"b\\\\c\\/d\\n\\u00e9\",\"empty\":{},\"array\":[]}";
+        JSONObject expected = new JSONObject(json);
+        JSONObject actual = GraphObject.Factory.create(new StringReader(json), GraphObject.class, false)
+                .getInnerJSONObject();
+
+        assertEquals(expected.length(), actual.length());
+        for (String key : new String[] { "int", "long", "double", "true", "false", "null", "string" }) {
+            assertEquals(key, expected.get(key), actual.get(key));
+        }
+        assertEquals(0, actual.getJSONObject("empty").length());
+        assertEquals(0, actual.getJSONArray("array").length());
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testIntegersTooLargeForLongAreDoubles() throws IOException, JSONException {
+        // As on Android, where org.json falls back to a Double when a whole number does not fit in a long
+        String json = "{\"big\":12345678901234567890,\"negative\":-99999999999999999999}";
+        JSONObject actual = GraphObject.Factory.create(new StringReader(json), GraphObject.class, false)
+                .getInnerJSONObject();
+
+        assertEquals(Double.valueOf(12345678901234567890.0), actual.get("big"));
+        assertEquals(Double.valueOf(-99999999999999999999.0), actual.get("negative"));
+    }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testMalformedJsonThrows() throws IOException {
+        String[] malformed = { "", "[1,]", "{\"a\":1", "{\"a\" 1}", "[\"a", "[tru]", "{} {}", "[1]" };
+        for (String json : malformed) {
+            try {
+                GraphObject.Factory.create(new StringReader(json), GraphObject.class, true);
+                fail("Expected an exception parsing " + json);
+            } catch (JSONException exception) {
+                // Expected
+            }
+        }
+    }
+}
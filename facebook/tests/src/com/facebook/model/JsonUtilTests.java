@@ -24,7 +24,9 @@ import org.json.JSONException;
 import org.json.JSONObject;
 
 import java.util.Collection;
+import java.util.Collections;
 import java.util.HashMap;
+import java.util.Iterator;
 import java.util.Map.Entry;
 import java.util.Set;
 
@@ -100,4 +102,38 @@ public final class JsonUtilTests extends AndroidTestCase {
         assertEquals(2, values.size());
         assertTrue(values.contains("world"));
     }
+
+    @SmallTest @MediumTest @LargeTest
+    public void testJsonObjectViewsAreLive() throws JSONException {
+        JSONObject jsonObject = new JSONObject();
+        jsonObject.put("hello", "world");
+
+        Set<Entry<String, Object>> entrySet = JsonUtil.jsonObjectEntrySet(jsonObject);
+        Set<String> keySet = JsonUtil.jsonObjectKeySet(jsonObject);
+        Collection<Object> values = JsonUtil.jsonObjectValues(jsonObject);
+
+        jsonObject.put("hocus", "pocus");
+        assertEquals(2, entrySet.size());
+        assertTrue(entrySet.contains(createEntry("hocus", "pocus")));
+        assertFalse(entrySet.contains(createEntry("hocus", "world")));
+        assertTrue(keySet.contains("hocus"));
+        assertTrue(values.contains("pocus"));
+
+        keySet.remove("hello");
+        assertFalse(jsonObject.has("hello"));
+        assertEquals(Collections.singleton("hocus"), keySet);
+        assertEquals(1, values.size());
+
+        Iterator<Entry<String, Object>> iterator = entrySet.iterator();
+        Entry<String, Object> entry = iterator.next();
+        assertEquals("hocus", entry.getKey());
+        assertEquals("pocus", entry.getValue());
+        iterator.remove();
+        assertEquals(0, jsonObject.length());
+        assertTrue(values.isEmpty());
+    }
+
+    private static Entry<String, Object> createEntry(String key, Object value) {
+        return Collections.<String, Object>singletonMap(key, value).entrySet().iterator().next();
+    }
 }